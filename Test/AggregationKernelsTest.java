@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregationKernelsTest {
+
+  /**
+   * Test method to check every kernel against a straightforward loop, including vector tails,
+   * several blocks of rows and more categories than are summed with vectors.
+   */
+  @Test
+  void kernels_MatchPlainLoops() {
+    Random random = new Random(7);
+    for (int categoryCount : new int[] {5, 12}) {
+      checkKernels(random, categoryCount);
+    }
+  }
+
+  private static void checkKernels(Random random, int categoryCount) {
+    for (int length : new int[] {0, 1, 7, 64, 1001, 5003}) {
+      int[] days = new int[length];
+      double[] amounts = new double[length];
+      int[] categories = new int[length];
+      for (int i = 0; i < length; i++) {
+        days[i] = 19_000 + random.nextInt(100);
+        amounts[i] = random.nextInt(1000) / 4.0;
+        categories[i] = random.nextInt(categoryCount);
+      }
+      double sum = 0;
+      int count = 0;
+      double categorySum = 0;
+      double[] expectedTotals = new double[categoryCount];
+      for (int i = 0; i < length; i++) {
+        if (days[i] >= 19_020 && days[i] <= 19_060) {
+          sum += amounts[i];
+          count++;
+          expectedTotals[categories[i]] += amounts[i];
+          if (categories[i] == 2) {
+            categorySum += amounts[i];
+          }
+        }
+      }
+      for (AggregationKernels kernels : new AggregationKernels[] {
+          new ScalarAggregationKernels(), AggregationKernels.get()}) {
+        assertEquals(sum, kernels.sum(days, amounts, length, 19_020, 19_060), 1e-9);
+        assertEquals(count, kernels.count(days, length, 19_020, 19_060));
+        assertEquals(categorySum,
+            kernels.sumCategory(days, amounts, categories, length, 19_020, 19_060, 2), 1e-9);
+        double[] totals = new double[categoryCount];
+        kernels.sumByCategory(days, amounts, categories, length, 19_020, 19_060, totals);
+        assertArrayEquals(expectedTotals, totals, 1e-9);
+        assertEquals(0, kernels.count(days, length, 19_060, 19_020));
+      }
+    }
+  }
+
+  /**
+   * Test method to keep base-currency amounts in the columns and list other currencies apart.
+   */
+  @Test
+  void columns_SeparateForeignRows() {
+    List<Expense> expenses = new ArrayList<>();
+    expenses.add(new Expense("Еда", 10.0, "01.01.2023"));
+    expenses.add(new Expense("Такси", 2.0, "01.01.2023", null, null, "USD"));
+    ExpenseColumns columns = new ExpenseColumns(new FxRateTable("RUB"));
+    columns.append(expenses, 0);
+    expenses.add(new Expense("Еда", 5.0, "02.01.2023"));
+    columns.append(expenses, 2);
+
+    assertEquals(3, columns.size());
+    assertEquals(2, columns.categoryCount());
+    assertEquals(0, columns.categoryId("Еда"));
+    assertEquals(-1, columns.categoryId("Жильё"));
+    assertEquals(0.0, columns.baseAmounts()[1], 0.0);
+    assertEquals(1, columns.foreignCount());
+    assertEquals(1, columns.foreignRows()[0]);
+    assertEquals(Expense.parseEpochDay("02.01.2023"), columns.days()[2]);
+  }
+}
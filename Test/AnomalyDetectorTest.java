@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnomalyDetectorTest {
+
+  /**
+   * Test method to keep the streaming statistics of a category close to the exact ones.
+   */
+  @Test
+  void getStats_MatchesExactStatistics() {
+    AnomalyDetector detector = new AnomalyDetector();
+    Random random = new Random(5);
+    double[] amounts = new double[1001];
+    for (int i = 0; i < amounts.length; i++) {
+      amounts[i] = 100 + random.nextInt(200);
+      detector.onExpenseAdded(new Expense("Еда", amounts[i], "15.07.2023"));
+    }
+    AnomalyDetector.Stats stats = detector.getStats("Еда", AnomalyDetector.season(
+        Expense.parseEpochDay("15.07.2023")));
+    double mean = 0;
+    for (double amount : amounts) {
+      mean += amount;
+    }
+    mean /= amounts.length;
+    double variance = 0;
+    for (double amount : amounts) {
+      variance += (amount - mean) * (amount - mean);
+    }
+    variance /= amounts.length - 1;
+    double[] sorted = amounts.clone();
+    java.util.Arrays.sort(sorted);
+    double median = sorted[sorted.length / 2];
+    double[] deviations = new double[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      deviations[i] = Math.abs(Math.log(sorted[i] / median));
+    }
+    java.util.Arrays.sort(deviations);
+
+    assertEquals(amounts.length, stats.getCount());
+    assertEquals(mean, stats.getMean(), 1e-9);
+    assertEquals(variance, stats.getVariance(), 1e-6);
+    assertEquals(median, stats.getMedian(), median * 0.02);
+    assertEquals(deviations[deviations.length / 2], stats.getLogDeviation(), 0.03);
+    assertSame(stats, detector.getStats("Еда", 2));
+    assertEquals(amounts.length, detector.getStats("Еда", AnomalyDetector.ALL_SEASONS)
+        .getCount());
+  }
+
+  /**
+   * Test method to flag unusually high expenses of a category and season on insert and in a
+   * batch.
+   */
+  @Test
+  void onExpenseAdded_FlagsOutliersPerSeason() {
+    AnomalyDetector detector = new AnomalyDetector();
+    Random random = new Random(7);
+    List<Expense> history = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      history.add(new Expense("Коммунальные", 4000 + random.nextInt(500), "10.01.2023"));
+      history.add(new Expense("Коммунальные", 1500 + random.nextInt(200), "10.07.2023"));
+    }
+    detector.replay(history);
+    List<AnomalyDetector.Anomaly> anomalies = new ArrayList<>();
+    detector.addAnomalyListener(anomalies::add);
+    assertTrue(detector.scoreAll(history).isEmpty());
+
+    detector.onExpenseAdded(new Expense("Коммунальные", 4300.0, "10.01.2024"));
+    assertTrue(anomalies.isEmpty());
+    Expense outlier = new Expense("Коммунальные", 4300.0, "10.07.2024");
+    detector.onExpenseAdded(outlier);
+    assertEquals(1, anomalies.size());
+    assertSame(outlier, anomalies.get(0).expense());
+    assertEquals(1600.0, anomalies.get(0).median(), 50.0);
+
+    detector.onExpenseAdded(new Expense("Новая", 1_000_000.0, "10.07.2024"));
+    assertEquals(1, anomalies.size());
+
+    List<Expense> imported = List.of(new Expense("Коммунальные", 1600.0, "11.07.2024"),
+        new Expense("Коммунальные", 20_000.0, "12.01.2024"),
+        new Expense("Коммунальные", 1550.0, "13.07.2024"));
+    List<AnomalyDetector.Anomaly> batch = detector.scoreAll(imported);
+    assertEquals(1, batch.size());
+    assertSame(imported.get(1), batch.get(0).expense());
+    assertNull(detector.score(imported.get(0)));
+  }
+
+  /**
+   * Test method to record and score expenses in other currencies in the base currency.
+   */
+  @Test
+  void onExpenseAdded_ConvertsCurrencies() {
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", Expense.parseEpochDay("01.01.2023"), 90.0);
+    AnomalyDetector detector = new AnomalyDetector(fxRates);
+    Random random = new Random(11);
+    List<Expense> history = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      history.add(new Expense("Обеды", 4000 + random.nextInt(1000), "10.03.2023"));
+      history.add(new Expense("Обеды", 50 + random.nextInt(10), "11.03.2023", null, null,
+          "USD"));
+    }
+    history.add(new Expense("Обеды", 1.0, "12.03.2023", null, null, "EUR"));
+    detector.replay(history);
+    assertEquals(120, detector.getStats("Обеды", AnomalyDetector.ALL_SEASONS).getCount());
+    List<AnomalyDetector.Anomaly> anomalies = new ArrayList<>();
+    detector.addAnomalyListener(anomalies::add);
+
+    detector.onExpenseAdded(new Expense("Обеды", 50.0, "13.03.2023", null, null, "USD"));
+    detector.onExpenseAdded(new Expense("Обеды", 4500.0, "13.03.2023"));
+    detector.onExpenseAdded(new Expense("Обеды", 10.0, "13.03.2023", null, null, "EUR"));
+    assertTrue(anomalies.isEmpty());
+    detector.onExpenseAdded(new Expense("Обеды", 500.0, "14.03.2023", null, null, "USD"));
+    assertEquals(1, anomalies.size());
+    assertEquals(45000.0, anomalies.get(0).amount(), 0.001);
+  }
+}
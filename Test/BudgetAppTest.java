@@ -24,6 +24,14 @@ public class BudgetAppTest {
     assertEquals("2", choice);
   }
 
+  @Test
+  public void testGetUserChoiceAtEndOfInputExits() {
+    System.setIn(new ByteArrayInputStream(new byte[0]));
+
+    Scanner scanner = new Scanner(System.in);
+    assertEquals("6", budgetApp.getUserChoice(scanner));
+  }
+
   @Test
   public void testGetDoubleInput() {
     String input = "123.45\n";
@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BudgetMonitorTest {
+
+  private Path limitsFile;
+  private BudgetMonitor monitor;
+  private List<BudgetMonitor.Alert> alerts;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    limitsFile = Files.createTempDirectory("budgets").resolve("budgets.txt");
+    monitor = new BudgetMonitor(limitsFile.toString());
+    monitor.setLimit("Еда", 100.0);
+    alerts = new ArrayList<>();
+    monitor.addAlertListener(alerts::add);
+  }
+
+  /**
+   * Test method to fire each threshold once when it is crossed.
+   */
+  @Test
+  void onExpenseAdded_FiresThresholdsOnce() {
+    monitor.onExpenseAdded(new Expense("Еда", 50.0, "01.01.2023"));
+    assertTrue(alerts.isEmpty());
+    monitor.onExpenseAdded(new Expense("Еда", 35.0, "02.01.2023"));
+    assertEquals(1, alerts.size());
+    assertEquals(0.8, alerts.get(0).threshold(), 0.001);
+    monitor.onExpenseAdded(new Expense("Еда", 5.0, "03.01.2023"));
+    assertEquals(1, alerts.size());
+    monitor.onExpenseAdded(new Expense("Еда", 20.0, "04.01.2023"));
+    assertEquals(2, alerts.size());
+    assertEquals(1.0, alerts.get(1).threshold(), 0.001);
+    assertEquals(110.0, alerts.get(1).total(), 0.001);
+  }
+
+  /**
+   * Test method to ensure months and categories are tracked separately.
+   */
+  @Test
+  void onExpenseAdded_SeparateMonthsAndCategories() {
+    monitor.onExpenseAdded(new Expense("Еда", 90.0, "31.01.2023"));
+    monitor.onExpenseAdded(new Expense("Еда", 10.0, "01.02.2023"));
+    monitor.onExpenseAdded(new Expense("Прочее", 1000.0, "01.02.2023"));
+    assertEquals(1, alerts.size());
+    assertEquals(1, alerts.get(0).month());
+    assertEquals(10.0, monitor.getMonthTotal("Еда", 2023, 2), 0.001);
+  }
+
+  /**
+   * Test method to replay history without alerts and continue from the replayed totals.
+   */
+  @Test
+  void replay_RestoresTotalsSilently() {
+    monitor.replay(List.of(new Expense("Еда", 85.0, "01.01.2023")));
+    assertTrue(alerts.isEmpty());
+    monitor.onExpenseAdded(new Expense("Еда", 15.0, "02.01.2023"));
+    assertEquals(1, alerts.size());
+    assertEquals(1.0, alerts.get(0).threshold(), 0.001);
+  }
+
+  /**
+   * Test method to replay history on first use and count it once.
+   */
+  @Test
+  void replayLater_ReplaysOnFirstUse() {
+    monitor.replayLater(List.of(new Expense("Еда", 85.0, "01.01.2023")));
+    monitor.onExpenseAdded(new Expense("Еда", 15.0, "02.01.2023"));
+    assertEquals(1, alerts.size());
+    assertEquals(1.0, alerts.get(0).threshold(), 0.001);
+    assertEquals(100.0, monitor.getMonthTotal("Еда", 2023, 1), 0.001);
+  }
+
+  /**
+   * Test method to replace the totals with those of the moved expenses.
+   */
+  @Test
+  void rebuild_ReplacesTotals() {
+    monitor.replay(List.of(new Expense("Прочее", 85.0, "01.01.2023")));
+    monitor.rebuild(List.of(new Expense("Еда", 85.0, "01.01.2023")));
+    assertEquals(0.0, monitor.getMonthTotal("Прочее", 2023, 1), 0.001);
+    assertEquals(85.0, monitor.getMonthTotal("Еда", 2023, 1), 0.001);
+    monitor.onExpenseAdded(new Expense("Еда", 15.0, "02.01.2023"));
+    assertEquals(1, alerts.size());
+  }
+
+  /**
+   * Test method to ensure concurrent inserts neither lose amounts nor duplicate alerts.
+   */
+  @Test
+  void onExpenseAdded_Concurrent() throws InterruptedException {
+    List<BudgetMonitor.Alert> concurrentAlerts = java.util.Collections.synchronizedList(new ArrayList<>());
+    monitor.addAlertListener(concurrentAlerts::add);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 1000; i++) {
+      executor.execute(() -> monitor.onExpenseAdded(new Expense("Еда", 0.5, "10.03.2023")));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(500.0, monitor.getMonthTotal("Еда", 2023, 3), 0.001);
+    assertEquals(2, concurrentAlerts.size());
+  }
+
+  /**
+   * Test method to count expenses in other currencies in the base currency of the limits.
+   */
+  @Test
+  void onExpenseAdded_ConvertsCurrencies() {
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", Expense.parseEpochDay("01.01.2023"), 90.0);
+    BudgetMonitor converting = new BudgetMonitor(limitsFile.toString(), fxRates);
+    converting.setLimit("Еда", 1000.0);
+    List<BudgetMonitor.Alert> convertedAlerts = new ArrayList<>();
+    converting.addAlertListener(convertedAlerts::add);
+    converting.replay(List.of(new Expense("Еда", 5.0, "01.01.2023", null, null, "USD")));
+    converting.onExpenseAdded(new Expense("Еда", 2.0, "02.01.2023", null, null, "USD"));
+    assertTrue(convertedAlerts.isEmpty());
+    converting.onExpenseAdded(new Expense("Еда", 100.0, "03.01.2023", null, null, "EUR"));
+    converting.onExpenseAdded(new Expense("Еда", 3.0, "04.01.2023", null, null, "USD"));
+    assertEquals(1, convertedAlerts.size());
+    assertEquals(900.0, converting.getMonthTotal("Еда", 2023, 1), 0.001);
+  }
+
+  /**
+   * Test method to persist limits between instances.
+   */
+  @Test
+  void setLimit_Persisted() {
+    assertEquals(100.0, new BudgetMonitor(limitsFile.toString()).getLimit("Еда"), 0.001);
+  }
+}
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CategoryTreeTest {
+
+  private static final List<Expense> EXPENSES = List.of(
+      new Expense("Транспорт", 5.0, "01.01.2023"),
+      new Expense("Транспорт/Топливо", 50.0, "02.01.2023"),
+      new Expense("Транспорт/Такси", 20.0, "03.01.2023"),
+      new Expense("Транспорт/Такси/Ночное", 30.0, "04.01.2023"),
+      new Expense("Еда", 12.0, "05.01.2023"),
+      new Expense("Транспорт/Такси", 7.0, "05.02.2023"));
+  private static final FxRateTable BASE_ONLY = new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY);
+
+  /**
+   * Test method to roll up totals over subtrees of the category tree.
+   */
+  @Test
+  void rollup_SubtreeTotals() {
+    CategoryTree tree = new CategoryTree();
+    tree.add("Транспорт/Такси/Ночное");
+    tree.add("Транспорт/Топливо");
+    tree.add("Еда");
+
+    CategoryTree.Rollup rollup =
+        tree.rollup(EXPENSES, BASE_ONLY, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    assertEquals(112.0, rollup.getTotal("Транспорт"), 0.001);
+    assertEquals(57.0, rollup.getTotal("Транспорт/Такси"), 0.001);
+    assertEquals(27.0, rollup.getOwnTotal("Транспорт/Такси"), 0.001);
+    assertEquals(12.0, rollup.getTotal("Еда"), 0.001);
+
+    int january = Expense.parseEpochDay("31.01.2023");
+    assertEquals(50.0, tree.rollup(EXPENSES, BASE_ONLY, Integer.MIN_VALUE, january)
+        .getTotal("Транспорт/Такси"), 0.001);
+  }
+
+  /**
+   * Test method to convert expenses in other currencies and leave out those without a rate.
+   */
+  @Test
+  void rollup_ConvertsCurrencies() {
+    CategoryTree tree = new CategoryTree();
+    tree.add("Транспорт/Такси");
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", Expense.parseEpochDay("01.01.2023"), 90.0);
+    List<Expense> expenses = List.of(new Expense("Транспорт", 100.0, "01.01.2023"),
+        new Expense("Транспорт/Такси", 3.0, "02.01.2023", null, null, "USD"),
+        new Expense("Транспорт/Такси", 5.0, "02.01.2023", null, null, "EUR"));
+    CategoryTree.Rollup rollup = tree.rollup(expenses, fxRates, Integer.MIN_VALUE,
+        Integer.MAX_VALUE);
+    assertEquals(370.0, rollup.getTotal("Транспорт"), 0.001);
+    assertEquals(270.0, rollup.getOwnTotal("Транспорт/Такси"), 0.001);
+  }
+
+  /**
+   * Test method to remove a subtree and renumber the remaining categories.
+   */
+  @Test
+  void remove_Subtree() {
+    CategoryTree tree = new CategoryTree();
+    tree.add("Транспорт/Такси/Ночное");
+    tree.add("Транспорт/Топливо");
+    assertEquals(List.of("Транспорт/Такси", "Транспорт/Такси/Ночное"), tree.remove("Транспорт/Такси"));
+    assertFalse(tree.contains("Транспорт/Такси/Ночное"));
+    CategoryTree.Rollup rollup =
+        tree.rollup(EXPENSES, BASE_ONLY, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    assertEquals(55.0, rollup.getTotal("Транспорт"), 0.001);
+  }
+
+  /**
+   * Test method to move the expenses of a removed subcategory to its parent.
+   */
+  @Test
+  void removeCategory_ReassignsExpenses() throws IOException {
+    Path dir = Files.createTempDirectory("tree");
+    ExpenseCategoryManager manager =
+        new ExpenseCategoryManager(dir.resolve("categories.txt").toString());
+    manager.addCategory("Транспорт/Такси");
+    assertTrue(manager.getCategories().contains("Транспорт"));
+    Ledger ledger = new Ledger(dir.resolve("expenses.txt").toString(), manager);
+    ledger.addExpense(new Expense("Транспорт/Такси", 20.0, "03.01.2023", null, "Ночью"));
+
+    manager.removeCategory("Транспорт/Такси");
+    assertEquals("Транспорт", ledger.getExpenses().get(0).getCategory());
+    assertEquals("Ночью", ledger.getExpenses().get(0).getNote());
+  }
+
+  /**
+   * Test method to keep a top-level category with subcategories until a category receives the
+   * expenses of the whole subtree.
+   */
+  @Test
+  void removeCategory_TopLevelSubtreeNeedsReplacement() throws IOException {
+    Path dir = Files.createTempDirectory("tree");
+    ExpenseCategoryManager manager =
+        new ExpenseCategoryManager(dir.resolve("categories.txt").toString());
+    manager.addCategory("Транспорт/Такси");
+    manager.addCategory("Прочее");
+    Ledger ledger = new Ledger(dir.resolve("expenses.txt").toString(), manager);
+    ledger.addExpense(new Expense("Транспорт/Такси", 20.0, "03.01.2023"));
+    ledger.addExpense(new Expense("Транспорт", 5.0, "04.01.2023"));
+
+    manager.removeCategory("Транспорт");
+    assertTrue(manager.getCategories().contains("Транспорт/Такси"));
+    manager.removeCategory("Транспорт", "Транспорт/Такси");
+    assertTrue(manager.getCategories().contains("Транспорт"));
+
+    manager.removeCategory("Транспорт", "Прочее");
+    assertEquals(List.of("Прочее"), manager.getCategoryTree().getRoots());
+    assertEquals("Прочее", ledger.getExpenses().get(0).getCategory());
+    assertEquals("Прочее", ledger.getExpenses().get(1).getCategory());
+  }
+}
@@ -0,0 +1,124 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+  /**
+   * Test method to publish expense and category changes of a ledger in order.
+   */
+  @Test
+  void ledgerChanges_ArePublished() throws IOException {
+    Path dir = Files.createTempDirectory("feed");
+    ExpenseCategoryManager categoryManager =
+        new ExpenseCategoryManager(dir.resolve("categories.txt").toString());
+    Ledger ledger = new Ledger(dir.resolve("expenses.txt").toString(), categoryManager);
+    ChangeFeed.Subscription subscription = ledger.getChangeFeed().subscribe();
+
+    categoryManager.addCategory("Транспорт/Такси");
+    ledger.addExpense(new Expense("Транспорт/Такси", 300.0, "01.02.2023"));
+    categoryManager.removeCategory("Транспорт/Такси");
+
+    List<ChangeEvent> events = new ArrayList<>();
+    assertEquals(4, subscription.poll(events, 100));
+    assertEquals(ChangeEvent.Type.CATEGORY_ADDED, events.get(0).type());
+    assertEquals(List.of("Транспорт"), events.get(0).categories());
+    assertEquals(List.of("Транспорт/Такси"), events.get(1).categories());
+    assertEquals(ChangeEvent.Type.EXPENSE_ADDED, events.get(2).type());
+    assertEquals(300.0, events.get(2).expense().getAmount(), 0.0);
+    assertEquals(ChangeEvent.Type.CATEGORIES_REMOVED, events.get(3).type());
+    assertEquals("Транспорт", events.get(3).replacement());
+    assertEquals(3, events.get(3).sequence());
+    assertEquals(3, subscription.getSequence());
+    assertEquals(0, subscription.poll(events, 100));
+  }
+
+  /**
+   * Test method to consume in batches and resume from a remembered sequence.
+   */
+  @Test
+  void subscribe_ResumesFromSequence() {
+    ChangeFeed feed = new ChangeFeed(8);
+    ChangeFeed.Subscription first = feed.subscribe();
+    for (int i = 0; i < 6; i++) {
+      feed.onCategoryAdded("c" + i);
+    }
+    List<ChangeEvent> batch = new ArrayList<>();
+    assertEquals(4, first.poll(batch, 4));
+    first.close();
+
+    ChangeFeed.Subscription resumed = feed.subscribe(first.getSequence() + 1);
+    batch.clear();
+    assertEquals(2, resumed.poll(batch, 100));
+    assertEquals(List.of("c4"), batch.get(0).categories());
+
+    for (int i = 6; i < 20; i++) {
+      feed.onCategoryAdded("c" + i);
+      resumed.poll(batch, 100);
+    }
+    assertThrows(IllegalArgumentException.class, () -> feed.subscribe(5));
+    assertThrows(IllegalArgumentException.class, () -> feed.subscribe(21));
+    assertThrows(IllegalArgumentException.class, () -> new ChangeFeed(6));
+  }
+
+  /**
+   * Test method to block publishing while a subscriber is a full ring behind.
+   */
+  @Test
+  void publish_WaitsForSlowSubscriber() throws InterruptedException {
+    ChangeFeed feed = new ChangeFeed(4, 10, TimeUnit.SECONDS);
+    ChangeFeed.Subscription subscription = feed.subscribe();
+    Thread publisher = new Thread(() -> {
+      for (int i = 0; i < 10; i++) {
+        feed.onCategoryAdded("c" + i);
+      }
+    });
+    publisher.start();
+    publisher.join(200);
+    assertTrue(publisher.isAlive());
+    assertEquals(3, feed.getCursor());
+
+    List<ChangeEvent> events = new ArrayList<>();
+    while (events.size() < 10) {
+      subscription.poll(events, 3, 1, TimeUnit.SECONDS);
+    }
+    publisher.join(1000);
+    assertFalse(publisher.isAlive());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, events.get(i).sequence());
+    }
+  }
+
+  /**
+   * Test method to drop a subscriber that stays a full ring behind for longer than the maximum
+   * publish wait, without holding back the other subscribers.
+   */
+  @Test
+  void publish_DropsSubscriberLaggingPastMaxWait() {
+    ChangeFeed feed = new ChangeFeed(4, 20, TimeUnit.MILLISECONDS);
+    ChangeFeed.Subscription stalled = feed.subscribe();
+    ChangeFeed.Subscription live = feed.subscribe();
+    List<ChangeEvent> events = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      feed.onCategoryAdded("c" + i);
+      live.poll(events, 100);
+    }
+    assertEquals(9, feed.getCursor());
+    assertEquals(10, events.size());
+    assertEquals(9, live.getSequence());
+    assertThrows(IllegalStateException.class, () -> stalled.poll(new ArrayList<>(), 100));
+
+    ChangeFeed.Subscription resubscribed = feed.subscribe();
+    feed.onCategoryAdded("c10");
+    events.clear();
+    assertEquals(1, resubscribed.poll(events, 100));
+    assertEquals(10, events.get(0).sequence());
+  }
+}
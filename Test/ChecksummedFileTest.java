@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChecksummedFileTest {
+
+  private Path file;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    file = Files.createTempDirectory("checksummed").resolve("expenses.txt");
+  }
+
+  /**
+   * Test method to write lines and read them back unchanged.
+   */
+  @Test
+  void writeAndRead_RoundTrip() throws IOException {
+    List<String> lines = generateLines(ChecksummedFile.BLOCK_SIZE * 2 + 5);
+    ChecksummedFile.writeAtomically(file, lines);
+
+    ChecksummedFile.Content content = ChecksummedFile.read(file);
+    assertTrue(content.isIntact());
+    assertEquals(lines, content.getLines());
+  }
+
+  /**
+   * Test method to read a legacy file without checksum trailers.
+   */
+  @Test
+  void read_LegacyFile() throws IOException {
+    Files.writeString(file, "Еда 12.0 10.09.2023\nПрочее 1.0 01.01.2023\n", StandardCharsets.UTF_8);
+
+    ChecksummedFile.Content content = ChecksummedFile.read(file);
+    assertTrue(content.isIntact());
+    assertEquals(List.of("Еда 12.0 10.09.2023", "Прочее 1.0 01.01.2023"), content.getLines());
+  }
+
+  /**
+   * Test method to ensure only the damaged block is dropped when one block is corrupted.
+   */
+  @Test
+  void read_CorruptBlockIsIsolated() throws IOException {
+    List<String> lines = generateLines(ChecksummedFile.BLOCK_SIZE * 3);
+    ChecksummedFile.writeAtomically(file, lines);
+    String text = Files.readString(file, StandardCharsets.UTF_8);
+    Files.writeString(file, text.replace("Еда 1500.0", "Еда 9999.0"), StandardCharsets.UTF_8);
+
+    ChecksummedFile.Content content = ChecksummedFile.read(file);
+    assertEquals(1, content.getCorruptBlocks().size());
+    assertEquals(1, content.getCorruptBlocks().get(0).getBlockIndex());
+    assertEquals(ChecksummedFile.BLOCK_SIZE * 2, content.getLines().size());
+  }
+
+  /**
+   * Test method to detect a torn tail left behind by an interrupted write.
+   */
+  @Test
+  void read_TornTail() throws IOException {
+    ChecksummedFile.writeAtomically(file, generateLines(10));
+    Files.writeString(file, "Еда 5.0 01.0", StandardCharsets.UTF_8,
+        java.nio.file.StandardOpenOption.APPEND);
+
+    ChecksummedFile.Content content = ChecksummedFile.read(file);
+    assertEquals(10, content.getLines().size());
+    assertEquals(1, content.getCorruptBlocks().size());
+  }
+
+  private static List<String> generateLines(int count) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      lines.add("Еда " + (double) i + " 01.01.2023");
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateIndexTest {
+
+  /**
+   * Test method to ensure equal expenses share a fingerprint and differing ones do not.
+   */
+  @Test
+  void fingerprint_DependsOnAllFields() {
+    long base = DuplicateIndex.fingerprint(new Expense("Еда", 12.0, "10.09.2023"));
+    assertEquals(base, DuplicateIndex.fingerprint(new Expense("Еда", 12.0, "10.09.2023")));
+    assertFalse(base == DuplicateIndex.fingerprint(new Expense("Еда", 12.5, "10.09.2023")));
+    assertFalse(base == DuplicateIndex.fingerprint(new Expense("Еда", 12.0, "11.09.2023")));
+    assertFalse(base == DuplicateIndex.fingerprint(new Expense("Прочее", 12.0, "10.09.2023")));
+    assertFalse(base == DuplicateIndex.fingerprint(new Expense("Еда", 12.0, "10.09.2023", "tx-1")));
+  }
+
+  /**
+   * Test method to add and look up values in the primitive hash set across resizes.
+   */
+  @Test
+  void longHashSet_AddAndContains() {
+    LongHashSet set = new LongHashSet(4);
+    for (long i = 0; i < 10_000; i++) {
+      assertTrue(set.add(i * 31));
+    }
+    assertFalse(set.add(0));
+    assertEquals(10_000, set.size());
+    assertTrue(set.contains(31 * 9_999));
+    assertFalse(set.contains(7));
+
+    LongHashSet bounded = new LongHashSet(4, 16);
+    for (long i = 1; i <= 12; i++) {
+      assertTrue(bounded.add(i));
+    }
+    assertFalse(bounded.add(12));
+    assertThrows(IllegalStateException.class, () -> bounded.add(13));
+    assertFalse(bounded.contains(13));
+    assertEquals(12, bounded.size());
+  }
+
+  /**
+   * Test method to skip duplicates on repeated imports with the exact and the compact index.
+   */
+  @Test
+  void importExpenses_SkipsDuplicates() throws IOException {
+    for (boolean compact : new boolean[] {false, true}) {
+      Path dir = Files.createTempDirectory("dedup");
+      Ledger ledger = new Ledger(dir.resolve("expenses.txt").toString(),
+          new ExpenseCategoryManager(dir.resolve("categories.txt").toString()));
+      ledger.setCompactDuplicateIndex(compact);
+      List<Expense> statement = new ArrayList<>();
+      for (int i = 1; i <= 20; i++) {
+        statement.add(new Expense("Еда", i, String.format("%02d.01.2023", i), "tx-" + i));
+      }
+      assertEquals(15, ledger.importExpenses(statement.subList(0, 15)));
+      assertEquals(5, ledger.importExpenses(statement));
+      assertEquals(20, ledger.getExpenses().size());
+    }
+  }
+
+  /**
+   * Test method to keep the external id through a save and load of the expenses file.
+   */
+  @Test
+  void externalId_RoundTrip() {
+    Expense expense = Expense.parse(new Expense("Еда", 1.0, "01.01.2023", "a b%c").toLine());
+    assertEquals("a b%c", expense.getExternalId());
+  }
+}
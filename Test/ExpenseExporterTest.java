@@ -0,0 +1,130 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseExporterTest {
+
+  /**
+   * Test method to quote CSV fields and escape JSON strings.
+   */
+  @Test
+  void export_CsvAndJsonLines() throws IOException {
+    Path dir = Files.createTempDirectory("export");
+    List<Expense> expenses = List.of(
+        new Expense("Еда", 12.5, "10.09.2023", null, "кофе, \"с собой\"", null),
+        new Expense("Такси", 300.0, "11.09.2023", "tx-1", null, "USD"));
+
+    Path csv = dir.resolve("expenses.csv");
+    assertEquals(2, new ExpenseExporter(ExpenseExporter.Format.CSV).export(expenses, csv));
+    assertEquals(List.of("category,amount,date,currency,id,note",
+            "Еда,12.5,10.09.2023,,,\"кофе, \"\"с собой\"\"\"",
+            "Такси,300.0,11.09.2023,USD,tx-1,"),
+        Files.readAllLines(csv, StandardCharsets.UTF_8));
+
+    Path json = dir.resolve("expenses.jsonl");
+    new ExpenseExporter(ExpenseExporter.Format.JSON_LINES).export(expenses, json);
+    assertEquals("{\"category\":\"Еда\",\"amount\":12.5,\"date\":\"10.09.2023\","
+            + "\"currency\":null,\"id\":null,\"note\":\"кофе, \\\"с собой\\\"\"}",
+        Files.readAllLines(json, StandardCharsets.UTF_8).get(0));
+  }
+
+  /**
+   * Test method to append only new rows and to start over after earlier rows change.
+   */
+  @Test
+  void exportIncremental_AppendsNewRows() throws IOException {
+    Path csv = Files.createTempDirectory("export").resolve("expenses.csv");
+    ExpenseExporter exporter = new ExpenseExporter(ExpenseExporter.Format.CSV);
+    List<Expense> expenses = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      expenses.add(new Expense("Еда", i, String.format("%02d.01.2023", i)));
+    }
+    assertEquals(3, exporter.exportIncremental(expenses, csv));
+    assertEquals(0, exporter.exportIncremental(expenses, csv));
+
+    expenses.add(new Expense("Такси", 4.0, "04.01.2023"));
+    assertEquals(1, exporter.exportIncremental(expenses, csv));
+    List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+    assertEquals(5, lines.size());
+    assertEquals("Такси,4.0,04.01.2023,,,", lines.get(4));
+
+    expenses.set(0, expenses.get(0).withCategory("Прочее"));
+    assertEquals(4, exporter.exportIncremental(expenses, csv));
+    lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+    assertEquals(5, lines.size());
+    assertEquals("Прочее,1.0,01.01.2023,,,", lines.get(1));
+
+    expenses.set(1, new Expense("Еда", 2.0, "02.01.2023", null, "обед", null));
+    assertEquals(4, exporter.exportIncremental(expenses, csv));
+    lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+    assertEquals("Еда,2.0,02.01.2023,,,обед", lines.get(2));
+  }
+
+  /**
+   * Test method to write rows that span several buffers in the binary format.
+   */
+  @Test
+  void export_BinaryAcrossBuffers() throws IOException {
+    Path bin = Files.createTempDirectory("export").resolve("expenses.bin");
+    List<Expense> expenses = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      expenses.add(new Expense("Еда", i, "01.01.2023", null, i % 2 == 0 ? null : "n" + i, null));
+    }
+    new ExpenseExporter(ExpenseExporter.Format.BINARY).export(expenses, bin);
+
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(bin));
+    assertEquals('E', in.get());
+    in.position(4);
+    for (int i = 0; i < expenses.size(); i++) {
+      assertEquals(Expense.toEpochDay(2023, 1, 1), in.getInt());
+      assertEquals(i, in.getDouble(), 0.0);
+      assertEquals("Еда", readString(in));
+      assertEquals("01.01.2023", readString(in));
+      assertNull(readString(in));
+      assertNull(readString(in));
+      assertEquals(i % 2 == 0 ? null : "n" + i, readString(in));
+    }
+    assertFalse(in.hasRemaining());
+  }
+
+  /**
+   * Test method to export report totals by category.
+   */
+  @Test
+  void exportTotals_WritesOneRowPerCategory() throws IOException {
+    Path csv = Files.createTempDirectory("export").resolve("totals.csv");
+    Map<String, Double> totals = new LinkedHashMap<>();
+    totals.put("Еда", 100.0);
+    totals.put("Такси", 50.5);
+    new ExpenseExporter(ExpenseExporter.Format.CSV).exportTotals(totals, csv);
+    assertEquals(List.of("category,total", "Еда,100.0", "Такси,50.5"),
+        Files.readAllLines(csv, StandardCharsets.UTF_8));
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      length |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    if (length == 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length - 1];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
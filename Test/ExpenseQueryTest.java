@@ -0,0 +1,127 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseQueryTest {
+
+  /**
+   * Test method to push the conditions of a query down into day, category and amount ranges and
+   * to reject invalid queries.
+   */
+  @Test
+  void parse_PushesDownConditions() {
+    ExpenseQuery query = ExpenseQuery.parse("SUM(amount), count(*) where date in 2023"
+        + " and date >= 01.03.2023 and category in ('Еда', \"Дом/Ремонт\") and amount > 10"
+        + " group by category, month order by sum desc limit 10");
+    assertEquals(List.of(ExpenseQuery.Aggregate.SUM, ExpenseQuery.Aggregate.COUNT),
+        query.getAggregates());
+    assertEquals(Expense.toEpochDay(2023, 3, 1), query.getFromDay());
+    assertEquals(Expense.toEpochDay(2023, 12, 31), query.getToDay());
+    assertEquals(Set.of("Еда", "Дом/Ремонт"), query.getCategories());
+    assertTrue(query.isGroupedByCategory());
+    assertEquals(ExpenseQuery.Period.MONTH, query.getPeriod());
+
+    ExpenseQuery month = ExpenseQuery.parse("count(*) where date in 02.2024");
+    assertEquals(Expense.toEpochDay(2024, 2, 1), month.getFromDay());
+    assertEquals(Expense.toEpochDay(2024, 2, 29), month.getToDay());
+    assertNull(month.getCategories());
+
+    assertThrows(IllegalArgumentException.class, () -> ExpenseQuery.parse("sum(amount) where"));
+    assertThrows(IllegalArgumentException.class, () -> ExpenseQuery.parse("median(amount)"));
+    assertThrows(IllegalArgumentException.class,
+        () -> ExpenseQuery.parse("sum(amount) group by month, year"));
+    assertThrows(IllegalArgumentException.class,
+        () -> ExpenseQuery.parse("sum(amount) order by max"));
+    assertThrows(IllegalArgumentException.class,
+        () -> ExpenseQuery.parse("sum(amount) where date in 31.02.2023"));
+    assertThrows(IllegalArgumentException.class, () -> ExpenseQuery.parse("sum(amount) limit 0"));
+  }
+
+  /**
+   * Test method to aggregate groups in one pass, in dense and in hashed group slots, with
+   * expenses in other currencies converted.
+   */
+  @Test
+  void query_MatchesHandWrittenAggregation() {
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", Expense.toEpochDay(2022, 1, 1), 80.0);
+    List<Expense> expenses = new ArrayList<>();
+    Random random = new Random(3);
+    String[] categories = {"Еда", "Транспорт", "Дом"};
+    for (int i = 0; i < 2000; i++) {
+      int day = Expense.toEpochDay(2022, 1, 1) + random.nextInt(3 * 365);
+      expenses.add(new Expense(categories[random.nextInt(3)], 1 + random.nextInt(100),
+          Expense.formatEpochDay(day), null, null, i % 50 == 0 ? "USD" : null));
+    }
+    ExpenseReportGenerator generator = new ExpenseReportGenerator(expenses, fxRates);
+
+    ExpenseQuery.Result total = generator.query("sum(amount), count(*) where date in 2023");
+    assertEquals(List.of("sum", "count"), total.getColumns());
+    assertEquals(1, total.getRows().size());
+    assertEquals(generator.getTotalExpensesForYear(2023),
+        (Double) total.getRows().get(0)[0], 0.001);
+    assertEquals((long) generator.getExpenseCountInPeriod(Expense.toEpochDay(2023, 1, 1),
+        Expense.toEpochDay(2023, 12, 31)), total.getRows().get(0)[1]);
+
+    ExpenseQuery.Result byMonth = generator.query("sum(amount), min(amount), max(amount)"
+        + " where category = 'Еда' and date in 2023 group by category, month order by sum desc"
+        + " limit 5");
+    assertEquals(List.of("category", "month", "sum", "min", "max"), byMonth.getColumns());
+    assertEquals(5, byMonth.getRows().size());
+    for (int i = 0; i < 5; i++) {
+      Object[] row = byMonth.getRows().get(i);
+      int month = Integer.parseInt(((String) row[1]).substring(0, 2));
+      double expected = 0;
+      double min = Double.POSITIVE_INFINITY;
+      for (Expense expense : expenses) {
+        if (expense.getCategory().equals("Еда") && expense.getDate().endsWith(row[1].toString())) {
+          double amount = expense.getAmount() * (expense.getCurrency() == null ? 1 : 80.0);
+          expected += amount;
+          min = Math.min(min, amount);
+        }
+      }
+      assertEquals("Еда", row[0]);
+      assertTrue(month >= 1 && month <= 12);
+      assertEquals(expected, (Double) row[2], 0.001);
+      assertEquals(min, (Double) row[3], 0.001);
+      if (i > 0) {
+        assertTrue((Double) row[2] <= (Double) byMonth.getRows().get(i - 1)[2]);
+      }
+    }
+
+    List<Object[]> dense = generator.query("sum(amount), max(amount)"
+        + " where date between 01.01.2022 and 31.12.2024 group by category, day").getRows();
+    List<Object[]> hashed = generator.query("sum(amount), max(amount)"
+        + " where date >= 01.01.2022 group by category, day").getRows();
+    assertEquals(dense.size(), hashed.size());
+    for (int i = 0; i < dense.size(); i++) {
+      assertArrayEquals(dense.get(i), hashed.get(i));
+    }
+
+    List<Object[]> unboundedMonths = generator.query("sum(amount) group by month").getRows();
+    assertEquals(36, unboundedMonths.size());
+    assertEquals("01.2022", unboundedMonths.get(0)[0]);
+    double allMonths = 0;
+    for (Object[] row : unboundedMonths) {
+      allMonths += (Double) row[1];
+    }
+    assertEquals((Double) generator.query("sum(amount)").getRows().get(0)[0], allMonths, 0.001);
+    List<Object[]> years = generator.query("count(*) where date >= 01.01.2023 group by year")
+        .getRows();
+    assertEquals(2, years.size());
+    assertEquals("2023", years.get(0)[0]);
+    assertEquals((long) generator.getExpenseCountInPeriod(Expense.toEpochDay(2023, 1, 1),
+        Expense.toEpochDay(2023, 12, 31)), years.get(0)[1]);
+
+    ExpenseQuery.Result none = generator.query("avg(amount) where category = 'Нет'"
+        + " group by category");
+    assertTrue(none.getRows().isEmpty());
+    assertTrue(generator.query("count(*) where amount > 1000 and amount < 100").format()
+        .contains("0"));
+  }
+}
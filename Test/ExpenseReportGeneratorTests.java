@@ -6,6 +6,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -111,4 +112,52 @@ class ExpenseReportGeneratorTest {
   void testParseDateWithInvalidDate() {
     assertNull(reportGenerator.parseDate("31.02.2023"));
   }
+
+  /**
+   * Test method to convert expenses in other currencies with the rate of their day.
+   */
+  @Test
+  void testGetTotalExpensesForYearWithCurrencies() {
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", Expense.parseEpochDay("01.01.2023"), 70.0);
+    fxRates.addRate("USD", Expense.parseEpochDay("03.01.2023"), 80.0);
+    List<Expense> expenses = new ArrayList<>();
+    expenses.add(new Expense("Category1", 100.0, "01.01.2023"));
+    expenses.add(new Expense("Category1", 1.0, "02.01.2023", null, null, "USD"));
+    expenses.add(new Expense("Category1", 2.0, "02.01.2023", null, null, "usd"));
+    expenses.add(new Expense("Category2", 1.0, "05.01.2023", null, null, "USD"));
+    expenses.add(new Expense("Category2", 5.0, "05.01.2023", null, null, "RUB"));
+    ExpenseReportGenerator generator = new ExpenseReportGenerator(expenses, fxRates);
+    assertEquals(100.0 + 3 * 70.0 + 80.0 + 5.0, generator.getTotalExpensesForYear(2023), 0.001);
+  }
+
+  /**
+   * Test method to calculate totals by category and the number of expenses in a period.
+   */
+  @Test
+  void testGetTotalsByCategory() {
+    int from = Expense.parseEpochDay("02.01.2023");
+    int to = Expense.parseEpochDay("31.12.2023");
+    Map<String, Double> totals = reportGenerator.getTotalsByCategory(from, to);
+    assertEquals(2, totals.size());
+    assertEquals(200.0, totals.get("Category1"), 0.001);
+    assertEquals(200.0, totals.get("Category2"), 0.001);
+    assertEquals(3, reportGenerator.getExpenseCountInPeriod(from, to));
+  }
+
+  /**
+   * Test method to show the currency and the converted amount of expenses in other currencies.
+   */
+  @Test
+  void testFormatAmount() {
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", Expense.parseEpochDay("01.01.2023"), 70.0);
+    ExpenseReportGenerator generator = new ExpenseReportGenerator(new ArrayList<>(), fxRates);
+    assertEquals(String.format("%.1f", 12.5),
+        generator.formatAmount(new Expense("Еда", 12.5, "01.01.2023")));
+    assertEquals(String.format("%.1f USD (%.1f RUB)", 2.0, 140.0), generator.formatAmount(
+        new Expense("Еда", 2.0, "01.01.2023", null, null, "USD")));
+    assertEquals(String.format("%.1f EUR (нет курса)", 2.0), generator.formatAmount(
+        new Expense("Еда", 2.0, "01.01.2023", null, null, "EUR")));
+  }
 }
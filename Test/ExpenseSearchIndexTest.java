@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseSearchIndexTest {
+
+  private ExpenseSearchIndex index;
+
+  @BeforeEach
+  void setUp() {
+    List<Expense> expenses = new ArrayList<>();
+    expenses.add(new Expense("Еда", 4.5, "01.01.2023", null, "Кофе в Starbucks"));
+    expenses.add(new Expense("Еда", 60.0, "02.01.2023", null, "Ашан, продукты"));
+    expenses.add(new Expense("Транспорт", 12.0, "03.01.2023", null, "Такси домой"));
+    expenses.add(new Expense("Еда", 3.0, "04.02.2023", null, "кофейня Ёлка"));
+    expenses.add(new Expense("Прочее", 7.0, "05.02.2023"));
+    index = new ExpenseSearchIndex(expenses);
+  }
+
+  /**
+   * Test method to match words case-insensitively in Cyrillic and Latin text.
+   */
+  @Test
+  void search_CaseInsensitive() {
+    assertArrayEquals(new int[] {0}, index.search("КОФЕ"));
+    assertArrayEquals(new int[] {0}, index.search("starbucks"));
+    assertArrayEquals(new int[] {3}, index.search("елка"));
+  }
+
+  /**
+   * Test method to match prefixes and combine terms with AND and OR.
+   */
+  @Test
+  void search_PrefixAndBoolean() {
+    assertArrayEquals(new int[] {0, 3}, index.search("коф*"));
+    assertArrayEquals(new int[] {1}, index.search("еда продукты"));
+    assertArrayEquals(new int[] {0, 2, 3}, index.search("коф* OR такси"));
+    assertArrayEquals(new int[] {4}, index.search("прочее"));
+  }
+
+  /**
+   * Test method to match no rows for a query without words.
+   */
+  @Test
+  void search_NoWords() {
+    assertArrayEquals(new int[0], index.search(""));
+    assertArrayEquals(new int[0], index.search("   "));
+    assertArrayEquals(new int[0], index.search("!!!"));
+    assertArrayEquals(new int[0], index.search("OR"));
+  }
+
+  /**
+   * Test method to combine a query with date and amount filters.
+   */
+  @Test
+  void search_WithFilters() {
+    int february = Expense.parseEpochDay("01.02.2023");
+    assertArrayEquals(new int[] {3}, index.search("коф*", february, Integer.MAX_VALUE,
+        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+    assertArrayEquals(new int[] {1}, index.search("еда", Integer.MIN_VALUE, Integer.MAX_VALUE,
+        10.0, 100.0));
+  }
+
+  /**
+   * Test method to find expenses added after the index was built.
+   */
+  @Test
+  void onExpenseAdded_UpdatesIndex() {
+    index.onExpenseAdded(new Expense("Транспорт", 30.0, "06.02.2023", null, "Такси в аэропорт"));
+    assertArrayEquals(new int[] {2, 5}, index.search("такси"));
+  }
+}
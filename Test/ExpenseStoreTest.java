@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpenseStoreTest {
+
+  /**
+   * Test method to keep snapshots unchanged by later appends across chunk boundaries.
+   */
+  @Test
+  void snapshot_IgnoresLaterAppends() {
+    ExpenseStore store = new ExpenseStore();
+    for (int i = 0; i < ExpenseStore.CHUNK_SIZE - 1; i++) {
+      store.add(new Expense("Еда", 1.0, "01.01.2023"));
+    }
+    ExpenseStore.Snapshot snapshot = store.snapshot();
+    List<Expense> batch = new ArrayList<>();
+    for (int i = 0; i < 3 * ExpenseStore.CHUNK_SIZE; i++) {
+      batch.add(new Expense("Такси", 2.0, "02.01.2023"));
+    }
+    store.addAll(batch);
+
+    assertEquals(ExpenseStore.CHUNK_SIZE - 1, snapshot.size());
+    assertEquals(4 * ExpenseStore.CHUNK_SIZE - 1, store.size());
+    assertEquals("Такси", store.get(ExpenseStore.CHUNK_SIZE).getCategory());
+    assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(ExpenseStore.CHUNK_SIZE));
+    assertThrows(UnsupportedOperationException.class,
+        () -> snapshot.add(new Expense("Еда", 1.0, "01.01.2023")));
+  }
+
+  /**
+   * Test method to copy changed chunks on replacement and leave snapshots untouched.
+   */
+  @Test
+  void replaceAll_CopiesChangedChunks() {
+    ExpenseStore store = new ExpenseStore(List.of(new Expense("Такси", 1.0, "01.01.2023"),
+        new Expense("Еда", 2.0, "01.01.2023")));
+    ExpenseStore.Snapshot before = store.snapshot();
+    store.replaceAll(e -> e.getCategory().equals("Такси") ? e.withCategory("Транспорт") : e);
+    store.set(1, new Expense("Кафе", 3.0, "02.01.2023"));
+
+    assertEquals("Транспорт", store.get(0).getCategory());
+    assertEquals("Кафе", store.get(1).getCategory());
+    assertEquals("Такси", before.get(0).getCategory());
+    assertEquals("Еда", before.get(1).getCategory());
+  }
+
+  /**
+   * Test method to read consistent totals from snapshots while a writer keeps appending.
+   */
+  @Test
+  void snapshot_ConsistentDuringConcurrentWrites() throws InterruptedException {
+    ExpenseStore store = new ExpenseStore();
+    AtomicBoolean stop = new AtomicBoolean();
+    Thread writer = new Thread(() -> {
+      while (!stop.get() && store.size() < 1_000_000) {
+        store.add(new Expense("Еда", 1.0, "01.01.2023"));
+      }
+    });
+    writer.start();
+    for (int round = 0; round < 50; round++) {
+      ExpenseStore.Snapshot snapshot = store.snapshot();
+      double total = 0;
+      for (Expense expense : snapshot) {
+        total += expense.getAmount();
+      }
+      assertEquals(snapshot.size(), total, 0.0);
+    }
+    stop.set(true);
+    writer.join();
+  }
+}
@@ -0,0 +1,175 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerRegistryTest {
+
+  private Path baseDir;
+  private LedgerRegistry registry;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    baseDir = Files.createTempDirectory("tenants");
+    registry = new LedgerRegistry(baseDir, 2);
+  }
+
+  /**
+   * Test method to ensure tenants do not see each other's expenses.
+   */
+  @Test
+  void withLedger_TenantsAreIsolated() {
+    registry.withLedger("alpha", ledger -> {
+      ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+      return null;
+    });
+    int betaCount = registry.withLedger("beta", ledger -> ledger.getExpenses().size());
+    assertEquals(0, betaCount);
+    int alphaCount = registry.withLedger("alpha", ledger -> ledger.getExpenses().size());
+    assertEquals(1, alphaCount);
+  }
+
+  /**
+   * Test method to ensure evicted tenants are saved and reloaded transparently.
+   */
+  @Test
+  void withLedger_EvictedTenantIsReloaded() {
+    registry.withLedger("alpha", ledger -> {
+      ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+      return null;
+    });
+    registry.withLedger("beta", ledger -> null);
+    registry.withLedger("gamma", ledger -> null);
+    assertEquals(2, registry.getResidentCount());
+
+    double total = registry.withLedger("alpha", ledger -> ledger.getExpenses().get(0).getAmount());
+    assertEquals(10.0, total, 0.001);
+  }
+
+  /**
+   * Test method to evict ledgers that have been idle.
+   */
+  @Test
+  void evictIdle_SavesAndEvicts() {
+    registry.withLedger("alpha", ledger -> {
+      ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+      return null;
+    });
+    assertEquals(1, registry.evictIdle(Duration.ZERO));
+    assertEquals(0, registry.getResidentCount());
+    assertTrue(Files.exists(baseDir.resolve("alpha").resolve(LedgerRegistry.EXPENSES_FILE_NAME)));
+  }
+
+  /**
+   * Test method to aggregate totals over resident and evicted tenants.
+   */
+  @Test
+  void getTotalsByCategoryAcrossTenants() {
+    for (String tenant : List.of("alpha", "beta", "gamma")) {
+      registry.withLedger(tenant, ledger -> {
+        ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+        ledger.addExpense(new Expense("Прочее", 1.0, "02.01.2023"));
+        return null;
+      });
+    }
+    Map<String, Double> totals = registry.getTotalsByCategoryAcrossTenants();
+    assertEquals(30.0, totals.get("Еда"), 0.001);
+    assertEquals(3.0, totals.get("Прочее"), 0.001);
+  }
+
+  /**
+   * Test method to convert expenses in other currencies with the rates of each tenant.
+   */
+  @Test
+  void getTotalsByCategoryAcrossTenants_ConvertsCurrencies() throws IOException {
+    for (String tenant : List.of("alpha", "beta")) {
+      Files.createDirectories(baseDir.resolve(tenant));
+      Files.writeString(baseDir.resolve(tenant).resolve(Ledger.FX_RATES_FILE_NAME),
+          "01.01.2023 USD " + (tenant.equals("alpha") ? "90" : "80") + "\n");
+      registry.withLedger(tenant, ledger -> {
+        ledger.addExpense(new Expense("Еда", 2.0, "01.01.2023", null, null, "USD"));
+        return null;
+      });
+    }
+    registry.evictIdle(Duration.ZERO);
+    registry.withLedger("alpha", ledger -> null);
+    assertEquals(340.0, registry.getTotalsByCategoryAcrossTenants().get("Еда"), 0.001);
+  }
+
+  /**
+   * Test method to keep changes pending when the expenses file cannot be written.
+   */
+  @Test
+  void saveAll_KeepsUnsavedChangesDirty() throws IOException {
+    Files.createDirectories(baseDir.resolve("alpha").resolve(LedgerRegistry.EXPENSES_FILE_NAME));
+    registry.withLedger("alpha", ledger -> {
+      ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+      return null;
+    });
+    registry.saveAll();
+    assertTrue(registry.withLedger("alpha", Ledger::isDirty));
+  }
+
+  /**
+   * Test method to reload an evicted tenant only after its pending changes were saved.
+   */
+  @Test
+  void withLedger_WaitsForEvictedLedgerToBeSaved() throws InterruptedException {
+    LedgerRegistry single = new LedgerRegistry(baseDir, 1);
+    Ledger alpha = single.withLedger("alpha", ledger -> {
+      ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+      return ledger;
+    });
+    int[] reloadedCount = {-1};
+    Thread evicting = new Thread(() -> single.withLedger("beta", ledger -> null));
+    Thread reloading = new Thread(() ->
+        reloadedCount[0] = single.withLedger("alpha", ledger -> ledger.getExpenses().size()));
+    synchronized (alpha) {
+      evicting.start();
+      awaitState(evicting, Thread.State.BLOCKED);
+      reloading.start();
+      awaitState(reloading, Thread.State.WAITING);
+    }
+    evicting.join();
+    reloading.join();
+    assertEquals(1, reloadedCount[0]);
+  }
+
+  /**
+   * Test method to keep an evicted ledger resident while its changes cannot be saved.
+   */
+  @Test
+  void evictIdle_KeepsLedgerThatCannotBeSaved() throws IOException {
+    Files.createDirectories(baseDir.resolve("alpha").resolve(LedgerRegistry.EXPENSES_FILE_NAME));
+    registry.withLedger("alpha", ledger -> {
+      ledger.addExpense(new Expense("Еда", 10.0, "01.01.2023"));
+      return null;
+    });
+    assertEquals(0, registry.evictIdle(Duration.ZERO));
+    assertEquals(1, registry.getResidentCount());
+    assertEquals(1, (int) registry.withLedger("alpha", ledger -> ledger.getExpenses().size()));
+  }
+
+  private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (thread.getState() != state) {
+      assertTrue(System.nanoTime() < deadline, "thread did not reach " + state);
+      Thread.sleep(1);
+    }
+  }
+
+  /**
+   * Test method to reject tenant ids that could escape the base directory.
+   */
+  @Test
+  void withLedger_InvalidTenantId() {
+    assertThrows(IllegalArgumentException.class, () -> registry.withLedger("../x", ledger -> null));
+  }
+}
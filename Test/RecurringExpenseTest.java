@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecurringExpenseTest {
+
+  private static int day(String date) {
+    return Expense.parseEpochDay(date);
+  }
+
+  /**
+   * Test method to count monthly occurrences, including months shorter than the rule's day.
+   */
+  @Test
+  void countOccurrences_Monthly() {
+    RecurringExpense rent = new RecurringExpense("Квартплата", 167.0,
+        RecurringExpense.Frequency.MONTHLY, 31, day("01.01.2023"), RecurringExpense.NO_END);
+    assertEquals(12, rent.countOccurrences(day("01.01.2023"), day("31.12.2023")));
+    assertEquals(1, rent.countOccurrences(day("01.02.2023"), day("28.02.2023")));
+    assertEquals(0, rent.countOccurrences(day("01.03.2023"), day("30.03.2023")));
+  }
+
+  /**
+   * Test method to count weekly occurrences aligned to the start day.
+   */
+  @Test
+  void countOccurrences_Weekly() {
+    RecurringExpense weekly = new RecurringExpense("Еда", 10.0,
+        RecurringExpense.Frequency.WEEKLY, 0, day("02.01.2023"), day("30.01.2023"));
+    assertEquals(5, weekly.countOccurrences(day("01.01.2023"), day("31.12.2023")));
+    assertEquals(1, weekly.countOccurrences(day("03.01.2023"), day("09.01.2023")));
+  }
+
+  /**
+   * Test method to ensure materialized occurrences match the counted ones and are not repeated.
+   */
+  @Test
+  void materialize_AdvancesNextDueDay() {
+    RecurringExpense rent = new RecurringExpense("Квартплата", 167.0,
+        RecurringExpense.Frequency.MONTHLY, 15, day("01.01.2023"), RecurringExpense.NO_END);
+    List<Expense> out = new ArrayList<>();
+    assertEquals(3, rent.materialize(day("20.03.2023"), out, null, 0, null));
+    assertEquals("15.03.2023", out.get(2).getDate());
+    assertEquals(day("15.04.2023"), rent.getNextDueDay());
+    assertEquals(0, rent.materialize(day("20.03.2023"), out, null, 0, null));
+  }
+
+  /**
+   * Test method to materialize rules into a ledger and persist their progress.
+   */
+  @Test
+  void scheduler_MaterializeUpToPersistsRules() throws IOException {
+    Path dir = Files.createTempDirectory("recurring");
+    String rulesFile = dir.resolve("recurring.txt").toString();
+    Ledger ledger = new Ledger(dir.resolve("expenses.txt").toString(),
+        new ExpenseCategoryManager(dir.resolve("categories.txt").toString()));
+    RecurringExpenseScheduler scheduler = new RecurringExpenseScheduler(rulesFile);
+    scheduler.addRule(new RecurringExpense("Квартплата", 100.0,
+        RecurringExpense.Frequency.MONTHLY, 15, day("01.01.2023"), RecurringExpense.NO_END));
+
+    assertEquals(12, scheduler.materializeUpTo(day("31.12.2023"), ledger));
+    assertEquals(12, ledger.getExpenses().size());
+    assertEquals(600.0, scheduler.getScheduledTotal(day("01.01.2024"), day("30.06.2024")), 0.001);
+
+    RecurringExpenseScheduler reloaded = new RecurringExpenseScheduler(rulesFile);
+    assertEquals(day("15.01.2024"), reloaded.getRules().get(0).getNextDueDay());
+  }
+
+  /**
+   * Test method to keep the note of a rule in the rules file and in its generated expenses.
+   */
+  @Test
+  void rule_KeepsNote() {
+    RecurringExpense gym = new RecurringExpense("Спорт", 50.0,
+        RecurringExpense.Frequency.MONTHLY, 3, day("03.01.2023"), RecurringExpense.NO_END,
+        "абонемент 100% зал");
+    RecurringExpense parsed = RecurringExpense.parse(gym.toLine());
+    assertEquals("абонемент 100% зал", parsed.getNote());
+    assertNull(RecurringExpense.parse("Еда 10.0 WEEKLY 0 02.01.2023 - 02.01.2023").getNote());
+
+    List<Expense> out = new ArrayList<>();
+    parsed.materialize(day("03.02.2023"), out, null, 0, "rec:");
+    assertEquals(2, out.size());
+    assertEquals("абонемент 100% зал", out.get(1).getNote());
+    assertEquals("rec:03.02.2023", out.get(1).getExternalId());
+  }
+
+  /**
+   * Test method to ensure that a batch generated again after a stop between saving the ledger and
+   * saving the rules is not added twice, while identical rules still add their own expenses.
+   */
+  @Test
+  void scheduler_MaterializeUpToSkipsOccurrencesAlreadyInLedger() throws IOException {
+    Path dir = Files.createTempDirectory("recurring");
+    Path rulesFile = dir.resolve("recurring.txt");
+    String expensesFile = dir.resolve("expenses.txt").toString();
+    ExpenseCategoryManager categoryManager =
+        new ExpenseCategoryManager(dir.resolve("categories.txt").toString());
+    RecurringExpenseScheduler scheduler = new RecurringExpenseScheduler(rulesFile.toString());
+    for (int i = 0; i < 2; i++) {
+      scheduler.addRule(new RecurringExpense("Подписка", 5.0,
+          RecurringExpense.Frequency.WEEKLY, 0, day("02.01.2023"), RecurringExpense.NO_END));
+    }
+    byte[] rulesBeforeBatch = Files.readAllBytes(rulesFile);
+    assertEquals(10, scheduler.materializeUpTo(day("31.01.2023"), new Ledger(expensesFile,
+        categoryManager)));
+    Files.write(rulesFile, rulesBeforeBatch);
+
+    Ledger restarted = new Ledger(expensesFile, categoryManager);
+    RecurringExpenseScheduler rescheduled = new RecurringExpenseScheduler(rulesFile.toString());
+    assertEquals(0, rescheduled.materializeUpTo(day("31.01.2023"), restarted));
+    assertEquals(10, restarted.getExpenses().size());
+    assertEquals(4, rescheduled.materializeUpTo(day("14.02.2023"), restarted));
+    assertEquals(14, restarted.getExpenses().size());
+  }
+}
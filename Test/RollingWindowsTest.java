@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingWindowsTest {
+
+  /**
+   * Test method to slide the windows as days pass and expenses are added.
+   */
+  @Test
+  void getSum_SlidesWithDays() {
+    RollingWindows windows = new RollingWindows(7, 30);
+    int day = Expense.toEpochDay(2023, 3, 1);
+    windows.advanceTo(day);
+    windows.onExpenseAdded(new Expense("Еда", 100.0, Expense.formatEpochDay(day)));
+    windows.onExpenseAdded(new Expense("Такси", 50.0, Expense.formatEpochDay(day - 10)));
+    windows.onExpenseAdded(new Expense("Еда", 1.0, Expense.formatEpochDay(day - 40)));
+
+    assertEquals(100.0, windows.getSum("Еда", 7), 0.001);
+    assertEquals(150.0, windows.getSum(null, 30), 0.001);
+    assertEquals(100.0, windows.getSum(null, 7), 0.001);
+
+    windows.advanceTo(day + 6);
+    assertEquals(100.0, windows.getSum("Еда", 7), 0.001);
+    windows.advanceTo(day + 7);
+    assertEquals(0.0, windows.getSum("Еда", 7), 0.001);
+    assertEquals(100.0, windows.getSum("Еда", 30), 0.001);
+    assertEquals(150.0 / 30, windows.getDailyAverage(null, 30), 0.001);
+
+    windows.advanceTo(day + 1000);
+    assertEquals(0.0, windows.getSum(null, 30), 0.001);
+    assertEquals(0.0, windows.getSum("Нет такой", 30), 0.001);
+    assertThrows(IllegalArgumentException.class, () -> windows.getSum(null, 14));
+  }
+
+  /**
+   * Test method to advance the windows to the day of each query and hold back expenses dated
+   * after it.
+   */
+  @Test
+  void getSum_AdvancesToTodayAndHoldsBackFutureExpenses() {
+    int day = Expense.toEpochDay(2023, 3, 1);
+    RollingWindows windows = RollingWindows.of(
+        List.of(new Expense("Еда", 100.0, Expense.formatEpochDay(day))), day);
+    windows.onExpenseAdded(new Expense("Еда", 40.0, Expense.formatEpochDay(day + 3)));
+    assertEquals(day, windows.getCurrentDay());
+    assertEquals(100.0, windows.getSum("Еда", 7, day), 0.001);
+    assertEquals(100.0, windows.getSum(null, 7, day + 2), 0.001);
+    assertEquals(140.0, windows.getSum("Еда", 7, day + 3), 0.001);
+    assertEquals(40.0, windows.getSum("Еда", 7, day + 7), 0.001);
+    windows.onExpenseAdded(new Expense("Еда", 5.0, Expense.formatEpochDay(day + 6)));
+    assertEquals(45.0, windows.getSum(null, 7, day + 7), 0.001);
+    assertEquals(145.0, windows.getSum(null, 30, day + 7), 0.001);
+    assertEquals(0.0, windows.getSum(null, 365, day + 400), 0.001);
+  }
+
+  /**
+   * Test method to sum expenses in other currencies in the base currency.
+   */
+  @Test
+  void getSum_ConvertsCurrencies() {
+    FxRateTable fxRates = new FxRateTable("RUB");
+    int day = Expense.toEpochDay(2023, 3, 1);
+    fxRates.addRate("USD", day - 20, 90.0);
+    List<Expense> history = List.of(new Expense("Еда", 100.0, Expense.formatEpochDay(day - 1)),
+        new Expense("Еда", 2.0, Expense.formatEpochDay(day), null, null, "USD"),
+        new Expense("Еда", 2.0, Expense.formatEpochDay(day), null, null, "EUR"));
+    RollingWindows windows = RollingWindows.of(history, fxRates, day);
+    assertEquals(280.0, windows.getSum("Еда", 7), 0.001);
+    windows.onExpenseAdded(new Expense("Еда", 1.0, Expense.formatEpochDay(day), null, null,
+        "USD"));
+    assertEquals(370.0, windows.getSum(null, 30), 0.001);
+    assertEquals(280.0, RollingWindows.rollingSeries(history, fxRates, null, 7, day, day)[0],
+        0.001);
+  }
+
+  /**
+   * Test method to compare the one-pass series with sums recomputed for every day.
+   */
+  @Test
+  void rollingSeries_MatchesRecomputedSums() {
+    Random random = new Random(3);
+    int start = Expense.toEpochDay(2022, 1, 1);
+    List<Expense> history = new ArrayList<>();
+    for (int day = start; day < start + 400; day += random.nextInt(4)) {
+      history.add(new Expense(random.nextBoolean() ? "Еда" : "Такси", random.nextInt(100),
+          Expense.formatEpochDay(day)));
+    }
+    int from = start + 50;
+    int to = start + 300;
+    double[] series = RollingWindows.rollingSeries(history, "Еда", 30, from, to);
+    for (int day = from; day <= to; day++) {
+      double expected = 0;
+      for (Expense expense : history) {
+        int expenseDay = expense.getEpochDay();
+        if (expense.getCategory().equals("Еда") && expenseDay > day - 30 && expenseDay <= day) {
+          expected += expense.getAmount();
+        }
+      }
+      assertEquals(expected, series[day - from], 0.001);
+    }
+
+    List<Expense> upToEnd = new ArrayList<>();
+    for (Expense expense : history) {
+      if (expense.getEpochDay() <= to) {
+        upToEnd.add(expense);
+      }
+    }
+    RollingWindows windows = RollingWindows.of(upToEnd, to);
+    assertEquals(series[to - from], windows.getSum("Еда", 30), 0.001);
+
+    List<Expense> unsorted = new ArrayList<>(history);
+    unsorted.add(history.get(0));
+    assertThrows(IllegalArgumentException.class,
+        () -> RollingWindows.rollingSeries(unsorted, null, 7, from, start + 500));
+  }
+}
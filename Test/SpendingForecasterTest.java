@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpendingForecasterTest {
+
+  /**
+   * Test method to forecast month-end and year-end spend of a category with steady daily spend.
+   */
+  @Test
+  void forecastPeriod_SteadySpend() {
+    int start = Expense.toEpochDay(2022, 1, 1);
+    int today = Expense.toEpochDay(2023, 3, 10);
+    List<Expense> history = new ArrayList<>();
+    for (int day = start; day <= today; day++) {
+      history.add(new Expense("Еда", 100.0, Expense.formatEpochDay(day)));
+    }
+    history.add(new Expense("Такси", 300.0, Expense.formatEpochDay(today)));
+    FxRateTable fxRates = new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY);
+
+    Map<String, SpendingForecaster.Forecast> monthEnd =
+        SpendingForecaster.forecastMonthEnd(history, fxRates, today);
+    assertEquals(List.of("Еда", "Такси"), new ArrayList<>(monthEnd.keySet()));
+    assertEquals(1000.0, monthEnd.get("Еда").spent(), 0.001);
+    assertEquals(3100.0, monthEnd.get("Еда").expected(), 1.0);
+    assertEquals(300.0, monthEnd.get("Такси").spent(), 0.001);
+
+    SpendingForecaster.Forecast yearEnd =
+        SpendingForecaster.forecastYearEnd(history, fxRates, today).get("Еда");
+    assertEquals(6900.0, yearEnd.spent(), 0.001);
+    assertEquals(36500.0, yearEnd.expected(), 10.0);
+  }
+
+  /**
+   * Test method to fit a weekly pattern and report its backtesting accuracy.
+   */
+  @Test
+  void fitAndBacktest_WeeklyPattern() {
+    int firstDay = Expense.toEpochDay(2022, 1, 3);
+    double[] series = new double[600];
+    for (int i = 0; i < series.length; i++) {
+      series[i] = i % 7 == 5 ? 700.0 : 0.0;
+    }
+    SpendingForecaster.Model model = SpendingForecaster.fit(series);
+    assertEquals(700.0, model.forecastTotal(1), 1.0);
+    assertEquals(700.0, model.forecastTotal(7), 1.0);
+    assertEquals(1400.0, model.forecastTotal(8), 1.0);
+
+    SpendingForecaster.Backtest backtest = SpendingForecaster.backtest(series, firstDay, 6);
+    assertEquals(6, backtest.months());
+    assertEquals(0.0, backtest.meanAbsolutePercentageError(), 0.01);
+
+    assertEquals(0, SpendingForecaster.backtest(new double[10], firstDay, 3).months());
+  }
+
+  /**
+   * Test method to report expenses left out of the daily series for lack of a rate.
+   */
+  @Test
+  void dailySeries_ReportsMissingRates() {
+    int day = Expense.toEpochDay(2023, 3, 10);
+    List<Expense> expenses = List.of(new Expense("Еда", 100.0, Expense.formatEpochDay(day)),
+        new Expense("Еда", 5.0, Expense.formatEpochDay(day), null, null, "USD"));
+    PrintStream err = System.err;
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(errContent));
+    Map<String, double[]> series;
+    try {
+      series = SpendingForecaster.dailySeries(expenses,
+          new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY), day, day);
+    } finally {
+      System.setErr(err);
+    }
+    assertEquals(100.0, series.get("Еда")[0], 0.001);
+    assertTrue(errContent.toString().contains("не учтены в прогнозе"));
+  }
+}
@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupSnapshotTest {
+
+  /**
+   * Test method to read the expenses back from the snapshot while the expenses file is unchanged.
+   */
+  @Test
+  void loadExpenses_UsesSnapshotWhileFileUnchanged() throws IOException {
+    Path source = Files.createTempDirectory("snapshot").resolve("expenses.txt");
+    Expense.saveExpensesToFile(List.of(
+        new Expense("Еда", 12.5, "10.09.2023", null, "кофе с собой", null),
+        new Expense("Такси", 300.0, "11.09.2023", "tx-1", null, "USD"),
+        new Expense("Еда", 7.0, "10.09.2023")), source.toString());
+
+    List<Expense> parsed = StartupSnapshot.loadExpenses(source.toString());
+    assertTrue(Files.exists(StartupSnapshot.snapshotPath(source)));
+    List<Expense> restored = StartupSnapshot.loadExpenses(source.toString());
+    assertEquals(parsed.size(), restored.size());
+    for (int i = 0; i < parsed.size(); i++) {
+      assertEquals(parsed.get(i).toLine(), restored.get(i).toLine());
+      assertEquals(parsed.get(i).getEpochDay(), restored.get(i).getEpochDay());
+    }
+
+    StartupSnapshot.write(source, List.of(new Expense("Снимок", 1.0, "01.01.2023")));
+    assertEquals("Снимок", StartupSnapshot.loadExpenses(source.toString()).get(0).getCategory());
+    Files.setLastModifiedTime(source, FileTime.fromMillis(0));
+    assertEquals("Снимок", StartupSnapshot.loadExpenses(source.toString()).get(0).getCategory());
+
+    Files.writeString(source, "Жильё 100.0 01.10.2023\n");
+    List<Expense> changed = StartupSnapshot.loadExpenses(source.toString());
+    assertEquals(1, changed.size());
+    assertEquals("Жильё", changed.get(0).getCategory());
+    assertEquals("Жильё", StartupSnapshot.read(source).get(0).getCategory());
+  }
+
+  /**
+   * Test method to fall back to parsing the expenses file when the snapshot is damaged.
+   */
+  @Test
+  void loadExpenses_IgnoresDamagedSnapshot() throws IOException {
+    Path source = Files.createTempDirectory("snapshot").resolve("expenses.txt");
+    Files.writeString(source, "Еда 12.0 10.09.2023\nОдежда 45.0 17.10.2023\n");
+    StartupSnapshot.loadExpenses(source.toString());
+    Path snapshot = StartupSnapshot.snapshotPath(source);
+    byte[] data = Files.readAllBytes(snapshot);
+    data[data.length / 2] ^= 1;
+    Files.write(snapshot, data);
+
+    assertNull(StartupSnapshot.read(source));
+    List<Expense> expenses = StartupSnapshot.loadExpenses(source.toString());
+    assertEquals(2, expenses.size());
+    assertEquals(45.0, expenses.get(1).getAmount(), 0.001);
+    assertEquals(2, StartupSnapshot.read(source).size());
+  }
+
+  /**
+   * Test method to quarantine corrupt blocks of the expenses file on load, once, and to keep
+   * parsing the file instead of snapshotting it until it is saved again.
+   */
+  @Test
+  void loadExpenses_QuarantinesCorruptBlocks() throws IOException {
+    Path source = Files.createTempDirectory("snapshot").resolve("expenses.txt");
+    List<Expense> expenses = new ArrayList<>();
+    for (int i = 0; i < ChecksummedFile.BLOCK_SIZE * 2; i++) {
+      expenses.add(new Expense("Еда", i, "01.01.2023"));
+    }
+    Expense.saveExpensesToFile(expenses, source.toString());
+    Files.writeString(source, Files.readString(source).replace("Еда 1500.0", "Еда 9999.0"));
+    Path quarantine = source.resolveSibling("expenses.txt.corrupt");
+
+    assertEquals(ChecksummedFile.BLOCK_SIZE, StartupSnapshot.loadExpenses(source.toString())
+        .size());
+    assertFalse(Files.exists(StartupSnapshot.snapshotPath(source)));
+    String quarantined = Files.readString(quarantine);
+    assertTrue(quarantined.contains("Еда 9999.0 01.01.2023"));
+    assertEquals(ChecksummedFile.BLOCK_SIZE, quarantined.lines()
+        .filter(line -> line.startsWith("Еда")).count());
+
+    StartupSnapshot.loadExpenses(source.toString());
+    assertEquals(quarantined, Files.readString(quarantine));
+  }
+}
@@ -0,0 +1,78 @@
+import java.util.Random;
+
+/**
+ * Compares the scalar and the Vector API aggregation kernels.
+ *
+ * <p>Usage: {@code java --add-modules jdk.incubator.vector -Xmx4g -cp out
+ * AggregationKernelsBenchmark [rows] [categories]}; 100 million rows by default. Without the
+ * module only the scalar kernels are measured. The filter keeps one year out of five; the totals
+ * by category, shown as sumByCategory [categories], are measured for 4, the given number and 32
+ * categories.
+ */
+public class AggregationKernelsBenchmark {
+
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+
+  public static void main(String[] args) {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+    int categoryCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    Random random = new Random(42);
+    int firstDay = Expense.toEpochDay(2019, 1, 1);
+    int[] days = new int[rows];
+    double[] amounts = new double[rows];
+    int[] categories = new int[rows];
+    for (int i = 0; i < rows; i++) {
+      days[i] = firstDay + random.nextInt(5 * 365);
+      amounts[i] = random.nextInt(100_000) / 100.0;
+      categories[i] = random.nextInt(categoryCount);
+    }
+    int fromDay = Expense.toEpochDay(2021, 1, 1);
+    int toDay = Expense.toEpochDay(2021, 12, 31);
+
+    int[] fewCategories = categoryIds(rows, 4, random);
+    int[][] categoryColumns = {fewCategories, categories, categoryIds(rows, 32, random)};
+
+    AggregationKernels[] implementations =
+        AggregationKernels.get().getClass() == ScalarAggregationKernels.class
+            ? new AggregationKernels[] {new ScalarAggregationKernels()}
+            : new AggregationKernels[] {new ScalarAggregationKernels(), AggregationKernels.get()};
+    for (AggregationKernels kernels : implementations) {
+      String name = kernels.getClass().getSimpleName();
+      measure(name + " sum", () -> kernels.sum(days, amounts, rows, fromDay, toDay));
+      measure(name + " count", () -> kernels.count(days, rows, fromDay, toDay));
+      measure(name + " sumCategory",
+          () -> kernels.sumCategory(days, amounts, categories, rows, fromDay, toDay, 3));
+      for (int[] ids : categoryColumns) {
+        int count = ids == categories ? categoryCount : ids == fewCategories ? 4 : 32;
+        measure(name + " sumByCategory [" + count + "]", () -> {
+          double[] totals = new double[count];
+          kernels.sumByCategory(days, amounts, ids, rows, fromDay, toDay, totals);
+          return totals[0];
+        });
+      }
+    }
+  }
+
+  private static int[] categoryIds(int rows, int count, Random random) {
+    int[] ids = new int[rows];
+    for (int i = 0; i < rows; i++) {
+      ids[i] = random.nextInt(count);
+    }
+    return ids;
+  }
+
+  private static void measure(String name, java.util.function.DoubleSupplier task) {
+    double sink = 0;
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      sink += task.getAsDouble();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      sink += task.getAsDouble();
+    }
+    double millis = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+    System.out.printf("%-48s %8.2f ms (%.0f)%n", name, millis, sink / (WARMUP_ROUNDS
+        + MEASURED_ROUNDS));
+  }
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the overhead of multi-currency totals compared with single-currency totals.
+ *
+ * <p>Usage: {@code java -cp out CurrencyTotalsBenchmark [rows] [foreignShare]}. Compares
+ * {@link ExpenseReportGenerator#getTotalExpensesForYear(int)} over a ledger in the base currency
+ * only, the same ledger with a share of expenses in USD and EUR, and a naive loop that converts
+ * every expense on its own.
+ */
+public class CurrencyTotalsBenchmark {
+
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+
+  public static void main(String[] args) {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    double foreignShare = args.length > 1 ? Double.parseDouble(args[1]) : 0.3;
+
+    FxRateTable fxRates = new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY);
+    int firstDay = Expense.toEpochDay(2022, 1, 1);
+    for (int day = firstDay; day < firstDay + 730; day++) {
+      fxRates.addRate("USD", day, 90.0 + day % 7);
+      fxRates.addRate("EUR", day, 98.0 + day % 5);
+    }
+
+    Random random = new Random(42);
+    List<Expense> baseOnly = new ArrayList<>(rows);
+    List<Expense> mixed = new ArrayList<>(rows);
+    String[] currencies = {"USD", "EUR"};
+    for (int i = 0; i < rows; i++) {
+      int day = firstDay + random.nextInt(730);
+      String date = Expense.formatEpochDay(day);
+      double amount = random.nextInt(10_000) / 10.0;
+      baseOnly.add(new Expense("Еда", amount, date));
+      String currency = random.nextDouble() < foreignShare ? currencies[i & 1] : null;
+      mixed.add(new Expense("Еда", amount, date, null, null, currency));
+    }
+
+    ExpenseReportGenerator baseReport = new ExpenseReportGenerator(baseOnly, fxRates);
+    ExpenseReportGenerator mixedReport = new ExpenseReportGenerator(mixed, fxRates);
+    double baseTime = measure("один валютный ряд", () -> baseReport.getTotalExpensesForYear(2023));
+    double mixedTime = measure("несколько валют", () -> mixedReport.getTotalExpensesForYear(2023));
+    double naiveTime = measure("конвертация каждой строки", () -> naiveTotal(mixed, fxRates, 2023));
+    System.out.printf("Накладные расходы: %.1f%% (по строкам: %.1f%%)%n",
+        (mixedTime / baseTime - 1) * 100, (naiveTime / baseTime - 1) * 100);
+  }
+
+  private static double naiveTotal(List<Expense> expenses, FxRateTable fxRates, int year) {
+    int from = Expense.toEpochDay(year, 1, 1);
+    int to = Expense.toEpochDay(year, 12, 31);
+    double total = 0.0;
+    for (Expense expense : expenses) {
+      int day = expense.getEpochDay();
+      if (day >= from && day <= to) {
+        total += expense.getAmount() * fxRates.rate(expense.getCurrency(), day);
+      }
+    }
+    return total;
+  }
+
+  private static double measure(String name, java.util.function.DoubleSupplier task) {
+    double sink = 0;
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      sink += task.getAsDouble();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      sink += task.getAsDouble();
+    }
+    double millis = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+    System.out.printf("%-28s %8.2f мс (%s)%n", name, millis, sink == 42 ? "" : "ok");
+    return millis;
+  }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the export throughput of every format.
+ *
+ * <p>Usage: {@code java -cp out ExportBenchmark [rows]}. Each format is exported a few times to a
+ * temporary file and the best throughput in MB/s is reported, followed by an incremental export
+ * of one percent of new rows.
+ */
+public class ExportBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    String[] categories = {"Еда", "Транспорт/Такси", "Жильё", "Развлечения"};
+    List<Expense> expenses = new ArrayList<>(rows + rows / 100);
+    int firstDay = Expense.toEpochDay(2020, 1, 1);
+    for (int i = 0; i < rows; i++) {
+      expenses.add(new Expense(categories[i & 3], i % 10_000 / 10.0,
+          Expense.formatEpochDay(firstDay + i % 1500), null, i % 8 == 0 ? "кофе с собой" : null,
+          null));
+    }
+    Path dir = Files.createTempDirectory("export-bench");
+    for (ExpenseExporter.Format format : ExpenseExporter.Format.values()) {
+      Path target = dir.resolve("expenses." + format.name().toLowerCase());
+      ExpenseExporter exporter = new ExpenseExporter(format);
+      double best = 0;
+      for (int round = 0; round < ROUNDS; round++) {
+        long start = System.nanoTime();
+        exporter.export(expenses, target);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        best = Math.max(best, Files.size(target) / seconds / (1 << 20));
+      }
+      System.out.printf("%-10s %8.1f MB/s (%d MB)%n", format, best, Files.size(target) >> 20);
+
+      List<Expense> grown = new ArrayList<>(expenses);
+      grown.addAll(expenses.subList(0, rows / 100));
+      long start = System.nanoTime();
+      int appended = exporter.exportIncremental(grown, target);
+      System.out.printf("%-10s %8.1f ms для %d новых строк%n", "", (System.nanoTime() - start) / 1e6,
+          appended);
+    }
+  }
+}
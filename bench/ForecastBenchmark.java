@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures month-end forecasting for many categories and reports the backtesting accuracy.
+ *
+ * <p>Usage: {@code java -cp out ForecastBenchmark [categories]}. Every category gets two years of
+ * noisy daily spend with a weekly pattern and a slow trend. The best time of a few rounds of
+ * {@link SpendingForecaster#forecastMonthEnd} is reported, including building the series, then
+ * the mean error of forecasting the last six months of each series.
+ */
+public class ForecastBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int categoryCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+    int firstDay = Expense.toEpochDay(2021, 1, 1);
+    int today = Expense.toEpochDay(2022, 12, 15);
+    Random random = new Random(42);
+    List<Expense> expenses = new ArrayList<>();
+    for (int c = 0; c < categoryCount; c++) {
+      String category = "Категория " + c;
+      double base = 50 + random.nextInt(500);
+      double weekend = random.nextDouble() * base;
+      for (int day = firstDay; day <= today; day++) {
+        double amount = base * (1 + (day - firstDay) / 2000.0) + (day % 7 >= 5 ? weekend : 0)
+            + random.nextGaussian() * base * 0.3;
+        if (amount > 0) {
+          expenses.add(new Expense(category, Math.round(amount * 100) / 100.0,
+              Expense.formatEpochDay(day)));
+        }
+      }
+    }
+    FxRateTable fxRates = new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY);
+
+    double best = Double.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      SpendingForecaster.forecastMonthEnd(expenses, fxRates, today);
+      best = Math.min(best, (System.nanoTime() - start) / 1e6);
+    }
+    System.out.printf("%d категорий, %d расходов: %.1f ms на прогноз, %d потоков%n",
+        categoryCount, expenses.size(), best, Runtime.getRuntime().availableProcessors());
+
+    double mape = 0;
+    var series = SpendingForecaster.dailySeries(expenses, fxRates, firstDay, today);
+    for (double[] daily : series.values()) {
+      mape += SpendingForecaster.backtest(daily, firstDay, 6).meanAbsolutePercentageError();
+    }
+    System.out.printf("Средняя ошибка прогноза на 6 отложенных месяцах: %.2f%%%n",
+        100 * mape / series.size());
+  }
+}
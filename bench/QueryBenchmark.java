@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares ad-hoc queries with the hand-written reports they replace.
+ *
+ * <p>Usage: {@code java -cp out QueryBenchmark [rows]}. The expenses span five years and fifty
+ * categories, one in a hundred of them in another currency. Every pair is timed as the best of a
+ * few rounds after the columns were built by a first call.
+ */
+public class QueryBenchmark {
+
+  private static final int ROUNDS = 20;
+
+  public static void main(String[] args) {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    int firstDay = Expense.toEpochDay(2020, 1, 1);
+    Random random = new Random(42);
+    FxRateTable fxRates = new FxRateTable("RUB");
+    fxRates.addRate("USD", firstDay, 75.0);
+    List<Expense> expenses = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      expenses.add(new Expense("Категория " + random.nextInt(50), 1 + random.nextInt(10_000),
+          Expense.formatEpochDay(firstDay + random.nextInt(5 * 365)), null, null,
+          random.nextInt(100) == 0 ? "USD" : null));
+    }
+    ExpenseReportGenerator generator = new ExpenseReportGenerator(expenses, fxRates);
+    int from = Expense.toEpochDay(2023, 1, 1);
+    int to = Expense.toEpochDay(2023, 12, 31);
+
+    compare("итог за год", () -> generator.getTotalExpensesForYear(2023),
+        () -> generator.query("sum(amount) where date in 2023"));
+    compare("итоги по категориям", () -> generator.getTotalsByCategory(from, to),
+        () -> generator.query("sum(amount) where date in 2023 group by category"));
+    time("по категориям и месяцам", () -> generator.query("sum(amount), count(*)"
+        + " where date in 2023 group by category, month order by sum desc limit 10"));
+    time("по дням без границы", () -> generator.query("sum(amount), max(amount)"
+        + " where date >= 01.01.2021 and amount > 100 group by category, day"));
+  }
+
+  private static void compare(String name, Supplier<?> handWritten, Supplier<?> query) {
+    System.out.printf("%-24s вручную %7.2f ms, запрос %7.2f ms%n", name, best(handWritten),
+        best(query));
+  }
+
+  private static void time(String name, Supplier<?> query) {
+    System.out.printf("%-24s запрос %7.2f ms%n", name, best(query));
+  }
+
+  private static double best(Supplier<?> task) {
+    double best = Double.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      task.get();
+      best = Math.min(best, (System.nanoTime() - start) / 1e6);
+    }
+    return best;
+  }
+}
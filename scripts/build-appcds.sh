@@ -0,0 +1,26 @@
+#!/bin/sh
+# Packages the application into out/budget.jar and records a dynamic AppCDS archive of the classes
+# it loads up to the main menu, so that later starts map them from the archive instead of loading
+# and verifying them again.
+#
+# Usage: scripts/build-appcds.sh
+# Then start the application with: java -XX:SharedArchiveFile=out/budget.jsa -jar out/budget.jar
+#
+# The archive belongs to the JDK that built it and to this exact jar; rebuild it after either
+# changes (the JVM ignores a mismatched archive and starts without it).
+set -e
+cd "$(dirname "$0")/.."
+root=$(pwd)
+rm -rf out
+mkdir -p out/classes
+javac -encoding UTF-8 --add-modules jdk.incubator.vector -d out/classes src/*.java
+jar cfe out/budget.jar Main -C out/classes .
+# The training run opens the main menu and exits at the end of its empty input, whatever the
+# number of the exit option; it runs on a copy of res/ because exiting saves the ledger.
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+cp -r res "$work/"
+(cd "$work" && java -XX:ArchiveClassesAtExit="$root/out/budget.jsa" \
+  -jar "$root/out/budget.jar" < /dev/null > /dev/null)
+echo "Archive: out/budget.jsa"
+echo "Run: java -XX:SharedArchiveFile=out/budget.jsa -jar out/budget.jar"
@@ -0,0 +1,63 @@
+/**
+ * Filtered sums and counts over the primitive columns of {@link ExpenseColumns}.
+ *
+ * <p>Every kernel considers the first {@code length} rows and keeps those whose epoch day lies in
+ * {@code [fromDay, toDay]}. {@link #get()} returns an implementation using the Vector API when the
+ * {@code jdk.incubator.vector} module is enabled ({@code --add-modules jdk.incubator.vector}) and
+ * a scalar one otherwise; both return identical results.
+ */
+public interface AggregationKernels {
+
+  /**
+   * @return The fastest implementation available in this JVM.
+   */
+  static AggregationKernels get() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Sums the amounts of the rows within the day range.
+   */
+  double sum(int[] days, double[] amounts, int length, int fromDay, int toDay);
+
+  /**
+   * Counts the rows within the day range.
+   */
+  int count(int[] days, int length, int fromDay, int toDay);
+
+  /**
+   * Sums the amounts of the rows of one category within the day range.
+   */
+  double sumCategory(int[] days, double[] amounts, int[] categories, int length, int fromDay,
+      int toDay, int category);
+
+  /**
+   * Adds the amounts of the rows within the day range to the totals of their categories.
+   *
+   * @param totals The totals indexed by category id; its length is the number of categories.
+   */
+  void sumByCategory(int[] days, double[] amounts, int[] categories, int length, int fromDay,
+      int toDay, double[] totals);
+
+  /**
+   * Picks the implementation once; the vector class is only loaded when its module is present.
+   */
+  final class Holder {
+    static final AggregationKernels INSTANCE = load();
+
+    private Holder() {
+    }
+
+    private static AggregationKernels load() {
+      if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+        try {
+          return (AggregationKernels) Class.forName("VectorAggregationKernels")
+              .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+          // fall back to scalar code
+        }
+      }
+      return new ScalarAggregationKernels();
+    }
+  }
+}
@@ -0,0 +1,446 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * Flags expenses whose amount is unusually high for their category and season as they are added.
+ *
+ * <p>Streaming statistics are kept per category for every season and for the whole year: the
+ * Welford mean and variance, an exponentially weighted moving average, and a histogram of amounts
+ * on a logarithmic scale with bins two percent apart, from which the median and the median
+ * absolute deviation of the logarithms are read. An expense is scored against the statistics of
+ * its season, or of its whole category while the season has too few expenses, before it is
+ * recorded itself. Amounts of expenses spread multiplicatively, so the score is the robust z-score
+ * of the logarithm, {@code 0.6745 * (ln amount - ln median) / MAD}, or the ordinary z-score of the
+ * amount while most amounts fall into a single bin. Recording and scoring take a hash lookup and
+ * a walk over the occupied histogram bins, and never rescan the expense list. Amounts are
+ * recorded and scored in the base currency, converted with the rate of their day; expenses
+ * without a rate are skipped.
+ */
+public class AnomalyDetector implements ExpenseListener {
+
+  /**
+   * The default score above which an expense is an anomaly.
+   */
+  public static final double DEFAULT_THRESHOLD = 3.5;
+
+  /**
+   * The season key of the statistics over the whole year.
+   */
+  public static final int ALL_SEASONS = -1;
+
+  static final int MIN_SAMPLES = 10;
+  private static final double EWMA_WEIGHT = 0.1;
+  private static final double MIN_AMOUNT = 0.01;
+  private static final double BIN_RATIO = 1.02;
+  private static final double LOG_BIN_RATIO = Math.log(BIN_RATIO);
+  private static final double MAD_SCALE = 0.6745;
+
+  /**
+   * An expense with an unusually high amount.
+   *
+   * @param expense       The expense.
+   * @param amount        The amount of the expense in the base currency.
+   * @param score         The score of its amount; above the threshold of the detector.
+   * @param median        The median amount in the base currency the expense was compared with.
+   * @param recentAverage The exponentially weighted average of recent amounts of the category in
+   *                      the compared season, in the base currency.
+   */
+  public record Anomaly(Expense expense, double amount, double score, double median,
+                        double recentAverage) {
+  }
+
+  /**
+   * Receives anomalies.
+   */
+  @FunctionalInterface
+  public interface AnomalyListener {
+    void onAnomaly(Anomaly anomaly);
+  }
+
+  /**
+   * Spells out equals and hashCode, like {@code BudgetMonitor.MonthKey}, to keep the bootstrap of
+   * the generated ones out of the startup.
+   */
+  private record Key(String category, int season) {
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key other && season == other.season && category.equals(other.category);
+    }
+
+    @Override
+    public int hashCode() {
+      return category.hashCode() * 31 + season;
+    }
+  }
+
+  /**
+   * The summary of the statistics used to score amounts.
+   */
+  private record Summary(long count, double mean, double standardDeviation, double median,
+                         double logDeviation, double recentAverage) {
+  }
+
+  private final FxRateTable fxRates;
+  private final double threshold;
+  private volatile Map<Key, Stats> stats = new ConcurrentHashMap<>();
+  private final List<AnomalyListener> listeners = new CopyOnWriteArrayList<>();
+  private volatile List<Expense> pendingReplay;
+
+  /**
+   * Creates a detector with the default threshold that only converts the base currency.
+   */
+  public AnomalyDetector() {
+    this(new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY), DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Creates a detector with the default threshold.
+   *
+   * @param fxRates The exchange rates into the base currency.
+   */
+  public AnomalyDetector(FxRateTable fxRates) {
+    this(fxRates, DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Creates a detector.
+   *
+   * @param fxRates   The exchange rates into the base currency.
+   * @param threshold The score above which an expense is an anomaly.
+   */
+  public AnomalyDetector(FxRateTable fxRates, double threshold) {
+    this.fxRates = fxRates;
+    if (!(threshold > 0)) {
+      throw new IllegalArgumentException("Порог аномалии должен быть положительным: "
+          + threshold);
+    }
+    this.threshold = threshold;
+  }
+
+  public void addAnomalyListener(AnomalyListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeAnomalyListener(AnomalyListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @param epochDay The epoch day.
+   * @return The season of the day: 0 for winter, 1 for spring, 2 for summer and 3 for autumn.
+   */
+  public static int season(int epochDay) {
+    return (Expense.toMonthIndex(epochDay) % 12 + 1) % 12 / 3;
+  }
+
+  /**
+   * Records existing expenses without notifying listeners; used at startup before the detector is
+   * registered with a ledger.
+   *
+   * @param expenses The expenses to record.
+   */
+  public void replay(List<Expense> expenses) {
+    replayInto(stats, expenses);
+  }
+
+  private void replayInto(Map<Key, Stats> target, List<Expense> expenses) {
+    for (Expense expense : expenses) {
+      double amount = fxRates.toBase(expense);
+      if (!Double.isNaN(amount)) {
+        record(target, expense, amount);
+      }
+    }
+  }
+
+  /**
+   * Records the given expenses like {@link #replay(List)}, but only when the statistics are first
+   * needed, so that a start does not pay for it before the first expense is added or scored.
+   *
+   * @param expenses The expenses to record; an immutable snapshot, e.g.
+   *                 {@link Ledger#getSnapshot()}, so that expenses added meanwhile and passed to
+   *                 {@link #onExpenseAdded(Expense)} are not recorded twice.
+   */
+  public synchronized void replayLater(List<Expense> expenses) {
+    replayPending();
+    pendingReplay = expenses;
+  }
+
+  private void replayPending() {
+    if (pendingReplay != null) {
+      synchronized (this) {
+        List<Expense> pending = pendingReplay;
+        if (pending != null) {
+          replay(pending);
+          pendingReplay = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the statistics with statistics of the given expenses; used after expenses were moved
+   * between categories. Like {@link BudgetMonitor#rebuild(List)}, the new statistics are built
+   * aside and swapped in at once, and the caller keeps expenses from being added meanwhile.
+   *
+   * @param expenses The expenses to record.
+   */
+  public synchronized void rebuild(List<Expense> expenses) {
+    Map<Key, Stats> rebuilt = new ConcurrentHashMap<>();
+    replayInto(rebuilt, expenses);
+    pendingReplay = null;
+    stats = rebuilt;
+  }
+
+  /**
+   * Scores the expense against the expenses recorded before it, then records it.
+   */
+  @Override
+  public void onExpenseAdded(Expense expense) {
+    replayPending();
+    int day = expense.getEpochDay();
+    double amount = fxRates.toBase(expense);
+    if (day == Expense.INVALID_DAY || Double.isNaN(amount)) {
+      return;
+    }
+    Anomaly anomaly = listeners.isEmpty() ? null
+        : score(expense, amount, summaryFor(expense, day));
+    record(stats, expense, amount);
+    if (anomaly != null) {
+      for (AnomalyListener listener : listeners) {
+        listener.onAnomaly(anomaly);
+      }
+    }
+  }
+
+  /**
+   * Scores an expense against the recorded expenses without recording it.
+   *
+   * @param expense The expense.
+   * @return The anomaly, or null if the amount is usual, there are too few expenses to tell or
+   *     the expense has no exchange rate.
+   */
+  public Anomaly score(Expense expense) {
+    replayPending();
+    int day = expense.getEpochDay();
+    double amount = fxRates.toBase(expense);
+    return day == Expense.INVALID_DAY || Double.isNaN(amount) ? null
+        : score(expense, amount, summaryFor(expense, day));
+  }
+
+  /**
+   * Scores a batch of expenses, e.g. an imported file, against the recorded expenses in parallel,
+   * without recording them. The statistics of every category and season are summarized once.
+   *
+   * @param batch The expenses to score.
+   * @return The anomalies in batch order.
+   */
+  public List<Anomaly> scoreAll(List<Expense> batch) {
+    replayPending();
+    Map<Key, Summary> summaries = new ConcurrentHashMap<>();
+    Anomaly[] anomalies = new Anomaly[batch.size()];
+    IntStream.range(0, batch.size()).parallel().forEach(i -> {
+      Expense expense = batch.get(i);
+      int day = expense.getEpochDay();
+      double amount = fxRates.toBase(expense);
+      if (day == Expense.INVALID_DAY || Double.isNaN(amount)) {
+        return;
+      }
+      Summary summary = summaries.computeIfAbsent(new Key(expense.getCategory(), season(day)),
+          key -> summarize(key, expense.getCategory()));
+      anomalies[i] = score(expense, amount, summary);
+    });
+    List<Anomaly> result = new ArrayList<>();
+    for (Anomaly anomaly : anomalies) {
+      if (anomaly != null) {
+        result.add(anomaly);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param category The category.
+   * @param season   The season, see {@link #season(int)}, or {@link #ALL_SEASONS}.
+   * @return The statistics of the category in the season, or null if it has no expenses.
+   */
+  public Stats getStats(String category, int season) {
+    replayPending();
+    return stats.get(new Key(category, season));
+  }
+
+  private static void record(Map<Key, Stats> target, Expense expense, double amount) {
+    int day = expense.getEpochDay();
+    if (day == Expense.INVALID_DAY) {
+      return;
+    }
+    target.computeIfAbsent(new Key(expense.getCategory(), season(day)), k -> new Stats())
+        .add(amount);
+    target.computeIfAbsent(new Key(expense.getCategory(), ALL_SEASONS), k -> new Stats())
+        .add(amount);
+  }
+
+  private Summary summaryFor(Expense expense, int day) {
+    return summarize(new Key(expense.getCategory(), season(day)), expense.getCategory());
+  }
+
+  /**
+   * Summarizes the statistics of a season, falling back to the whole category while the season
+   * has too few expenses.
+   */
+  private Summary summarize(Key seasonKey, String category) {
+    Stats seasonStats = stats.get(seasonKey);
+    if (seasonStats != null) {
+      Summary summary = seasonStats.summarize();
+      if (summary.count() >= MIN_SAMPLES) {
+        return summary;
+      }
+    }
+    Stats categoryStats = stats.get(new Key(category, ALL_SEASONS));
+    return categoryStats == null ? null : categoryStats.summarize();
+  }
+
+  private Anomaly score(Expense expense, double amount, Summary summary) {
+    if (summary == null || summary.count() < MIN_SAMPLES) {
+      return null;
+    }
+    double score;
+    if (summary.logDeviation() > 0) {
+      score = MAD_SCALE * Math.log(Math.max(amount, MIN_AMOUNT) / summary.median())
+          / summary.logDeviation();
+    } else if (summary.standardDeviation() > 0) {
+      score = (amount - summary.mean()) / summary.standardDeviation();
+    } else {
+      return null;
+    }
+    if (score <= threshold) {
+      return null;
+    }
+    return new Anomaly(expense, amount, score, summary.median(), summary.recentAverage());
+  }
+
+  /**
+   * The streaming statistics of the amounts of one category in one season.
+   */
+  public static final class Stats {
+    private long count;
+    private double mean;
+    private double squaredDeviations;
+    private double recentAverage;
+    private int[] bins = new int[16];
+    private int firstBin = Integer.MIN_VALUE;
+
+    synchronized void add(double amount) {
+      count++;
+      double delta = amount - mean;
+      mean += delta / count;
+      squaredDeviations += delta * (amount - mean);
+      recentAverage = count == 1 ? amount : recentAverage + EWMA_WEIGHT * (amount - recentAverage);
+      int bin = bin(amount);
+      if (firstBin == Integer.MIN_VALUE) {
+        firstBin = bin;
+      } else if (bin < firstBin) {
+        int shift = firstBin - bin;
+        int[] grown = new int[Math.max(bins.length * 2, bins.length + shift)];
+        System.arraycopy(bins, 0, grown, shift, bins.length);
+        bins = grown;
+        firstBin = bin;
+      } else if (bin - firstBin >= bins.length) {
+        bins = Arrays.copyOf(bins, Math.max(bins.length * 2, bin - firstBin + 1));
+      }
+      bins[bin - firstBin]++;
+    }
+
+    public synchronized long getCount() {
+      return count;
+    }
+
+    public synchronized double getMean() {
+      return mean;
+    }
+
+    /**
+     * @return The sample variance, or 0 for fewer than two amounts.
+     */
+    public synchronized double getVariance() {
+      return count < 2 ? 0.0 : squaredDeviations / (count - 1);
+    }
+
+    /**
+     * @return The exponentially weighted moving average of the amounts.
+     */
+    public synchronized double getRecentAverage() {
+      return recentAverage;
+    }
+
+    /**
+     * @return The median amount, accurate to about one percent.
+     */
+    public synchronized double getMedian() {
+      return count == 0 ? 0.0 : value(firstBin + medianBin());
+    }
+
+    /**
+     * @return The median absolute deviation of the natural logarithms of the amounts, in steps of
+     *     the width of a bin, about 0.02.
+     */
+    public synchronized double getLogDeviation() {
+      return count == 0 ? 0.0 : logDeviation(medianBin());
+    }
+
+    synchronized Summary summarize() {
+      if (count == 0) {
+        return new Summary(0, 0.0, 0.0, 0.0, 0.0, 0.0);
+      }
+      int medianBin = medianBin();
+      return new Summary(count, mean, Math.sqrt(getVariance()), value(firstBin + medianBin),
+          logDeviation(medianBin), recentAverage);
+    }
+
+    private int medianBin() {
+      long half = (count + 1) / 2;
+      long seen = 0;
+      int i = 0;
+      while ((seen += bins[i]) < half) {
+        i++;
+      }
+      return i;
+    }
+
+    /**
+     * Widens a range of bins around the median bin one bin per side at a time until it holds half
+     * of the amounts.
+     */
+    private double logDeviation(int medianBin) {
+      long half = (count + 1) / 2;
+      long seen = bins[medianBin];
+      int distance = 0;
+      while (seen < half) {
+        distance++;
+        if (medianBin - distance >= 0) {
+          seen += bins[medianBin - distance];
+        }
+        if (medianBin + distance < bins.length) {
+          seen += bins[medianBin + distance];
+        }
+      }
+      return distance * LOG_BIN_RATIO;
+    }
+
+    private static int bin(double amount) {
+      return (int) Math.floor(Math.log(Math.max(amount, MIN_AMOUNT) / MIN_AMOUNT)
+          / LOG_BIN_RATIO);
+    }
+
+    /**
+     * @return The geometric middle of a bin.
+     */
+    private static double value(int bin) {
+      return MIN_AMOUNT * Math.pow(BIN_RATIO, bin + 0.5);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * A Bloom filter over 64-bit fingerprints.
+ *
+ * <p>At the default false positive rate of 1% it takes about 10 bits per element. The filter
+ * never returns false negatives; its false positive rate grows if more elements than expected are
+ * added.
+ */
+public class BloomFilter {
+
+  private final long[] bits;
+  private final long bitMask;
+  private final int hashCount;
+
+  /**
+   * Creates a filter sized for the given number of elements and false positive rate.
+   *
+   * @param expectedSize      The expected number of elements.
+   * @param falsePositiveRate The target false positive rate, e.g. 0.01.
+   */
+  public BloomFilter(long expectedSize, double falsePositiveRate) {
+    double ln2 = Math.log(2);
+    long bitCount = (long) Math.ceil(-Math.max(expectedSize, 1) * Math.log(falsePositiveRate)
+        / (ln2 * ln2));
+    long size = Math.max(Long.highestOneBit(bitCount - 1) << 1, 64);
+    bits = new long[(int) Math.min(size >>> 6, Integer.MAX_VALUE - 8)];
+    bitMask = ((long) bits.length << 6) - 1;
+    hashCount = (int) Math.max(1, Math.round((double) size / Math.max(expectedSize, 1) * ln2));
+  }
+
+  /**
+   * Adds a fingerprint to the filter.
+   *
+   * @param fingerprint The fingerprint to add.
+   */
+  public void add(long fingerprint) {
+    long h1 = fingerprint;
+    long h2 = LongHashSet.mix(fingerprint) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = (h1 + i * h2) & bitMask;
+      bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * @param fingerprint The fingerprint to look up.
+   * @return False if the fingerprint was definitely never added; true if it may have been.
+   */
+  public boolean mightContain(long fingerprint) {
+    long h1 = fingerprint;
+    long h2 = LongHashSet.mix(fingerprint) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = (h1 + i * h2) & bitMask;
+      if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The memory taken by the bit array in bytes.
+   */
+  public long sizeInBytes() {
+    return (long) bits.length * Long.BYTES;
+  }
+}
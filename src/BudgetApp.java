@@ -1,4 +1,7 @@
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -7,31 +10,77 @@ import java.util.Scanner;
 public class BudgetApp {
 
   private static final String FILE_PATH = "res/expenses.txt";
+  private static final String RECURRING_FILE_NAME = "recurring.txt";
+  private static final String BUDGETS_FILE_NAME = "budgets.txt";
   private static final String MENU_OPTION_ADD_EXPENSE = "1";
   private static final String MENU_OPTION_SHOW_REPORTS = "2";
   private static final String MENU_OPTION_MANAGE_CATEGORIES = "3";
-  private static final String MENU_OPTION_EXIT = "4";
+  private static final String MENU_OPTION_RECURRING_EXPENSES = "4";
+  private static final String MENU_OPTION_BUDGETS = "5";
+  private static final String MENU_OPTION_EXIT = "6";
 
   private static final String SUBMENU_OPTION_REPORT_EXPENSES_BY_CATEGORY = "1";
   private static final String SUBMENU_OPTION_COMPARE_EXPENSES_THIS_MONTH = "2";
   private static final String SUBMENU_OPTION_COMPARE_EXPENSES_THIS_YEAR = "3";
-  private static final String SUBMENU_OPTION_BACK_TO_MAIN_MENU = "4";
+  private static final String SUBMENU_OPTION_SEARCH_EXPENSES = "4";
+  private static final String SUBMENU_OPTION_QUERY_EXPENSES = "5";
+  private static final String SUBMENU_OPTION_BACK_TO_MAIN_MENU = "6";
 
   final List<Expense> expenses;
+  private final Ledger ledger;
   private final ExpenseCategoryManager categoryManager;
-  private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+  private final RecurringExpenseScheduler recurringScheduler;
+  private final BudgetMonitor budgetMonitor;
+  private final AnomalyDetector anomalyDetector;
+  private SimpleDateFormat dateFormat;
   public Scanner scanner;
 
   public BudgetApp() {
-    categoryManager = new ExpenseCategoryManager();
-    scanner = new Scanner(System.in);
-    expenses = Expense.loadExpensesFromFile(FILE_PATH);
+    this(new Ledger(FILE_PATH, new ExpenseCategoryManager()));
+  }
+
+  /**
+   * Creates the application for the given ledger, e.g. one obtained from a {@link LedgerRegistry}.
+   * The budget totals and the anomaly statistics are built from the loaded expenses when first
+   * needed, and due recurring expenses are added when the reports or the recurring expenses are
+   * opened, so the main menu appears without a pass over the ledger.
+   *
+   * @param ledger The ledger to work with.
+   */
+  public BudgetApp(Ledger ledger) {
+    this.ledger = ledger;
+    categoryManager = ledger.getCategoryManager();
+    expenses = ledger.getExpenses();
+    List<Expense> loaded = ledger.getSnapshot();
+    Path dataDir = Path.of(ledger.getExpensesFilePath());
+    budgetMonitor = new BudgetMonitor(dataDir.resolveSibling(BUDGETS_FILE_NAME).toString(),
+        ledger.getFxRates());
+    budgetMonitor.replayLater(loaded);
+    budgetMonitor.addAlertListener(this::printBudgetAlert);
+    ledger.addExpenseListener(budgetMonitor);
+    anomalyDetector = new AnomalyDetector(ledger.getFxRates());
+    anomalyDetector.replayLater(loaded);
+    anomalyDetector.addAnomalyListener(this::printAnomaly);
+    ledger.addExpenseListener(anomalyDetector);
+    categoryManager.addCategoryListener(new CategoryListener() {
+      @Override
+      public void onCategoriesRemoved(List<String> removed, String replacement) {
+        if (replacement != null) {
+          synchronized (ledger) {
+            budgetMonitor.rebuild(expenses);
+            anomalyDetector.rebuild(expenses);
+          }
+        }
+      }
+    });
+    recurringScheduler = new RecurringExpenseScheduler(
+        dataDir.resolveSibling(RECURRING_FILE_NAME).toString());
   }
 
   public void run() {
     while (true) {
       displayMainMenu();
-      String choice = getUserChoice(scanner);
+      String choice = getUserChoice(scanner());
       switch (choice) {
         case MENU_OPTION_ADD_EXPENSE:
           addExpense();
@@ -40,10 +89,16 @@ public class BudgetApp {
           showReportsMenu();
           break;
         case MENU_OPTION_MANAGE_CATEGORIES:
-          categoryManager.manageCategories(scanner);
+          categoryManager.manageCategories(scanner());
+          break;
+        case MENU_OPTION_RECURRING_EXPENSES:
+          manageRecurringExpenses();
+          break;
+        case MENU_OPTION_BUDGETS:
+          manageBudgets();
           break;
         case MENU_OPTION_EXIT:
-          Expense.saveExpensesToFile(expenses, FILE_PATH);
+          ledger.save();
           exit();
           return;
         default:
@@ -59,29 +114,45 @@ public class BudgetApp {
     System.out.println("║  1. Новый расход                               ║");
     System.out.println("║  2. Отчеты                                     ║");
     System.out.println("║  3. Управление категориями                     ║");
-    System.out.println("║  4. Выход                                      ║");
+    System.out.println("║  4. Регулярные расходы                         ║");
+    System.out.println("║  5. Бюджеты                                    ║");
+    System.out.println("║  6. Выход                                      ║");
     System.out.println("╚════════════════════════════════════════════════╝");
   }
 
   private void showReportsMenu() {
     boolean isSubMenuRunning = true;
-    ExpenseReportGenerator reportGenerator = new ExpenseReportGenerator(expenses);
+    ExpenseReportGenerator reportGenerator = ledger.getReportGenerator();
+    recurringScheduler.materializeUpTo(today(), ledger);
     while (isSubMenuRunning) {
       System.out.println("Меню отчетов:");
       System.out.println("1. Отчет о расходах по категориям и периоду");
       System.out.println("2. Сравнить расходы текущего месяца с прошлым");
       System.out.println("3. Сравнить расходы текущего года с прошлым");
-      System.out.println("4. Назад в главное меню");
-      String reportChoice = getUserChoice(scanner);
+      System.out.println("4. Поиск расходов по заметкам и категориям");
+      System.out.println("5. Произвольный запрос");
+      System.out.println("6. Назад в главное меню");
+      String reportChoice = getUserChoice(scanner(), SUBMENU_OPTION_BACK_TO_MAIN_MENU);
       switch (reportChoice) {
         case SUBMENU_OPTION_REPORT_EXPENSES_BY_CATEGORY:
           reportGenerator.viewExpensesByCategoryAndPeriod();
           break;
         case SUBMENU_OPTION_COMPARE_EXPENSES_THIS_MONTH:
           reportGenerator.compareExpensesWithPreviousMonth();
+          LocalDate now = LocalDate.now();
+          printScheduledExpenses("до конца месяца",
+              (int) now.withDayOfMonth(now.lengthOfMonth()).toEpochDay());
           break;
         case SUBMENU_OPTION_COMPARE_EXPENSES_THIS_YEAR:
           reportGenerator.compareExpensesByYear();
+          printScheduledExpenses("до конца года",
+              (int) LocalDate.now().withDayOfYear(1).plusYears(1).minusDays(1).toEpochDay());
+          break;
+        case SUBMENU_OPTION_SEARCH_EXPENSES:
+          searchExpenses();
+          break;
+        case SUBMENU_OPTION_QUERY_EXPENSES:
+          queryExpenses();
           break;
         case SUBMENU_OPTION_BACK_TO_MAIN_MENU:
           isSubMenuRunning = false;
@@ -93,15 +164,27 @@ public class BudgetApp {
   }
 
   /**
-   * Prompts the user for their choice and returns it as a string.
+   * Prompts the user for their choice and returns it as a string. The end of input, e.g. a closed
+   * pipe, counts as choosing to exit.
    *
    * @param scanner The Scanner object for user input.
    * @return The user's choice as a string.
    */
 
   String getUserChoice(Scanner scanner) {
+    return getUserChoice(scanner, MENU_OPTION_EXIT);
+  }
+
+  /**
+   * Prompts the user for their choice and returns it as a string.
+   *
+   * @param scanner    The Scanner object for user input.
+   * @param endOfInput The choice to return when there is no more input.
+   * @return The user's choice as a string.
+   */
+  private String getUserChoice(Scanner scanner, String endOfInput) {
     System.out.print("Введите ваш выбор: ");
-    return scanner.nextLine();
+    return scanner.hasNextLine() ? scanner.nextLine() : endOfInput;
   }
 
   /**
@@ -118,7 +201,7 @@ public class BudgetApp {
       System.out.println((i + 1) + ". " + categories.get(i));
     }
 
-    int categoryChoice = Integer.parseInt(getUserChoice(scanner)); // Use the passed scanner
+    int categoryChoice = Integer.parseInt(getUserChoice(scanner, "0")); // Use the passed scanner
     if (categoryChoice < 1 || categoryChoice > categories.size()) {
       System.err.println("Неверный выбор категории.");
       return null;
@@ -133,7 +216,7 @@ public class BudgetApp {
    */
   double enterExpenseAmount() {
     System.out.print("Введите сумму расхода: ");
-    return getDoubleInput(scanner);
+    return getDoubleInput(scanner());
   }
 
   /**
@@ -148,7 +231,7 @@ public class BudgetApp {
 
     while (!validDate) {
       System.out.print("Введите дату расхода (в формате dd.MM.yyyy): ");
-      String dateStr = scanner.nextLine();
+      String dateStr = scanner().nextLine();
 
       String[] dateParts = dateStr.split("\\.");
       if (dateParts.length != 3) {
@@ -174,7 +257,7 @@ public class BudgetApp {
         }
 
         date = calendar.getTime();
-        dateFormat.format(date);
+        dateFormat().format(date);
 
         validDate = true;
       } catch (IllegalArgumentException e) {
@@ -189,19 +272,241 @@ public class BudgetApp {
    * category, enter an amount, and input the date.
    */
   public void addExpense() {
-    String category = chooseExpenseCategory(scanner);
+    String category = chooseExpenseCategory(scanner());
     if (category == null) {
       return;
     }
 
     double amount = enterExpenseAmount();
     Date date = enterExpenseDate();
+    System.out.print("Введите валюту (пусто - " + ledger.getFxRates().getBaseCurrency() + "): ");
+    String currency = scanner().nextLine().trim();
+    System.out.print("Введите заметку (необязательно): ");
+    String note = scanner().nextLine().trim();
 
-    Expense expense = new Expense(category, amount, dateFormat.format(date));
-    expenses.add(expense);
+    RecurringExpense.Frequency frequency = enterFrequency();
+    String dateStr = dateFormat().format(date);
+    if (frequency != null && (currency.isEmpty()
+        || currency.equals(ledger.getFxRates().getBaseCurrency()))) {
+      LocalDate start = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+      recurringScheduler.addRule(new RecurringExpense(category, amount, frequency,
+          start.getDayOfMonth(), (int) start.toEpochDay(), RecurringExpense.NO_END, note));
+      recurringScheduler.materializeUpTo(today(), ledger);
+      System.out.println("Регулярный расход успешно добавлен.");
+      return;
+    }
+    if (frequency != null) {
+      System.err.println("Регулярные расходы ведутся только в базовой валюте, "
+          + "расход добавлен один раз.");
+    }
+    Expense expense = new Expense(category, amount, dateStr, null, note, currency);
+    ledger.addExpense(expense);
     System.out.println("Расход успешно добавлен.");
   }
 
+  /**
+   * Prompts the user whether the expense repeats.
+   *
+   * @return The frequency of the expense, or null if it does not repeat.
+   */
+  private RecurringExpense.Frequency enterFrequency() {
+    while (true) {
+      System.out.print("Повторять расход? (пусто - нет, 1 - еженедельно, 2 - ежемесячно): ");
+      switch (scanner().nextLine().trim()) {
+        case "":
+          return null;
+        case "1":
+          return RecurringExpense.Frequency.WEEKLY;
+        case "2":
+          return RecurringExpense.Frequency.MONTHLY;
+        default:
+          System.err.println("Неверный выбор.");
+      }
+    }
+  }
+
+  /**
+   * Lists the recurring expense rules with their next due dates and lets the user remove them.
+   * Occurrences already added to the ledger stay there.
+   */
+  void manageRecurringExpenses() {
+    recurringScheduler.materializeUpTo(today(), ledger);
+    while (true) {
+      List<RecurringExpense> rules = recurringScheduler.getRules();
+      System.out.println("Регулярные расходы:");
+      for (int i = 0; i < rules.size(); i++) {
+        RecurringExpense rule = rules.get(i);
+        System.out.printf("%d. %-18s | %.1f | %s | следующий %s%n", i + 1, rule.getCategory(),
+            rule.getAmount(), rule.getFrequency() == RecurringExpense.Frequency.WEEKLY
+                ? "еженедельно" : "ежемесячно, " + rule.getDayOfMonth() + " числа",
+            Expense.formatEpochDay(rule.getNextDueDay()));
+      }
+      if (rules.isEmpty()) {
+        System.out.println("Нет регулярных расходов. Их можно добавить через новый расход.");
+        return;
+      }
+      System.out.print("Введите номер правила для удаления (пусто - назад): ");
+      String input = scanner().nextLine().trim();
+      if (input.isEmpty()) {
+        return;
+      }
+      try {
+        int index = Integer.parseInt(input);
+        if (index < 1 || index > rules.size()) {
+          System.err.println("Неверный номер правила.");
+        } else if (recurringScheduler.removeRule(rules.get(index - 1))) {
+          System.out.println("Правило удалено.");
+        }
+      } catch (NumberFormatException e) {
+        System.err.println("Неверный ввод. Введите число.");
+      }
+    }
+  }
+
+  /**
+   * Lists the categories with their monthly limits and the spend of the current month, and lets
+   * the user set or remove the limit of a category. Limits are saved to the budgets file at once.
+   */
+  void manageBudgets() {
+    while (true) {
+      LocalDate now = LocalDate.now();
+      List<String> categories = categoryManager.getCategories();
+      System.out.println("Месячные лимиты, " + ledger.getFxRates().getBaseCurrency() + ":");
+      for (int i = 0; i < categories.size(); i++) {
+        String category = categories.get(i);
+        double limit = budgetMonitor.getLimit(category);
+        System.out.printf("%d. %-18s | %s%n", i + 1, category, limit > 0
+            ? String.format("%.1f из %.1f", budgetMonitor.getMonthTotal(category, now.getYear(),
+                now.getMonthValue()), limit)
+            : "без лимита");
+      }
+      System.out.print("Введите номер категории для изменения лимита (пусто - назад): ");
+      String input = scanner().hasNextLine() ? scanner().nextLine().trim() : "";
+      if (input.isEmpty()) {
+        return;
+      }
+      try {
+        int index = Integer.parseInt(input);
+        if (index < 1 || index > categories.size()) {
+          System.err.println("Неверный выбор категории.");
+          continue;
+        }
+        System.out.print("Введите месячный лимит (0 - без лимита): ");
+        budgetMonitor.setLimit(categories.get(index - 1), getDoubleInput(scanner()));
+        System.out.println("Лимит сохранён.");
+      } catch (NumberFormatException e) {
+        System.err.println("Неверный ввод. Введите число.");
+      }
+    }
+  }
+
+  /**
+   * Prints the recurring expenses scheduled from tomorrow up to the given day, in total and by
+   * category, as an addition to the period reports.
+   *
+   * @param period The description of the period, e.g. "до конца месяца".
+   * @param toDay  The last epoch day of the period, inclusive.
+   */
+  private void printScheduledExpenses(String period, int toDay) {
+    int fromDay = today() + 1;
+    double total = recurringScheduler.getScheduledTotal(fromDay, toDay);
+    if (total == 0) {
+      return;
+    }
+    System.out.printf("Запланировано регулярных расходов %s: %.1f%n", period, total);
+    recurringScheduler.getScheduledTotalsByCategory(fromDay, toDay).forEach((category, amount) ->
+        System.out.printf("  %s: %.1f%n", category, amount));
+  }
+
+  private static int today() {
+    return (int) LocalDate.now().toEpochDay();
+  }
+
+  /**
+   * Searches expenses by words of their notes and categories, optionally within a period. Words
+   * ending with * match as prefixes, and OR separates alternatives.
+   */
+  void searchExpenses() {
+    System.out.print("Введите поисковый запрос (например: кофе* OR такси): ");
+    String query = scanner().nextLine();
+    int fromDay = enterOptionalDay("Введите начальную дату (dd.MM.yyyy) или оставьте пустой: ",
+        Integer.MIN_VALUE);
+    int toDay = enterOptionalDay("Введите конечную дату (dd.MM.yyyy) или оставьте пустой: ",
+        Integer.MAX_VALUE);
+    List<Expense> found = ledger.search(query, fromDay, toDay, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY);
+    ExpenseReportGenerator reportGenerator = ledger.getReportGenerator();
+    for (Expense expense : found) {
+      System.out.printf("%-11s | %-18s | %s | %s%n", expense.getDate(), expense.getCategory(),
+          reportGenerator.formatAmount(expense),
+          expense.getNote() == null ? "" : expense.getNote());
+    }
+    System.out.println("Найдено расходов: " + found.size());
+  }
+
+  /**
+   * Prompts the user for an ad-hoc query, see {@link ExpenseQuery}, and prints its result.
+   */
+  void queryExpenses() {
+    System.out.println("Введите запрос (например: sum(amount) where date in 2023"
+        + " group by category, month order by sum desc limit 10): ");
+    String query = scanner().nextLine();
+    try {
+      System.out.print(ledger.getReportGenerator().query(query).format());
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+    }
+  }
+
+  private int enterOptionalDay(String prompt, int defaultDay) {
+    while (true) {
+      System.out.print(prompt);
+      String input = scanner().nextLine().trim();
+      if (input.isEmpty()) {
+        return defaultDay;
+      }
+      int day = Expense.parseEpochDay(input);
+      if (day != Expense.INVALID_DAY) {
+        return day;
+      }
+      System.err.println("Неверный формат даты. Используйте формат dd.MM.yyyy.");
+    }
+  }
+
+  /**
+   * Returns the scanner reading user input, creating it on first use: a scanner loads the number
+   * formats of the default locale, which would otherwise delay the first menu.
+   */
+  private Scanner scanner() {
+    if (scanner == null) {
+      scanner = new Scanner(System.in);
+    }
+    return scanner;
+  }
+
+  /**
+   * Returns the format of entered dates, creating it on first use: loading its locale data takes
+   * longer than the rest of the startup.
+   */
+  private SimpleDateFormat dateFormat() {
+    if (dateFormat == null) {
+      dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+    }
+    return dateFormat;
+  }
+
+  private void printBudgetAlert(BudgetMonitor.Alert alert) {
+    System.out.printf("Внимание: расходы по категории %s за %02d.%d достигли %.0f%% лимита "
+            + "(%.1f из %.1f).%n", alert.category(), alert.month(), alert.year(),
+        alert.threshold() * 100, alert.total(), alert.limit());
+  }
+
+  private void printAnomaly(AnomalyDetector.Anomaly anomaly) {
+    Expense expense = anomaly.expense();
+    System.out.printf("Необычный расход: %.1f по категории %s от %s (обычно около %.1f).%n",
+        anomaly.amount(), expense.getCategory(), expense.getDate(), anomaly.median());
+  }
+
   /**
    * Helper method to get a double input from the user via the scanner.
    *
@@ -220,6 +525,8 @@ public class BudgetApp {
 
   void exit() {
     System.out.println("Выход");
-    scanner.close();
+    if (scanner != null) {
+      scanner.close();
+    }
   }
 }
@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Checks per-category monthly budgets as expenses are added.
+ *
+ * <p>A running total is kept for every (category, month) pair, so recording an expense is a
+ * single hash lookup and addition and never rescans the expense list. When the total of a month
+ * crosses one of the configured thresholds of the category's limit, every registered
+ * {@link AlertListener} is notified exactly once for that threshold. Amounts in other currencies
+ * are converted into the base currency with the rate of their day; expenses without a rate are
+ * reported and left out of the totals.
+ */
+public class BudgetMonitor implements ExpenseListener {
+
+  private static final double[] DEFAULT_THRESHOLDS = {0.8, 1.0};
+
+  /**
+   * A budget threshold crossed by the spend of a category in a month.
+   *
+   * @param category  The category whose budget was reached.
+   * @param year      The year of the month.
+   * @param month     The month, 1-12.
+   * @param threshold The crossed fraction of the limit, e.g. 0.8.
+   * @param total     The total spend of the month after the expense that crossed the threshold.
+   * @param limit     The monthly limit of the category.
+   */
+  public record Alert(String category, int year, int month, double threshold, double total,
+                      double limit) {
+  }
+
+  /**
+   * Receives budget alerts.
+   */
+  @FunctionalInterface
+  public interface AlertListener {
+    void onAlert(Alert alert);
+  }
+
+  /**
+   * Spells out equals and hashCode: the generated ones are bootstrapped through method handles on
+   * first use, which is a noticeable part of the startup time when totals are replayed.
+   */
+  private record MonthKey(String category, int monthIndex) {
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof MonthKey other && monthIndex == other.monthIndex
+          && category.equals(other.category);
+    }
+
+    @Override
+    public int hashCode() {
+      return category.hashCode() * 31 + monthIndex;
+    }
+  }
+
+  private static final class MonthTotal {
+    private double total;
+
+    synchronized double add(double amount) {
+      double before = total;
+      total += amount;
+      return before;
+    }
+
+    synchronized double get() {
+      return total;
+    }
+  }
+
+  private final String limitsFilePath;
+  private final FxRateTable fxRates;
+  private final double[] thresholds;
+  private final Map<String, Double> limits = new ConcurrentHashMap<>();
+  private volatile Map<MonthKey, MonthTotal> totals = new ConcurrentHashMap<>();
+  private final List<AlertListener> listeners = new CopyOnWriteArrayList<>();
+  private volatile List<Expense> pendingReplay;
+
+  /**
+   * Creates a monitor with the default thresholds of 80% and 100% and loads the limits from the
+   * given file, if it exists.
+   *
+   * @param limitsFilePath The path to the file where the monthly limits are stored.
+   */
+  public BudgetMonitor(String limitsFilePath) {
+    this(limitsFilePath, DEFAULT_THRESHOLDS);
+  }
+
+  /**
+   * Creates a monitor with custom thresholds that only converts the base currency.
+   *
+   * @param limitsFilePath The path to the file where the monthly limits are stored.
+   * @param thresholds     The fractions of the limit at which alerts fire, e.g. 0.5, 0.8, 1.0.
+   */
+  public BudgetMonitor(String limitsFilePath, double... thresholds) {
+    this(limitsFilePath, new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY), thresholds);
+  }
+
+  /**
+   * Creates a monitor with the default thresholds of 80% and 100%.
+   *
+   * @param limitsFilePath The path to the file where the monthly limits are stored.
+   * @param fxRates        The exchange rates into the base currency of the limits.
+   */
+  public BudgetMonitor(String limitsFilePath, FxRateTable fxRates) {
+    this(limitsFilePath, fxRates, DEFAULT_THRESHOLDS);
+  }
+
+  /**
+   * Creates a monitor with custom thresholds.
+   *
+   * @param limitsFilePath The path to the file where the monthly limits are stored.
+   * @param fxRates        The exchange rates into the base currency of the limits.
+   * @param thresholds     The fractions of the limit at which alerts fire, e.g. 0.5, 0.8, 1.0.
+   */
+  public BudgetMonitor(String limitsFilePath, FxRateTable fxRates, double... thresholds) {
+    this.limitsFilePath = limitsFilePath;
+    this.fxRates = fxRates;
+    this.thresholds = thresholds.clone();
+    Arrays.sort(this.thresholds);
+    loadLimits();
+  }
+
+  public void addAlertListener(AlertListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeAlertListener(AlertListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Sets the monthly limit of a category and saves the limits file. Thresholds already exceeded
+   * under the new limit fire on the next expense of the month that crosses them.
+   *
+   * @param category The category.
+   * @param limit    The monthly limit; zero or less removes the limit.
+   */
+  public void setLimit(String category, double limit) {
+    if (limit > 0) {
+      limits.put(category, limit);
+    } else {
+      limits.remove(category);
+    }
+    saveLimits();
+  }
+
+  /**
+   * @param category The category.
+   * @return The monthly limit of the category, or 0 if it has none.
+   */
+  public double getLimit(String category) {
+    return limits.getOrDefault(category, 0.0);
+  }
+
+  /**
+   * @param category The category.
+   * @param year     The year.
+   * @param month    The month, 1-12.
+   * @return The recorded spend of the category in the month.
+   */
+  public double getMonthTotal(String category, int year, int month) {
+    replayPending();
+    MonthTotal total = totals.get(new MonthKey(category, year * 12 + month - 1));
+    return total == null ? 0.0 : total.get();
+  }
+
+  /**
+   * Rebuilds the running totals from existing expenses without firing alerts; used at startup
+   * before the monitor is registered with a ledger.
+   *
+   * @param expenses The expenses to replay.
+   */
+  public void replay(List<Expense> expenses) {
+    replayInto(totals, expenses);
+  }
+
+  private void replayInto(Map<MonthKey, MonthTotal> target, List<Expense> expenses) {
+    int missingRates = 0;
+    for (Expense expense : expenses) {
+      MonthTotal total = totalFor(target, expense);
+      if (total == null) {
+        continue;
+      }
+      double amount = fxRates.toBase(expense);
+      if (Double.isNaN(amount)) {
+        missingRates++;
+      } else {
+        total.add(amount);
+      }
+    }
+    if (missingRates > 0) {
+      System.err.println("Нет курса для " + missingRates
+          + " расходов в других валютах, они не учтены в бюджетах.");
+    }
+  }
+
+  /**
+   * Replays the given expenses like {@link #replay(List)}, but only when the totals are first
+   * needed, so that a start does not pay for it before the first expense is added.
+   *
+   * @param expenses The expenses to replay; an immutable snapshot, e.g.
+   *                 {@link Ledger#getSnapshot()}, so that expenses added meanwhile and passed to
+   *                 {@link #onExpenseAdded(Expense)} are not counted twice.
+   */
+  public synchronized void replayLater(List<Expense> expenses) {
+    replayPending();
+    pendingReplay = expenses;
+  }
+
+  private void replayPending() {
+    if (pendingReplay != null) {
+      synchronized (this) {
+        List<Expense> pending = pendingReplay;
+        if (pending != null) {
+          replay(pending);
+          pendingReplay = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the running totals with totals replayed from the given expenses; used after expenses
+   * were moved between categories. The new totals are built aside and swapped in at once, so that
+   * readers never see them cleared or half replayed. Expenses added meanwhile would be lost with
+   * the old totals, so the caller keeps them from being added, e.g. by holding the ledger lock.
+   *
+   * @param expenses The expenses to replay.
+   */
+  public synchronized void rebuild(List<Expense> expenses) {
+    Map<MonthKey, MonthTotal> rebuilt = new ConcurrentHashMap<>();
+    replayInto(rebuilt, expenses);
+    pendingReplay = null;
+    totals = rebuilt;
+  }
+
+  @Override
+  public void onExpenseAdded(Expense expense) {
+    replayPending();
+    MonthTotal total = totalFor(totals, expense);
+    if (total == null) {
+      return;
+    }
+    double amount = fxRates.toBase(expense);
+    if (Double.isNaN(amount)) {
+      System.err.println("Нет курса " + expense.getCurrency() + " на " + expense.getDate()
+          + ", расход не учтён в бюджете.");
+      return;
+    }
+    double before = total.add(amount);
+    Double limit = limits.get(expense.getCategory());
+    if (limit == null || listeners.isEmpty()) {
+      return;
+    }
+    double after = before + amount;
+    int monthIndex = Expense.toMonthIndex(expense.getEpochDay());
+    for (double threshold : thresholds) {
+      double boundary = threshold * limit;
+      if (before < boundary && after >= boundary) {
+        Alert alert = new Alert(expense.getCategory(), monthIndex / 12, monthIndex % 12 + 1,
+            threshold, after, limit);
+        for (AlertListener listener : listeners) {
+          listener.onAlert(alert);
+        }
+      }
+    }
+  }
+
+  private static MonthTotal totalFor(Map<MonthKey, MonthTotal> target, Expense expense) {
+    int epochDay = expense.getEpochDay();
+    if (epochDay == Expense.INVALID_DAY) {
+      return null;
+    }
+    MonthKey key = new MonthKey(expense.getCategory(), Expense.toMonthIndex(epochDay));
+    return target.computeIfAbsent(key, k -> new MonthTotal());
+  }
+
+  private void loadLimits() {
+    try {
+      ChecksummedFile.Content content = ChecksummedFile.read(Path.of(limitsFilePath));
+      LedgerRecovery.quarantineOnLoad(Path.of(limitsFilePath), content);
+      for (String line : content.getLines()) {
+        String[] parts = line.split(" ");
+        try {
+          if (parts.length == 2) {
+            limits.put(parts[0], Double.parseDouble(parts[1]));
+            continue;
+          }
+        } catch (NumberFormatException e) {
+          // reported below
+        }
+        System.err.println("Пропущен некорректный лимит: " + line);
+      }
+    } catch (NoSuchFileException e) {
+      // no limits defined yet
+    } catch (IOException e) {
+      System.err.println("Ошибка при чтении лимитов бюджета: " + e.getMessage());
+    }
+  }
+
+  private synchronized void saveLimits() {
+    List<String> lines = new ArrayList<>(limits.size());
+    limits.forEach((category, limit) -> lines.add(category + " " + limit));
+    try {
+      ChecksummedFile.writeAtomically(Path.of(limitsFilePath), lines);
+    } catch (IOException e) {
+      System.err.println("Ошибка при записи лимитов бюджета: " + e.getMessage());
+    }
+  }
+}
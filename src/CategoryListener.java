@@ -0,0 +1,24 @@
+import java.util.List;
+
+/**
+ * Receives changes of the categories of an {@link ExpenseCategoryManager}.
+ */
+public interface CategoryListener {
+
+  /**
+   * Called after a category has been added.
+   *
+   * @param category The added category.
+   */
+  default void onCategoryAdded(String category) {
+  }
+
+  /**
+   * Called after categories have been removed.
+   *
+   * @param removed     The removed category followed by its removed descendants.
+   * @param replacement The category their expenses should be moved to, or null to leave them.
+   */
+  default void onCategoriesRemoved(List<String> removed, String replacement) {
+  }
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The hierarchy of expense categories, built from category paths such as "Транспорт/Такси".
+ *
+ * <p>Every category gets an integer id. The categories are numbered in depth-first (Euler tour)
+ * order, so the subtree of a category occupies the contiguous range {@code [enter, exit)} of that
+ * order. A rollup over a subtree is therefore a difference of two prefix sums.
+ */
+public class CategoryTree {
+
+  /**
+   * Separates the levels of a category path.
+   */
+  public static final char SEPARATOR = '/';
+
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private final List<Integer> parents = new ArrayList<>();
+  private final List<List<Integer>> children = new ArrayList<>();
+  private final List<Integer> roots = new ArrayList<>();
+  private int[] enter = new int[0];
+  private int[] exit = new int[0];
+  private boolean numberingValid;
+
+  /**
+   * Adds a category and any missing ancestors.
+   *
+   * @param path The category path.
+   * @return The id of the category.
+   */
+  public synchronized int add(String path) {
+    Integer id = ids.get(path);
+    if (id != null) {
+      return id;
+    }
+    int separator = path.lastIndexOf(SEPARATOR);
+    int parent = separator > 0 ? add(path.substring(0, separator)) : -1;
+    id = names.size();
+    ids.put(path, id);
+    names.add(path);
+    parents.add(parent);
+    children.add(new ArrayList<>());
+    if (parent < 0) {
+      roots.add(id);
+    } else {
+      children.get(parent).add(id);
+    }
+    numberingValid = false;
+    return id;
+  }
+
+  /**
+   * Removes a category together with all of its descendants.
+   *
+   * @param path The category path.
+   * @return The paths of the removed categories, the given one first; empty if it did not exist.
+   */
+  public synchronized List<String> remove(String path) {
+    Integer id = ids.get(path);
+    List<String> removed = new ArrayList<>();
+    if (id == null) {
+      return removed;
+    }
+    collectSubtree(id, removed);
+    int parent = parents.get(id);
+    if (parent < 0) {
+      roots.remove(id);
+    } else {
+      children.get(parent).remove(id);
+    }
+    for (String name : removed) {
+      int removedId = ids.remove(name);
+      names.set(removedId, null);
+      children.get(removedId).clear();
+    }
+    numberingValid = false;
+    return removed;
+  }
+
+  private void collectSubtree(int id, List<String> out) {
+    out.add(names.get(id));
+    for (int child : children.get(id)) {
+      collectSubtree(child, out);
+    }
+  }
+
+  public synchronized boolean contains(String path) {
+    return ids.containsKey(path);
+  }
+
+  /**
+   * @param path The category path.
+   * @return The path of the parent category, or null for top-level or unknown categories.
+   */
+  public synchronized String getParent(String path) {
+    Integer id = ids.get(path);
+    if (id == null || parents.get(id) < 0) {
+      return null;
+    }
+    return names.get(parents.get(id));
+  }
+
+  /**
+   * @return The paths of the top-level categories.
+   */
+  public synchronized List<String> getRoots() {
+    List<String> result = new ArrayList<>();
+    for (int root : roots) {
+      result.add(names.get(root));
+    }
+    return result;
+  }
+
+  /**
+   * @param path The category path.
+   * @return The paths of the direct children of the category.
+   */
+  public synchronized List<String> getChildren(String path) {
+    List<String> result = new ArrayList<>();
+    Integer id = ids.get(path);
+    if (id != null) {
+      for (int child : children.get(id)) {
+        result.add(names.get(child));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sums expenses by category in the base currency in one pass and prepares subtree totals for
+   * every category. Expenses of categories that are not in the tree are ignored, and expenses
+   * without an exchange rate are reported and left out.
+   *
+   * @param expenses The expenses to sum.
+   * @param fxRates  The exchange rates into the base currency.
+   * @param fromDay  The first epoch day, inclusive.
+   * @param toDay    The last epoch day, inclusive.
+   * @return The rollup of the expenses.
+   */
+  public synchronized Rollup rollup(List<Expense> expenses, FxRateTable fxRates, int fromDay,
+      int toDay) {
+    renumber();
+    double[] totalsByPosition = new double[names.size()];
+    String lastCategory = null;
+    int lastPosition = -1;
+    boolean missingRate = false;
+    for (Expense expense : expenses) {
+      int day = expense.getEpochDay();
+      if (day < fromDay || day > toDay) {
+        continue;
+      }
+      String category = expense.getCategory();
+      if (!category.equals(lastCategory)) {
+        Integer id = ids.get(category);
+        lastCategory = category;
+        lastPosition = id == null ? -1 : enter[id];
+      }
+      if (lastPosition >= 0) {
+        double amount = fxRates.toBase(expense);
+        if (Double.isNaN(amount)) {
+          missingRate = true;
+        } else {
+          totalsByPosition[lastPosition] += amount;
+        }
+      }
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, они не учтены в итогах.");
+    }
+    double[] prefix = new double[totalsByPosition.length + 1];
+    for (int i = 0; i < totalsByPosition.length; i++) {
+      prefix[i + 1] = prefix[i] + totalsByPosition[i];
+    }
+    return new Rollup(new HashMap<>(ids), Arrays.copyOf(enter, enter.length),
+        Arrays.copyOf(exit, exit.length), prefix, totalsByPosition);
+  }
+
+  private void renumber() {
+    if (numberingValid) {
+      return;
+    }
+    enter = new int[names.size()];
+    exit = new int[names.size()];
+    int[] stack = new int[names.size()];
+    int[] nextChild = new int[names.size()];
+    int position = 0;
+    for (int root : roots) {
+      int depth = 0;
+      stack[depth++] = root;
+      enter[root] = position++;
+      while (depth > 0) {
+        int node = stack[depth - 1];
+        List<Integer> nodeChildren = children.get(node);
+        if (nextChild[node] < nodeChildren.size()) {
+          int child = nodeChildren.get(nextChild[node]++);
+          enter[child] = position++;
+          stack[depth++] = child;
+        } else {
+          exit[node] = position;
+          depth--;
+        }
+      }
+    }
+    numberingValid = true;
+  }
+
+  /**
+   * Category totals of one rollup, answering subtree totals in constant time.
+   */
+  public static final class Rollup {
+    private final Map<String, Integer> ids;
+    private final int[] enter;
+    private final int[] exit;
+    private final double[] prefix;
+    private final double[] own;
+
+    Rollup(Map<String, Integer> ids, int[] enter, int[] exit, double[] prefix, double[] own) {
+      this.ids = ids;
+      this.enter = enter;
+      this.exit = exit;
+      this.prefix = prefix;
+      this.own = own;
+    }
+
+    /**
+     * @param path The category path.
+     * @return The total of the category and all of its descendants.
+     */
+    public double getTotal(String path) {
+      Integer id = ids.get(path);
+      return id == null ? 0.0 : prefix[exit[id]] - prefix[enter[id]];
+    }
+
+    /**
+     * @param path The category path.
+     * @return The total of expenses recorded directly under the category.
+     */
+    public double getOwnTotal(String path) {
+      Integer id = ids.get(path);
+      return id == null ? 0.0 : own[enter[id]];
+    }
+  }
+}
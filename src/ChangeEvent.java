@@ -0,0 +1,22 @@
+import java.util.List;
+
+/**
+ * A change of ledger state published through a {@link ChangeFeed}.
+ *
+ * @param sequence    The position of the event in the feed, starting at zero.
+ * @param type        The kind of change.
+ * @param expense     The added expense for {@link Type#EXPENSE_ADDED}, otherwise null.
+ * @param categories  The added category, or the removed categories with the given one first;
+ *                    empty for {@link Type#EXPENSE_ADDED}.
+ * @param replacement The category receiving the expenses of removed categories, or null.
+ */
+public record ChangeEvent(long sequence, Type type, Expense expense, List<String> categories,
+                          String replacement) {
+
+  /**
+   * The kinds of published changes.
+   */
+  public enum Type {
+    EXPENSE_ADDED, CATEGORY_ADDED, CATEGORIES_REMOVED
+  }
+}
@@ -0,0 +1,261 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process feed of ledger changes for live subscribers such as dashboards and caches.
+ *
+ * <p>Events are numbered with consecutive sequence numbers and stored in a ring buffer whose
+ * capacity is a power of two, so the slot of an event is its sequence masked by the capacity. The
+ * cursor is the sequence of the last published event; every subscription tracks the sequence of
+ * the last event it consumed. A publisher may only overwrite a slot once every subscription has
+ * consumed it: when the slowest subscriber is a full ring behind, publishing waits, which is the
+ * backpressure on the ledger. Subscribers read the events between their sequence and the cursor in
+ * batches without taking any lock.
+ *
+ * <p>Events are published from the ledger's listeners while the ledger is locked, so the wait is
+ * bounded: a subscription still a full ring behind after the maximum publish wait is dropped, the
+ * event is published, and the next poll of that subscription throws an
+ * {@link IllegalStateException}. A dropped consumer has missed events and must rebuild its state
+ * from the ledger before subscribing again. Subscriptions that are no longer read should be closed,
+ * or every publish that finds the ring full waits for the whole bound before dropping them.
+ *
+ * <p>A subscription can start at any sequence still held in the ring, so a consumer that
+ * remembers the last sequence it processed can resume after reconnecting.
+ */
+public class ChangeFeed implements ExpenseListener, CategoryListener {
+
+  private static final long PUBLISHER_PARK_NANOS = 100_000;
+  private static final long DEFAULT_MAX_PUBLISH_WAIT_MILLIS = 100;
+
+  private final ChangeEvent[] ring;
+  private final int mask;
+  private final long maxPublishWaitNanos;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final Object signal = new Object();
+  private final AtomicInteger waitingSubscribers = new AtomicInteger();
+  private volatile long cursor = -1;
+  private long cachedGatingSequence = -1;
+
+  /**
+   * Creates a feed that waits at most 100 ms for a subscriber a full ring behind.
+   *
+   * @param capacity The number of events held in the ring; a power of two.
+   */
+  public ChangeFeed(int capacity) {
+    this(capacity, DEFAULT_MAX_PUBLISH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a feed.
+   *
+   * @param capacity       The number of events held in the ring; a power of two.
+   * @param maxPublishWait The maximum time a publish waits for subscribers a full ring behind
+   *                       before dropping them.
+   * @param unit           The unit of the maximum wait.
+   */
+  public ChangeFeed(int capacity, long maxPublishWait, TimeUnit unit) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Размер ленты изменений должен быть степенью двойки: "
+          + capacity);
+    }
+    this.ring = new ChangeEvent[capacity];
+    this.mask = capacity - 1;
+    this.maxPublishWaitNanos = unit.toNanos(maxPublishWait);
+  }
+
+  /**
+   * @return The sequence of the last published event, or -1 if none was published yet.
+   */
+  public long getCursor() {
+    return cursor;
+  }
+
+  @Override
+  public void onExpenseAdded(Expense expense) {
+    publish(ChangeEvent.Type.EXPENSE_ADDED, expense, List.of(), null);
+  }
+
+  @Override
+  public void onCategoryAdded(String category) {
+    publish(ChangeEvent.Type.CATEGORY_ADDED, null, List.of(category), null);
+  }
+
+  @Override
+  public void onCategoriesRemoved(List<String> removed, String replacement) {
+    publish(ChangeEvent.Type.CATEGORIES_REMOVED, null, List.copyOf(removed), replacement);
+  }
+
+  /**
+   * Publishes an event, waiting while the slowest subscription is a full ring behind, and dropping
+   * the subscriptions still that far behind once the maximum publish wait has elapsed.
+   *
+   * @return The sequence of the published event.
+   */
+  private synchronized long publish(ChangeEvent.Type type, Expense expense,
+      List<String> categories, String replacement) {
+    long sequence = cursor + 1;
+    long wrapPoint = sequence - ring.length;
+    if (wrapPoint > cachedGatingSequence) {
+      long deadline = System.nanoTime() + maxPublishWaitNanos;
+      long gatingSequence;
+      while (wrapPoint > (gatingSequence = minimumSequence(sequence - 1))) {
+        if (System.nanoTime() - deadline >= 0) {
+          dropSubscriptionsBehind(wrapPoint);
+        } else {
+          LockSupport.parkNanos(PUBLISHER_PARK_NANOS);
+        }
+      }
+      cachedGatingSequence = gatingSequence;
+    }
+    ring[(int) sequence & mask] = new ChangeEvent(sequence, type, expense, categories,
+        replacement);
+    cursor = sequence;
+    if (waitingSubscribers.get() > 0) {
+      synchronized (signal) {
+        signal.notifyAll();
+      }
+    }
+    return sequence;
+  }
+
+  private void dropSubscriptionsBehind(long wrapPoint) {
+    for (Subscription subscription : subscriptions) {
+      if (subscription.sequence < wrapPoint) {
+        subscription.dropped = true;
+        subscriptions.remove(subscription);
+      }
+    }
+  }
+
+  private long minimumSequence(long minimum) {
+    for (Subscription subscription : subscriptions) {
+      minimum = Math.min(minimum, subscription.sequence);
+    }
+    return minimum;
+  }
+
+  /**
+   * Subscribes to the events published from now on.
+   *
+   * @return The subscription.
+   */
+  public synchronized Subscription subscribe() {
+    return subscribe(cursor + 1);
+  }
+
+  /**
+   * Subscribes to the events starting at the given sequence.
+   *
+   * @param fromSequence The sequence of the first event to receive, e.g. the last processed
+   *                     sequence plus one.
+   * @return The subscription.
+   * @throws IllegalArgumentException If the event was already overwritten or not published yet.
+   */
+  public synchronized Subscription subscribe(long fromSequence) {
+    if (fromSequence > cursor + 1 || fromSequence <= cursor - ring.length) {
+      throw new IllegalArgumentException("Событие " + fromSequence
+          + " недоступно в ленте изменений (последнее: " + cursor + ")");
+    }
+    Subscription subscription = new Subscription(fromSequence - 1);
+    subscriptions.add(subscription);
+    cachedGatingSequence = Math.min(cachedGatingSequence, fromSequence - 1);
+    return subscription;
+  }
+
+  /**
+   * A consumer position in the feed.
+   */
+  public final class Subscription implements AutoCloseable {
+
+    private volatile long sequence;
+    private volatile boolean dropped;
+
+    private Subscription(long sequence) {
+      this.sequence = sequence;
+    }
+
+    /**
+     * @return The sequence of the last consumed event.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * Consumes the events published since the last call, without waiting.
+     *
+     * @param batch    The list receiving the events in sequence order.
+     * @param maxBatch The maximum number of events to consume.
+     * @return The number of consumed events.
+     * @throws IllegalStateException If this subscription fell a full ring behind and was dropped.
+     */
+    public int poll(List<ChangeEvent> batch, int maxBatch) {
+      checkNotDropped();
+      long next = sequence + 1;
+      long last = Math.min(cursor, next + maxBatch - 1);
+      int start = batch.size();
+      for (long s = next; s <= last; s++) {
+        ChangeEvent event = ring[(int) s & mask];
+        if (event.sequence() != s) {
+          // overwritten while reading, which only happens once this subscription was dropped
+          batch.subList(start, batch.size()).clear();
+          dropped = true;
+          checkNotDropped();
+        }
+        batch.add(event);
+      }
+      if (last >= next) {
+        sequence = last;
+      }
+      return (int) Math.max(0, last - next + 1);
+    }
+
+    /**
+     * Consumes the events published since the last call, waiting for at least one.
+     *
+     * @param batch    The list receiving the events in sequence order.
+     * @param maxBatch The maximum number of events to consume.
+     * @param timeout  The maximum time to wait.
+     * @param unit     The unit of the timeout.
+     * @return The number of consumed events; zero if the timeout elapsed.
+     * @throws InterruptedException  If the thread is interrupted while waiting.
+     * @throws IllegalStateException If this subscription fell a full ring behind and was dropped.
+     */
+    public int poll(List<ChangeEvent> batch, int maxBatch, long timeout, TimeUnit unit)
+        throws InterruptedException {
+      if (cursor <= sequence) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waitingSubscribers.incrementAndGet();
+        try {
+          synchronized (signal) {
+            long remaining;
+            while (cursor <= sequence && (remaining = deadline - System.nanoTime()) > 0) {
+              TimeUnit.NANOSECONDS.timedWait(signal, remaining);
+            }
+          }
+        } finally {
+          waitingSubscribers.decrementAndGet();
+        }
+      }
+      return poll(batch, maxBatch);
+    }
+
+    private void checkNotDropped() {
+      if (dropped) {
+        throw new IllegalStateException("Подписка отстала от ленты изменений более чем на "
+            + ring.length + " событий и была закрыта");
+      }
+    }
+
+    /**
+     * Stops this subscription from holding back publishers.
+     */
+    @Override
+    public void close() {
+      subscriptions.remove(this);
+    }
+  }
+}
@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes line-oriented data files protected by per-block CRC32C checksums.
+ *
+ * <p>Data lines are grouped into blocks of at most {@link #BLOCK_SIZE} lines. Every block is
+ * followed by a trailer line {@code #crc32c <lines> <checksum>} covering the exact bytes of the
+ * block. Files without any trailer are treated as legacy plain-text files and accepted as is.
+ *
+ * <p>Writes go to a temporary file in the same directory which is forced to disk and then moved
+ * over the target with {@link StandardCopyOption#ATOMIC_MOVE}, so a crash leaves either the old
+ * or the new file, never a mix of both.
+ */
+public final class ChecksummedFile {
+
+  static final int BLOCK_SIZE = 1024;
+  private static final String TRAILER_PREFIX = "#crc32c ";
+  private static final byte[] TRAILER_PREFIX_BYTES =
+      TRAILER_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+  private ChecksummedFile() {
+  }
+
+  /**
+   * Result of reading a checksummed file: the lines of every intact block plus a description of
+   * every block that failed verification.
+   */
+  public static final class Content {
+    private final List<String> lines;
+    private final List<CorruptBlock> corruptBlocks;
+
+    Content(List<String> lines, List<CorruptBlock> corruptBlocks) {
+      this.lines = lines;
+      this.corruptBlocks = corruptBlocks;
+    }
+
+    public List<String> getLines() {
+      return lines;
+    }
+
+    public List<CorruptBlock> getCorruptBlocks() {
+      return corruptBlocks;
+    }
+
+    public boolean isIntact() {
+      return corruptBlocks.isEmpty();
+    }
+  }
+
+  /**
+   * A block whose checksum or line count does not match its trailer, or a torn tail without a
+   * trailer at all.
+   */
+  public static final class CorruptBlock {
+    private final int blockIndex;
+    private final int firstLine;
+    private final int lastLine;
+    private final List<String> rawLines;
+
+    CorruptBlock(int blockIndex, int firstLine, int lastLine, List<String> rawLines) {
+      this.blockIndex = blockIndex;
+      this.firstLine = firstLine;
+      this.lastLine = lastLine;
+      this.rawLines = rawLines;
+    }
+
+    public int getBlockIndex() {
+      return blockIndex;
+    }
+
+    /**
+     * @return The 1-based number of the first line of the block in the file.
+     */
+    public int getFirstLine() {
+      return firstLine;
+    }
+
+    /**
+     * @return The 1-based number of the last line of the block in the file.
+     */
+    public int getLastLine() {
+      return lastLine;
+    }
+
+    public List<String> getRawLines() {
+      return rawLines;
+    }
+
+    @Override
+    public String toString() {
+      return "блок " + blockIndex + " (строки " + firstLine + "-" + lastLine + ")";
+    }
+  }
+
+  /**
+   * Atomically replaces the given file with the given lines, adding a checksum trailer after
+   * every block.
+   *
+   * @param target The file to replace.
+   * @param lines  The data lines to write; must not contain line breaks.
+   * @throws IOException If the file cannot be written or moved into place.
+   */
+  public static void writeAtomically(Path target, List<String> lines) throws IOException {
+    if (Files.exists(target) && !Files.isWritable(target)) {
+      throw new AccessDeniedException(target.toString());
+    }
+    Path directory = target.toAbsolutePath().getParent();
+    if (directory != null) {
+      Files.createDirectories(directory);
+    }
+    Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeBlocks(channel, lines);
+        channel.force(true);
+      }
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      forceDirectory(directory);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void writeBlocks(FileChannel channel, List<String> lines) throws IOException {
+    CRC32C crc = new CRC32C();
+    StringBuilder block = new StringBuilder(BLOCK_SIZE * 32);
+    int count = 0;
+    for (String line : lines) {
+      block.append(line).append('\n');
+      if (++count == BLOCK_SIZE) {
+        writeBlock(channel, crc, block, count);
+        count = 0;
+      }
+    }
+    if (count > 0) {
+      writeBlock(channel, crc, block, count);
+    }
+  }
+
+  private static void writeBlock(FileChannel channel, CRC32C crc, StringBuilder block, int count)
+      throws IOException {
+    byte[] data = block.toString().getBytes(StandardCharsets.UTF_8);
+    crc.reset();
+    crc.update(data, 0, data.length);
+    String trailer = TRAILER_PREFIX + count + " " + String.format("%08x", crc.getValue()) + "\n";
+    ByteBuffer[] buffers = {
+        ByteBuffer.wrap(data), ByteBuffer.wrap(trailer.getBytes(StandardCharsets.US_ASCII))
+    };
+    long remaining = data.length + buffers[1].remaining();
+    while (remaining > 0) {
+      remaining -= channel.write(buffers);
+    }
+    block.setLength(0);
+  }
+
+  private static void forceDirectory(Path directory) {
+    if (directory == null) {
+      return;
+    }
+    // Not every platform allows opening a directory; the rename is still atomic there.
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException | UnsupportedOperationException e) {
+      // ignored
+    }
+  }
+
+  /**
+   * Reads a checksummed (or legacy plain-text) file. Checksums are computed directly over the
+   * raw bytes, and only intact blocks are decoded into strings.
+   *
+   * @param file The file to read.
+   * @return The intact lines and the list of corrupt blocks.
+   * @throws IOException If the file cannot be read.
+   */
+  public static Content read(Path file) throws IOException {
+    byte[] data = Files.readAllBytes(file);
+    List<String> lines = new ArrayList<>();
+    List<CorruptBlock> corrupt = new ArrayList<>();
+    CRC32C crc = new CRC32C();
+
+    int blockStart = 0;
+    int blockLines = 0;
+    int blockFirstLine = 1;
+    int lineNumber = 0;
+    int blockIndex = 0;
+    boolean sawTrailer = false;
+    int pos = 0;
+    while (pos < data.length) {
+      int end = indexOf(data, (byte) '\n', pos);
+      int next = end < 0 ? data.length : end + 1;
+      lineNumber++;
+      if (isTrailer(data, pos)) {
+        sawTrailer = true;
+        String trailer = new String(data, pos, (end < 0 ? data.length : end) - pos,
+            StandardCharsets.US_ASCII).trim();
+        crc.reset();
+        crc.update(data, blockStart, pos - blockStart);
+        if (matches(trailer, blockLines, crc.getValue())) {
+          decodeLines(data, blockStart, pos, lines);
+        } else {
+          corrupt.add(new CorruptBlock(blockIndex, blockFirstLine, lineNumber,
+              decodeLines(data, blockStart, pos, new ArrayList<>())));
+        }
+        blockIndex++;
+        blockStart = next;
+        blockLines = 0;
+        blockFirstLine = lineNumber + 1;
+      } else {
+        blockLines++;
+      }
+      pos = next;
+    }
+
+    if (blockStart < data.length) {
+      if (sawTrailer) {
+        corrupt.add(new CorruptBlock(blockIndex, blockFirstLine, lineNumber,
+            decodeLines(data, blockStart, data.length, new ArrayList<>())));
+      } else {
+        decodeLines(data, blockStart, data.length, lines);
+      }
+    }
+    return new Content(lines, Collections.unmodifiableList(corrupt));
+  }
+
+  private static boolean isTrailer(byte[] data, int pos) {
+    if (data.length - pos < TRAILER_PREFIX_BYTES.length) {
+      return false;
+    }
+    for (int i = 0; i < TRAILER_PREFIX_BYTES.length; i++) {
+      if (data[pos + i] != TRAILER_PREFIX_BYTES[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(String trailer, int blockLines, long checksum) {
+    String[] parts = trailer.split(" ");
+    if (parts.length != 3) {
+      return false;
+    }
+    try {
+      return Integer.parseInt(parts[1]) == blockLines
+          && Long.parseLong(parts[2], 16) == checksum;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static List<String> decodeLines(byte[] data, int from, int to, List<String> out) {
+    int pos = from;
+    while (pos < to) {
+      int end = indexOf(data, (byte) '\n', pos);
+      if (end < 0 || end > to) {
+        end = to;
+      }
+      int lineEnd = end > pos && data[end - 1] == '\r' ? end - 1 : end;
+      if (lineEnd > pos) {
+        out.add(new String(data, pos, lineEnd - pos, StandardCharsets.UTF_8));
+      }
+      pos = end + 1;
+    }
+    return out;
+  }
+
+  private static int indexOf(byte[] data, byte value, int from) {
+    for (int i = from; i < data.length; i++) {
+      if (data[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
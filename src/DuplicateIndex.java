@@ -0,0 +1,155 @@
+import java.util.List;
+
+/**
+ * Detects expenses that were already recorded, e.g. when overlapping bank statements are imported
+ * more than once.
+ *
+ * <p>Every expense is reduced to a 64-bit fingerprint of its category, amount, currency, date and
+ * external id. In exact mode the fingerprints are kept in a {@link LongHashSet}. In compact mode
+ * only a {@link BloomFilter} of about 10 bits per expense is kept; its positives are candidates
+ * that have to be confirmed with {@link #findInHistory(long[], boolean[], List)}.
+ */
+public class DuplicateIndex {
+
+  private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+  private final LongHashSet fingerprints;
+  private final BloomFilter bloomFilter;
+
+  /**
+   * Creates an index.
+   *
+   * @param expectedSize The expected number of indexed expenses.
+   * @param compact      Whether to keep only a Bloom filter instead of all fingerprints.
+   */
+  public DuplicateIndex(int expectedSize, boolean compact) {
+    if (compact) {
+      fingerprints = null;
+      bloomFilter = new BloomFilter(expectedSize, BLOOM_FALSE_POSITIVE_RATE);
+    } else {
+      fingerprints = new LongHashSet(expectedSize);
+      bloomFilter = null;
+    }
+  }
+
+  /**
+   * Builds an index over the given expenses. The exact index grows with later additions; the
+   * Bloom filter is sized for the given expenses, and its false positives, which are confirmed
+   * anyway, become more frequent as the ledger grows past that.
+   *
+   * @param expenses The expenses to index.
+   * @param compact  Whether to keep only a Bloom filter instead of all fingerprints.
+   * @return The index.
+   */
+  public static DuplicateIndex of(List<Expense> expenses, boolean compact) {
+    DuplicateIndex index = new DuplicateIndex(Math.max(expenses.size(), 1024), compact);
+    for (Expense expense : expenses) {
+      index.add(fingerprint(expense));
+    }
+    return index;
+  }
+
+  /**
+   * @return True if positives of {@link #mightContain(long)} are definite.
+   */
+  public boolean isExact() {
+    return fingerprints != null;
+  }
+
+  public void add(long fingerprint) {
+    if (fingerprints != null) {
+      fingerprints.add(fingerprint);
+    } else {
+      bloomFilter.add(fingerprint);
+    }
+  }
+
+  /**
+   * @param fingerprint The fingerprint to look up.
+   * @return False if no expense with this fingerprint was indexed; true if one was, or may have
+   *     been in compact mode.
+   */
+  public boolean mightContain(long fingerprint) {
+    return fingerprints != null
+        ? fingerprints.contains(fingerprint) : bloomFilter.mightContain(fingerprint);
+  }
+
+  /**
+   * Confirms candidate duplicates with a single pass over the history. Only the candidates are
+   * hashed, so memory is proportional to the number of candidates, not to the history.
+   *
+   * @param candidates   The fingerprints to confirm.
+   * @param isCandidate  Which of the fingerprints are candidates; cleared for those that are not
+   *                     found in the history.
+   * @param history      The recorded expenses.
+   */
+  public static void findInHistory(long[] candidates, boolean[] isCandidate, List<Expense> history) {
+    int count = 0;
+    for (boolean candidate : isCandidate) {
+      if (candidate) {
+        count++;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    LongHashSet wanted = new LongHashSet(count);
+    for (int i = 0; i < candidates.length; i++) {
+      if (isCandidate[i]) {
+        wanted.add(candidates[i]);
+      }
+    }
+    LongHashSet found = new LongHashSet(count);
+    for (Expense expense : history) {
+      long fingerprint = fingerprint(expense);
+      if (wanted.contains(fingerprint)) {
+        found.add(fingerprint);
+      }
+    }
+    for (int i = 0; i < candidates.length; i++) {
+      isCandidate[i] = isCandidate[i] && found.contains(candidates[i]);
+    }
+  }
+
+  /**
+   * Computes the fingerprint of an expense from its category, amount, currency, date and external
+   * id.
+   *
+   * @param expense The expense.
+   * @return The 64-bit fingerprint.
+   */
+  public static long fingerprint(Expense expense) {
+    long h = hash(expense.getCategory(), 0x243F6A8885A308D3L);
+    double amount = expense.getAmount();
+    h = mix(h ^ Double.doubleToLongBits(amount == 0.0 ? 0.0 : amount));
+    int epochDay = expense.getEpochDay();
+    h = epochDay != Expense.INVALID_DAY
+        ? mix(h ^ epochDay) : hash(expense.getDate(), h);
+    String currency = expense.getCurrency();
+    if (currency != null) {
+      h = hash(currency, h);
+    }
+    String externalId = expense.getExternalId();
+    if (externalId != null) {
+      h = hash(externalId, h ^ 0x13198A2E03707344L);
+    }
+    return h;
+  }
+
+  private static long hash(String value, long seed) {
+    long h = seed ^ value.length();
+    for (int i = 0; i < value.length(); i++) {
+      h = (h ^ value.charAt(i)) * 0x100000001B3L;
+    }
+    return mix(h);
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
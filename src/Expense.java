@@ -1,20 +1,84 @@
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import javax.sound.midi.Soundbank;
+import java.util.Locale;
 
 public class Expense {
+  /**
+   * Marker returned by {@link #parseEpochDay(String)} for strings that are not valid dates.
+   */
+  public static final int INVALID_DAY = Integer.MIN_VALUE;
+  private static final int UNPARSED_DAY = Integer.MAX_VALUE;
+
   private final String category;
   private final double amount;
   private final String date;
+  private final String externalId;
+  private final String note;
+  private final String currency;
+  private int epochDay = UNPARSED_DAY;
 
   public Expense(String category, double amount, String date) {
+    this(category, amount, date, (String) null);
+  }
+
+  /**
+   * Creates an expense carrying the id it has in an external source, e.g. a bank statement.
+   *
+   * @param category   The category of the expense.
+   * @param amount     The amount of the expense.
+   * @param date       The date of the expense in the format dd.MM.yyyy.
+   * @param externalId The id of the expense in its source, or null if it has none.
+   */
+  public Expense(String category, double amount, String date, String externalId) {
+    this(category, amount, date, externalId, null);
+  }
+
+  /**
+   * Creates an expense with a free-text note, e.g. the merchant name.
+   *
+   * @param category   The category of the expense.
+   * @param amount     The amount of the expense.
+   * @param date       The date of the expense in the format dd.MM.yyyy.
+   * @param externalId The id of the expense in its source, or null if it has none.
+   * @param note       A free-text note, or null if there is none.
+   */
+  public Expense(String category, double amount, String date, String externalId, String note) {
+    this(category, amount, date, externalId, note, null);
+  }
+
+  /**
+   * Creates an expense in a currency other than the base currency of the ledger.
+   *
+   * @param category   The category of the expense.
+   * @param amount     The amount of the expense in its currency.
+   * @param date       The date of the expense in the format dd.MM.yyyy.
+   * @param externalId The id of the expense in its source, or null if it has none.
+   * @param note       A free-text note, or null if there is none.
+   * @param currency   The ISO code of the currency, or null for the base currency.
+   */
+  public Expense(String category, double amount, String date, String externalId, String note,
+      String currency) {
     this.category = category;
     this.amount = amount;
     this.date = date;
+    this.externalId = externalId;
+    this.note = note == null || note.isBlank() ? null : note;
+    this.currency = currency == null || currency.isBlank() ? null : currency.toUpperCase(Locale.ROOT);
+  }
+
+  Expense(String category, double amount, String date, int epochDay) {
+    this(category, amount, date);
+    this.epochDay = epochDay;
+  }
+
+  Expense(String category, double amount, String date, String externalId, String note,
+      String currency, int epochDay) {
+    this(category, amount, date, externalId, note, currency);
+    this.epochDay = epochDay;
   }
 
   public String getCategory() {
@@ -30,45 +94,304 @@ public class Expense {
   }
 
   /**
-   * Loads a list of expenses from the specified file.
+   * @return The id of the expense in its external source, or null if it has none.
+   */
+  public String getExternalId() {
+    return externalId;
+  }
+
+  /**
+   * @return The free-text note of the expense, or null if it has none.
+   */
+  public String getNote() {
+    return note;
+  }
+
+  /**
+   * @return The ISO code of the currency of the amount, or null for the base currency.
+   */
+  public String getCurrency() {
+    return currency;
+  }
+
+  /**
+   * Returns a copy of this expense moved to another category.
+   *
+   * @param newCategory The category of the copy.
+   * @return The copy.
+   */
+  public Expense withCategory(String newCategory) {
+    Expense copy = new Expense(newCategory, amount, date, externalId, note, currency);
+    copy.epochDay = epochDay;
+    return copy;
+  }
+
+  /**
+   * Returns the date of this expense as days since 01.01.1970, parsing it once on first use.
+   *
+   * @return The epoch day of the expense, or {@link #INVALID_DAY} if the date is invalid.
+   */
+  public int getEpochDay() {
+    int day = epochDay;
+    if (day == UNPARSED_DAY) {
+      day = parseEpochDay(date);
+      epochDay = day;
+    }
+    return day;
+  }
+
+  /**
+   * Parses a date in the format dd.MM.yyyy into days since 01.01.1970 without allocating.
+   *
+   * @param date The date string to parse.
+   * @return The epoch day, or {@link #INVALID_DAY} if the string is not a valid date.
+   */
+  public static int parseEpochDay(String date) {
+    if (date == null || date.length() != 10 || date.charAt(2) != '.' || date.charAt(5) != '.') {
+      return INVALID_DAY;
+    }
+    int day = digits(date, 0, 2);
+    int month = digits(date, 3, 5);
+    int year = digits(date, 6, 10);
+    if (day < 1 || month < 1 || month > 12 || year < 0 || day > lengthOfMonth(year, month)) {
+      return INVALID_DAY;
+    }
+    return toEpochDay(year, month, day);
+  }
+
+  private static int digits(String s, int from, int to) {
+    int value = 0;
+    for (int i = from; i < to; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Converts a calendar date into days since 01.01.1970.
+   *
+   * @param year  The year.
+   * @param month The month, 1-12.
+   * @param day   The day of the month.
+   * @return The epoch day.
+   */
+  public static int toEpochDay(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(y, 400);
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Converts days since 01.01.1970 into a month index {@code year * 12 + month - 1} without
+   * allocating.
+   *
+   * @param epochDay The epoch day.
+   * @return The month index of the day.
+   */
+  public static int toMonthIndex(int epochDay) {
+    int z = epochDay + 719468;
+    int era = Math.floorDiv(z, 146097);
+    int dayOfEra = z - era * 146097;
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    return year * 12 + month - 1;
+  }
+
+  /**
+   * Returns the number of days in the given month.
+   *
+   * @param year  The year.
+   * @param month The month, 1-12.
+   * @return The length of the month in days.
+   */
+  public static int lengthOfMonth(int year, int month) {
+    if (month == 2) {
+      boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+      return leap ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /**
+   * Formats days since 01.01.1970 as a date string in the format dd.MM.yyyy.
+   *
+   * @param epochDay The epoch day to format.
+   * @return The formatted date.
+   */
+  public static String formatEpochDay(int epochDay) {
+    LocalDate localDate = LocalDate.ofEpochDay(epochDay);
+    int year = localDate.getYear();
+    char[] chars = {
+        (char) ('0' + localDate.getDayOfMonth() / 10), (char) ('0' + localDate.getDayOfMonth() % 10),
+        '.',
+        (char) ('0' + localDate.getMonthValue() / 10), (char) ('0' + localDate.getMonthValue() % 10),
+        '.',
+        (char) ('0' + year / 1000 % 10), (char) ('0' + year / 100 % 10),
+        (char) ('0' + year / 10 % 10), (char) ('0' + year % 10)
+    };
+    return new String(chars);
+  }
+
+  /**
+   * Formats this expense as a single line of the expenses file.
+   *
+   * @return The line representation of this expense, without a line break.
+   */
+  public String toLine() {
+    StringBuilder line = new StringBuilder(64);
+    line.append(category).append(' ').append(amount).append(' ').append(date);
+    if (currency != null) {
+      line.append(" cur=").append(currency);
+    }
+    if (externalId != null) {
+      line.append(" id=");
+      escape(externalId, line);
+    }
+    if (note != null) {
+      line.append(" note=");
+      escape(note, line);
+    }
+    return line.toString();
+  }
+
+  /**
+   * Parses a single line of the expenses file.
+   *
+   * @param line The line to parse.
+   * @return The parsed expense.
+   * @throws IllegalArgumentException If the line does not contain a valid expense.
+   */
+  public static Expense parse(String line) {
+    String[] parts = line.split(" ");
+    if (parts.length < 3) {
+      throw new IllegalArgumentException("ожидается \"категория сумма дата\": " + line);
+    }
+    String externalId = null;
+    String note = null;
+    String currency = null;
+    for (int i = 3; i < parts.length; i++) {
+      if (parts[i].startsWith("cur=")) {
+        currency = parts[i].substring(4);
+      } else if (parts[i].startsWith("id=")) {
+        externalId = unescape(parts[i].substring(3));
+      } else if (parts[i].startsWith("note=")) {
+        note = unescape(parts[i].substring(5));
+      }
+    }
+    return new Expense(parts[0], Double.parseDouble(parts[1]), parts[2], externalId, note,
+        currency);
+  }
+
+  /**
+   * Escapes the characters that would break the space separated line format.
+   */
+  static void escape(String value, StringBuilder out) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '%' -> out.append("%25");
+        case ' ' -> out.append("%20");
+        case '\n' -> out.append("%0A");
+        case '\r' -> out.append("%0D");
+        default -> out.append(c);
+      }
+    }
+  }
+
+  static String unescape(String value) {
+    if (value.indexOf('%') < 0) {
+      return value;
+    }
+    StringBuilder out = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '%' && i + 2 < value.length()) {
+        out.append((char) Integer.parseInt(value, i + 1, i + 3, 16));
+        i += 2;
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * Loads a list of expenses from the specified file. Blocks that fail checksum verification and
+   * lines that cannot be parsed are reported and skipped; the rest of the file is still loaded.
+   * Corrupt blocks are copied to {@code <file>.corrupt} first, see
+   * {@link LedgerRecovery#quarantineOnLoad(Path, ChecksummedFile.Content)}.
    *
    * @param filePath The path to the file from which to load expenses.
    * @return A list of expense objects loaded from the file.
+   * @throws IllegalStateException If the file has corrupt blocks that cannot be quarantined.
    */
   public static List<Expense> loadExpensesFromFile(String filePath) {
+    return loadExpensesFromFile(filePath, new ArrayList<>());
+  }
+
+  /**
+   * Loads a list of expenses like {@link #loadExpensesFromFile(String)} and collects the corrupt
+   * blocks of the file.
+   *
+   * @param filePath      The path to the file from which to load expenses.
+   * @param corruptBlocks The list receiving the blocks that failed checksum verification.
+   * @return A list of expense objects loaded from the file.
+   */
+  static List<Expense> loadExpensesFromFile(String filePath,
+      List<ChecksummedFile.CorruptBlock> corruptBlocks) {
     List<Expense> expenses = new ArrayList<>();
-    try (Scanner fileScanner = new Scanner(new File(filePath))) {
-      while (fileScanner.hasNextLine()) {
-        String line = fileScanner.nextLine();
-        String[] parts = line.split(" ");
-        if (parts.length >= 3) {
-          String category = parts[0];
-          double amount = Double.parseDouble(parts[1]);
-          String date = parts[2];
-          expenses.add(new Expense(category, amount, date));
-        }
-      }
-    } catch (Exception e) {
+    ChecksummedFile.Content content;
+    try {
+      content = ChecksummedFile.read(Path.of(filePath));
+    } catch (NoSuchFileException e) {
+      System.err.println("Невозможно считать расходы: файл не найден " + filePath);
+      return expenses;
+    } catch (IOException e) {
       System.err.println("Невозможно считать расходы: " + e.getMessage());
+      return expenses;
+    }
+    LedgerRecovery.quarantineOnLoad(Path.of(filePath), content);
+    corruptBlocks.addAll(content.getCorruptBlocks());
+    for (String line : content.getLines()) {
+      try {
+        expenses.add(parse(line));
+      } catch (IllegalArgumentException e) {
+        System.err.println("Пропущена некорректная строка: " + line);
+      }
     }
     return expenses;
   }
 
   /**
-   * Saves a list of expenses to the specified file.
+   * Saves a list of expenses to the specified file. The file is replaced atomically, so an
+   * interrupted save leaves the previous contents intact.
    *
    * @param expenses The list of expenses to be saved.
    * @param filePath The path to the file where expenses should be saved.
+   * @return True if the file was written.
    */
-  public static void saveExpensesToFile(List<Expense> expenses, String filePath) {
-    try (FileWriter writer = new FileWriter(filePath)) {
-      for (Expense expense : expenses) {
-        writer.write(
-            expense.getCategory() + " " + expense.getAmount() + " " + expense.getDate() + "\n");
-      }
+  public static boolean saveExpensesToFile(List<Expense> expenses, String filePath) {
+    List<String> lines = new ArrayList<>(expenses.size());
+    for (Expense expense : expenses) {
+      lines.add(expense.toLine());
+    }
+    try {
+      ChecksummedFile.writeAtomically(Path.of(filePath), lines);
       System.out.println("Расходы сохранены.");
+      return true;
     } catch (IOException e) {
       System.err.println("Ошибка при сохранении расходов: " + e.getMessage());
+      return false;
     }
   }
 }
@@ -1,31 +1,63 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ExpenseCategoryManager {
 
   private static final String CATEGORIES_FILE_PATH = "res/categories.txt";
+  private final String categoriesFilePath;
   private final List<String> categories;
+  private final CategoryTree tree = new CategoryTree();
+  private final List<CategoryListener> listeners = new CopyOnWriteArrayList<>();
 
   public ExpenseCategoryManager() {
+    this(CATEGORIES_FILE_PATH);
+  }
+
+  /**
+   * Creates a category manager backed by the given categories file.
+   *
+   * @param categoriesFilePath The path to the file where categories are stored.
+   */
+  public ExpenseCategoryManager(String categoriesFilePath) {
+    this.categoriesFilePath = categoriesFilePath;
     categories = new ArrayList<>();
     loadCategoriesFromFile();
   }
 
+  public void addCategoryListener(CategoryListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeCategoryListener(CategoryListener listener) {
+    listeners.remove(listener);
+  }
+
   /**
-   * Adds a new expense category.
+   * Adds a new expense category. A subcategory is written as a path such as "Транспорт/Такси";
+   * missing parent categories are added as well.
    *
    * @param category The name of the category to add.
    */
   public void addCategory(String category) {
-    if (category != null && !category.trim().isEmpty()) {
+    if (isValidName(category)) {
       if (!categories.contains(category)) {
+        int parentEnd = category.indexOf(CategoryTree.SEPARATOR);
+        while (parentEnd > 0) {
+          String parent = category.substring(0, parentEnd);
+          if (!categories.contains(parent)) {
+            categories.add(parent);
+            notifyAdded(parent);
+          }
+          parentEnd = category.indexOf(CategoryTree.SEPARATOR, parentEnd + 1);
+        }
         categories.add(category);
+        tree.add(category);
         updateCategories();
+        notifyAdded(category);
         System.out.println("Категория успешно добавлена: " + category);
       } else {
         System.out.println("Категория уже существует: " + category);
@@ -35,15 +67,62 @@ public class ExpenseCategoryManager {
     }
   }
 
+  private static boolean isValidName(String category) {
+    if (category == null || category.trim().isEmpty()) {
+      return false;
+    }
+    String separator = String.valueOf(CategoryTree.SEPARATOR);
+    return !category.startsWith(separator) && !category.endsWith(separator)
+        && !category.contains(separator + separator);
+  }
+
+  private void notifyAdded(String category) {
+    for (CategoryListener listener : listeners) {
+      listener.onCategoryAdded(category);
+    }
+  }
+
   /**
-   * Removes an expense category.
+   * Removes an expense category together with its subcategories. Expenses of a removed
+   * subcategory are moved to its parent. Expenses of a removed top-level category are left as
+   * they are, so a top-level category with subcategories is only removed with
+   * {@link #removeCategory(String, String)} and a category receiving their expenses.
    *
    * @param category The name of the category to remove.
    */
   public void removeCategory(String category) {
+    removeCategory(category, category == null ? null : tree.getParent(category));
+  }
+
+  /**
+   * Removes an expense category together with its subcategories and moves their expenses to
+   * another category. Nothing is removed if the replacement is not a remaining category, or if
+   * there is none but the category has subcategories, whose expenses would otherwise be left with
+   * categories that no longer exist.
+   *
+   * @param category    The name of the category to remove.
+   * @param replacement The category receiving the expenses of the removed ones, or null to leave
+   *                    the expenses of a category without subcategories as they are.
+   */
+  public void removeCategory(String category, String replacement) {
     if (category != null && !category.isEmpty()) {
-      if (categories.remove(category)) {
+      if (categories.contains(category) || tree.contains(category)) {
+        if (replacement == null && !tree.getChildren(category).isEmpty()) {
+          System.err.println("У категории есть подкатегории, укажите категорию для переноса их "
+              + "расходов: " + category);
+          return;
+        }
+        if (replacement != null && (!categories.contains(replacement)
+            || ExpenseReportGenerator.isInCategory(replacement, category))) {
+          System.err.println("Категория для переноса расходов не найдена: " + replacement);
+          return;
+        }
+        List<String> removed = tree.remove(category);
+        categories.removeAll(removed);
         updateCategories();
+        for (CategoryListener listener : listeners) {
+          listener.onCategoriesRemoved(removed, replacement);
+        }
         System.out.println("Категория успешно удалена: " + category);
       } else {
         System.out.println("Категория не найдена: " + category);
@@ -52,10 +131,18 @@ public class ExpenseCategoryManager {
       System.out.println("Недопустимое название категории.");
     }
   }
+
   public List<String> getCategories() {
     return categories;
   }
 
+  /**
+   * @return The hierarchy of the categories.
+   */
+  public CategoryTree getCategoryTree() {
+    return tree;
+  }
+
   /**
    * Manages categories interactively, allowing for adding and removing categories.
    *
@@ -110,28 +197,40 @@ public class ExpenseCategoryManager {
     System.out.println("Введите название категории для удаления:");
     scanner.nextLine();
     String categoryToRemove = scanner.nextLine();
+    if (tree.getParent(categoryToRemove) == null
+        && !tree.getChildren(categoryToRemove).isEmpty()) {
+      System.out.println("Введите категорию, в которую перенести расходы удаляемых категорий:");
+      removeCategory(categoryToRemove, scanner.nextLine().trim());
+      return;
+    }
     removeCategory(categoryToRemove);
   }
 
+  /**
+   * Atomically rewrites the categories file with the current list of categories.
+   */
   public void updateCategories() {
-    try (FileWriter categoriesWriter = new FileWriter(CATEGORIES_FILE_PATH)) {
-      for (String category : categories) {
-        categoriesWriter.write(category + "\n");
-      }
+    try {
+      ChecksummedFile.writeAtomically(Path.of(categoriesFilePath), categories);
     } catch (IOException e) {
       System.err.println("Ошибка при записи категорий в файл: " + e.getMessage());
     }
   }
 
+  /**
+   * Loads categories from the categories file, skipping blocks that fail checksum verification.
+   */
   public void loadCategoriesFromFile() {
-    try (Scanner categoriesScanner = new Scanner(new File(CATEGORIES_FILE_PATH))) {
-      while (categoriesScanner.hasNextLine()) {
-        String category = categoriesScanner.nextLine();
+    try {
+      ChecksummedFile.Content content = ChecksummedFile.read(Path.of(categoriesFilePath));
+      LedgerRecovery.quarantineOnLoad(Path.of(categoriesFilePath), content);
+      for (String category : content.getLines()) {
         if (!category.isEmpty()) {
           categories.add(category);
+          tree.add(category);
         }
       }
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       System.err.println("Ошибка при чтении категорий из файла: " + e.getMessage());
     }
   }
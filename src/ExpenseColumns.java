@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A columnar copy of a list of expenses for aggregation: epoch days, amounts and dictionary-encoded
+ * category ids in parallel primitive arrays, so that filters and sums run over plain arrays
+ * instead of objects.
+ *
+ * <p>The amount column holds amounts in the base currency only; expenses in other currencies have
+ * an amount of zero there and their row numbers are kept separately, because their conversion
+ * depends on the exchange rate of their day. The columns grow by appending rows and never change
+ * rows already copied, so a {@link #snapshot(int)} shares the arrays and stays valid while more
+ * rows are appended.
+ */
+public class ExpenseColumns {
+
+  private final FxRateTable fxRates;
+  private final Map<String, Integer> categoryIds;
+  private final List<String> categoryNames;
+  private int[] days = new int[1024];
+  private double[] baseAmounts = new double[1024];
+  private int[] categories = new int[1024];
+  private int size;
+  private int[] foreignRows = new int[16];
+  private int foreignCount;
+
+  /**
+   * Creates empty columns.
+   *
+   * @param fxRates The rate table whose base currency goes into the amount column.
+   */
+  public ExpenseColumns(FxRateTable fxRates) {
+    this.fxRates = fxRates;
+    this.categoryIds = new HashMap<>();
+    this.categoryNames = new ArrayList<>();
+  }
+
+  private ExpenseColumns(ExpenseColumns source, int rows) {
+    this.fxRates = source.fxRates;
+    this.categoryIds = new HashMap<>(source.categoryIds);
+    this.categoryNames = new ArrayList<>(source.categoryNames);
+    this.days = source.days;
+    this.baseAmounts = source.baseAmounts;
+    this.categories = source.categories;
+    this.size = Math.min(rows, source.size);
+    this.foreignRows = source.foreignRows;
+    int foreign = Arrays.binarySearch(source.foreignRows, 0, source.foreignCount, size);
+    this.foreignCount = foreign < 0 ? -foreign - 1 : foreign;
+  }
+
+  /**
+   * Returns a view of the first rows that is not affected by later appends.
+   *
+   * @param rows The number of rows of the view; at most {@link #size()} are included.
+   * @return The view.
+   */
+  public ExpenseColumns snapshot(int rows) {
+    return new ExpenseColumns(this, rows);
+  }
+
+  /**
+   * Appends the expenses from the given row of the list to its end.
+   *
+   * @param expenses The expenses; rows before {@code fromRow} must already be in the columns.
+   * @param fromRow  The first row to append.
+   */
+  public void append(List<Expense> expenses, int fromRow) {
+    int newSize = expenses.size();
+    if (newSize > days.length) {
+      int capacity = Math.max(newSize, days.length * 2);
+      days = Arrays.copyOf(days, capacity);
+      baseAmounts = Arrays.copyOf(baseAmounts, capacity);
+      categories = Arrays.copyOf(categories, capacity);
+    }
+    String lastCategory = null;
+    int lastId = -1;
+    for (int row = fromRow; row < newSize; row++) {
+      Expense expense = expenses.get(row);
+      String category = expense.getCategory();
+      if (!category.equals(lastCategory)) {
+        lastCategory = category;
+        lastId = categoryIds.computeIfAbsent(category, k -> {
+          categoryNames.add(k);
+          return categoryNames.size() - 1;
+        });
+      }
+      days[row] = expense.getEpochDay();
+      categories[row] = lastId;
+      if (fxRates.isBase(expense.getCurrency())) {
+        baseAmounts[row] = expense.getAmount();
+      } else {
+        baseAmounts[row] = 0.0;
+        if (foreignCount == foreignRows.length) {
+          foreignRows = Arrays.copyOf(foreignRows, foreignCount * 2);
+        }
+        foreignRows[foreignCount++] = row;
+      }
+    }
+    size = newSize;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  int[] days() {
+    return days;
+  }
+
+  double[] baseAmounts() {
+    return baseAmounts;
+  }
+
+  int[] categories() {
+    return categories;
+  }
+
+  /**
+   * @return The rows of expenses in other currencies, in ascending order; only the first
+   *     {@link #foreignCount()} entries are valid.
+   */
+  int[] foreignRows() {
+    return foreignRows;
+  }
+
+  int foreignCount() {
+    return foreignCount;
+  }
+
+  /**
+   * @return The number of distinct categories; category ids run from zero to this number.
+   */
+  public int categoryCount() {
+    return categoryNames.size();
+  }
+
+  /**
+   * @param category The category.
+   * @return The id of the category, or -1 if no expense has it.
+   */
+  public int categoryId(String category) {
+    return categoryIds.getOrDefault(category, -1);
+  }
+
+  public String categoryName(int id) {
+    return categoryNames.get(id);
+  }
+}
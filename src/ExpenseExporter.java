@@ -0,0 +1,549 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streams expenses and report totals to CSV, JSON Lines or a compact binary file.
+ *
+ * <p>Rows are encoded into a fixed set of direct byte buffers that are handed to the file channel
+ * in a single gather write whenever they are all full, so the heap used by an export does not grow
+ * with the number of rows. Text rows are built in one reused {@link StringBuilder}.
+ *
+ * <p>Incremental exports append only the rows added since the previous run. The progress is kept
+ * in {@code <target>.checkpoint}: the number of exported rows, the file length at that point and a
+ * hash of the exported rows. If the rows were changed since (e.g. a category was removed and its
+ * expenses moved) or the target no longer matches, the file is exported again from scratch.
+ *
+ * <p>Binary layout: the magic {@code EXP1}, then per expense the epoch day (int), the amount
+ * (double), and category, date, currency, external id and note as strings. A string is a varint
+ * of its UTF-8 length plus one followed by the bytes; a varint of zero stands for a missing value.
+ * Totals are written as a category string and a double per row after the magic {@code TOT1}.
+ */
+public class ExpenseExporter {
+
+  /**
+   * The supported output formats.
+   */
+  public enum Format {
+    CSV, JSON_LINES, BINARY
+  }
+
+  static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final String CSV_HEADER = "category,amount,date,currency,id,note\n";
+  private static final String CSV_TOTALS_HEADER = "category,total\n";
+  private static final byte[] BINARY_MAGIC = {'E', 'X', 'P', '1'};
+  private static final byte[] BINARY_TOTALS_MAGIC = {'T', 'O', 'T', '1'};
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final int BUFFER_COUNT = 4;
+  private static final long MAX_EXACT_CENTS = 1L << 52;
+
+  private final Format format;
+  private final ByteBuffer[] buffers = new ByteBuffer[BUFFER_COUNT];
+  private final StringBuilder row = new StringBuilder(256);
+  private FileChannel channel;
+  private int current;
+
+  /**
+   * Creates an exporter; its buffers are reused by every export.
+   *
+   * @param format The output format.
+   */
+  public ExpenseExporter(Format format) {
+    this.format = format;
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  }
+
+  /**
+   * Command line entry point.
+   *
+   * <p>Usage: {@code java ExpenseExporter [--full] csv|jsonl|bin <expenses file> <target>}. Without
+   * {@code --full} only the expenses added since the previous export to the target are appended.
+   *
+   * @param args The command line arguments.
+   */
+  public static void main(String[] args) {
+    boolean full = args.length > 0 && args[0].equals("--full");
+    int first = full ? 1 : 0;
+    if (args.length - first != 3) {
+      System.err.println("Использование: java ExpenseExporter [--full] csv|jsonl|bin "
+          + "<файл расходов> <файл экспорта>");
+      System.exit(2);
+    }
+    Format format = switch (args[first].toLowerCase(Locale.ROOT)) {
+      case "csv" -> Format.CSV;
+      case "jsonl" -> Format.JSON_LINES;
+      case "bin" -> Format.BINARY;
+      default -> null;
+    };
+    if (format == null) {
+      System.err.println("Неизвестный формат экспорта: " + args[first]);
+      System.exit(2);
+    }
+    List<Expense> expenses = Expense.loadExpensesFromFile(args[first + 1]);
+    Path target = Path.of(args[first + 2]);
+    try {
+      ExpenseExporter exporter = new ExpenseExporter(format);
+      int exported = full ? exporter.export(expenses, target) : exporter.exportIncremental(
+          expenses, target);
+      System.out.println("Экспортировано расходов: " + exported);
+    } catch (IOException e) {
+      System.err.println("Ошибка при экспорте расходов: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Writes all expenses to the target file, replacing it, and records a checkpoint so that the
+   * next incremental export continues from here.
+   *
+   * @param expenses The expenses to export.
+   * @param target   The file to write.
+   * @return The number of exported expenses.
+   * @throws IOException If the file cannot be written.
+   */
+  public int export(List<Expense> expenses, Path target) throws IOException {
+    return exportRows(expenses, 0, 0, 0L, target);
+  }
+
+  /**
+   * Appends the expenses added since the last export to the target file. Falls back to a full
+   * export if there is no valid checkpoint for the target.
+   *
+   * @param expenses The expenses to export, in ledger order.
+   * @param target   The file to append to.
+   * @return The number of exported expenses.
+   * @throws IOException If the file cannot be written.
+   */
+  public int exportIncremental(List<Expense> expenses, Path target) throws IOException {
+    Checkpoint checkpoint = readCheckpoint(target);
+    if (checkpoint == null || checkpoint.rows > expenses.size()
+        || rowsHash(expenses, checkpoint.rows) != checkpoint.hash) {
+      return export(expenses, target);
+    }
+    return exportRows(expenses, checkpoint.rows, checkpoint.bytes, checkpoint.hash, target);
+  }
+
+  /**
+   * Writes category totals of a report to the target file, replacing it.
+   *
+   * @param totals The totals by category.
+   * @param target The file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void exportTotals(Map<String, Double> totals, Path target) throws IOException {
+    try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      begin(out);
+      switch (format) {
+        case CSV -> putText(CSV_TOTALS_HEADER);
+        case BINARY -> put(BINARY_TOTALS_MAGIC);
+        default -> {
+        }
+      }
+      for (Map.Entry<String, Double> entry : totals.entrySet()) {
+        writeTotal(entry.getKey(), entry.getValue());
+      }
+      flush();
+    } finally {
+      channel = null;
+    }
+  }
+
+  private int exportRows(List<Expense> expenses, int fromRow, long fromByte, long hash,
+      Path target) throws IOException {
+    int toRow = expenses.size();
+    long bytes;
+    if (fromRow == 0) {
+      Files.deleteIfExists(checkpointPath(target));
+    }
+    try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      // A crash after writing rows but before the checkpoint leaves a tail to overwrite.
+      out.truncate(fromByte);
+      out.position(fromByte);
+      begin(out);
+      if (fromRow == 0) {
+        switch (format) {
+          case CSV -> putText(CSV_HEADER);
+          case BINARY -> put(BINARY_MAGIC);
+          default -> {
+          }
+        }
+      }
+      for (int i = fromRow; i < toRow; i++) {
+        Expense expense = expenses.get(i);
+        writeExpense(expense);
+        hash = nextHash(hash, expense);
+      }
+      flush();
+      out.force(false);
+      bytes = out.position();
+    } finally {
+      channel = null;
+    }
+    writeCheckpoint(target, new Checkpoint(format, toRow, bytes, hash));
+    return toRow - fromRow;
+  }
+
+  private void writeExpense(Expense expense) throws IOException {
+    switch (format) {
+      case CSV -> {
+        row.setLength(0);
+        appendCsv(expense.getCategory());
+        row.append(',');
+        appendAmount(expense.getAmount());
+        row.append(',');
+        appendCsv(expense.getDate());
+        row.append(',');
+        appendCsv(expense.getCurrency());
+        row.append(',');
+        appendCsv(expense.getExternalId());
+        row.append(',');
+        appendCsv(expense.getNote());
+        row.append('\n');
+        putText(row);
+      }
+      case JSON_LINES -> {
+        row.setLength(0);
+        row.append("{\"category\":");
+        appendJson(expense.getCategory());
+        row.append(",\"amount\":");
+        appendAmount(expense.getAmount());
+        row.append(",\"date\":");
+        appendJson(expense.getDate());
+        row.append(",\"currency\":");
+        appendJson(expense.getCurrency());
+        row.append(",\"id\":");
+        appendJson(expense.getExternalId());
+        row.append(",\"note\":");
+        appendJson(expense.getNote());
+        row.append("}\n");
+        putText(row);
+      }
+      case BINARY -> {
+        ensure(12);
+        buffers[current].putInt(expense.getEpochDay()).putDouble(expense.getAmount());
+        putString(expense.getCategory());
+        putString(expense.getDate());
+        putString(expense.getCurrency());
+        putString(expense.getExternalId());
+        putString(expense.getNote());
+      }
+    }
+  }
+
+  private void writeTotal(String category, double total) throws IOException {
+    switch (format) {
+      case CSV -> {
+        row.setLength(0);
+        appendCsv(category);
+        row.append(',');
+        appendAmount(total);
+        row.append('\n');
+        putText(row);
+      }
+      case JSON_LINES -> {
+        row.setLength(0);
+        row.append("{\"category\":");
+        appendJson(category);
+        row.append(",\"total\":");
+        appendAmount(total);
+        row.append("}\n");
+        putText(row);
+      }
+      case BINARY -> {
+        putString(category);
+        ensure(8);
+        buffers[current].putDouble(total);
+      }
+    }
+  }
+
+  /**
+   * Appends an amount in plain decimal notation. Amounts with at most two decimals, which is
+   * nearly all of them, are formatted from whole cents without going through
+   * {@link Double#toString(double)}.
+   */
+  private void appendAmount(double amount) {
+    long cents = Math.round(amount * 100);
+    if (Math.abs(cents) >= MAX_EXACT_CENTS || cents / 100.0 != amount) {
+      row.append(new BigDecimal(Double.toString(amount)).toPlainString());
+      return;
+    }
+    if (cents < 0) {
+      row.append('-');
+      cents = -cents;
+    }
+    long fraction = cents % 100;
+    row.append(cents / 100).append('.');
+    if (fraction % 10 == 0) {
+      row.append(fraction / 10);
+    } else {
+      row.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+  }
+
+  private void appendCsv(String value) {
+    if (value == null) {
+      return;
+    }
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      row.append(value);
+      return;
+    }
+    row.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        row.append('"');
+      }
+      row.append(c);
+    }
+    row.append('"');
+  }
+
+  private void appendJson(String value) {
+    if (value == null) {
+      row.append("null");
+      return;
+    }
+    row.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> row.append("\\\"");
+        case '\\' -> row.append("\\\\");
+        case '\n' -> row.append("\\n");
+        case '\r' -> row.append("\\r");
+        case '\t' -> row.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            row.append(String.format("\\u%04x", (int) c));
+          } else {
+            row.append(c);
+          }
+        }
+      }
+    }
+    row.append('"');
+  }
+
+  private void begin(FileChannel out) {
+    channel = out;
+    current = 0;
+    for (ByteBuffer buffer : buffers) {
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Makes sure that the current buffer has room for the given number of bytes, moving on to the
+   * next buffer and writing all of them out once every buffer is full.
+   */
+  private void ensure(int bytes) throws IOException {
+    if (buffers[current].remaining() >= bytes) {
+      return;
+    }
+    if (++current == BUFFER_COUNT) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    int used = Math.min(current + 1, BUFFER_COUNT);
+    long remaining = 0;
+    for (int i = 0; i < used; i++) {
+      remaining += buffers[i].flip().remaining();
+    }
+    while (remaining > 0) {
+      remaining -= channel.write(buffers, 0, used);
+    }
+    for (ByteBuffer buffer : buffers) {
+      buffer.clear();
+    }
+    current = 0;
+  }
+
+  private void put(byte[] bytes) throws IOException {
+    ensure(bytes.length);
+    buffers[current].put(bytes);
+  }
+
+  /**
+   * Encodes text as UTF-8 into the buffers. Short text is encoded without bounds checks after
+   * reserving its worst-case length of three bytes per char.
+   */
+  private void putText(CharSequence text) throws IOException {
+    int length = text.length();
+    if (length * 3 <= BUFFER_SIZE) {
+      ensure(length * 3);
+      encode(text, 0, length, buffers[current]);
+      return;
+    }
+    for (int start = 0; start < length; ) {
+      int end = Math.min(length, start + BUFFER_SIZE / 3);
+      if (end < length && Character.isHighSurrogate(text.charAt(end - 1))) {
+        end--;
+      }
+      ensure((end - start) * 3);
+      encode(text, start, end, buffers[current]);
+      start = end;
+    }
+  }
+
+  private void putString(String value) throws IOException {
+    if (value == null) {
+      ensure(1);
+      buffers[current].put((byte) 0);
+      return;
+    }
+    int length = utf8Length(value);
+    ensure(5);
+    putVarint(length + 1);
+    if (length <= BUFFER_SIZE) {
+      ensure(length);
+      encode(value, 0, value.length(), buffers[current]);
+    } else {
+      putText(value);
+    }
+  }
+
+  private void putVarint(int value) {
+    ByteBuffer buffer = buffers[current];
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static void encode(CharSequence text, int start, int end, ByteBuffer out) {
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        out.put((byte) c);
+      } else if (c < 0x800) {
+        out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < end
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        out.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+            .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        out.put((byte) '?');
+      } else {
+        out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F))
+            .put((byte) (0x80 | c & 0x3F));
+      }
+    }
+  }
+
+  private static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Hashes every exported field of the first rows: category, amount, date, currency, external id
+   * and note, so that a change of any of them is exported again. Strings cache their hash codes,
+   * so checking the exported prefix again costs no allocation and no text scanning.
+   */
+  static long rowsHash(List<Expense> expenses, int rows) {
+    long hash = 0L;
+    for (int i = 0; i < rows; i++) {
+      hash = nextHash(hash, expenses.get(i));
+    }
+    return hash;
+  }
+
+  private static long nextHash(long hash, Expense expense) {
+    long value = expense.getCategory().hashCode() * 31L + expense.getDate().hashCode();
+    value = value * 31L + Double.hashCode(expense.getAmount());
+    value = value * 31L + Objects.hashCode(expense.getCurrency());
+    value = value * 31L + Objects.hashCode(expense.getExternalId());
+    value = value * 31L + Objects.hashCode(expense.getNote());
+    return LongHashSet.mix(hash * 0x100000001B3L ^ value);
+  }
+
+  private record Checkpoint(Format format, int rows, long bytes, long hash) {
+  }
+
+  private Checkpoint readCheckpoint(Path target) throws IOException {
+    long size;
+    List<String> lines;
+    try {
+      size = Files.size(target);
+      ChecksummedFile.Content content = ChecksummedFile.read(checkpointPath(target));
+      if (!content.isIntact()) {
+        return null;
+      }
+      lines = content.getLines();
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    if (lines.size() != 4 || !lines.get(0).equals("format " + format)) {
+      return null;
+    }
+    try {
+      int rows = Integer.parseInt(value(lines.get(1), "rows"));
+      long bytes = Long.parseLong(value(lines.get(2), "bytes"));
+      long hash = Long.parseLong(value(lines.get(3), "hash"));
+      return bytes <= size ? new Checkpoint(format, rows, bytes, hash) : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static String value(String line, String key) {
+    if (!line.startsWith(key + " ")) {
+      throw new IllegalArgumentException(line);
+    }
+    return line.substring(key.length() + 1);
+  }
+
+  private static void writeCheckpoint(Path target, Checkpoint checkpoint) throws IOException {
+    List<String> lines = new ArrayList<>(4);
+    lines.add("format " + checkpoint.format());
+    lines.add("rows " + checkpoint.rows());
+    lines.add("bytes " + checkpoint.bytes());
+    lines.add("hash " + checkpoint.hash());
+    ChecksummedFile.writeAtomically(checkpointPath(target), lines);
+  }
+
+  static Path checkpointPath(Path target) {
+    return target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+  }
+}
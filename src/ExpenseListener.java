@@ -0,0 +1,13 @@
+/**
+ * Receives every expense added to a {@link Ledger}, right after it has been added.
+ */
+@FunctionalInterface
+public interface ExpenseListener {
+
+  /**
+   * Called for every added expense, in insertion order per ledger.
+   *
+   * @param expense The added expense.
+   */
+  void onExpenseAdded(Expense expense);
+}
@@ -0,0 +1,931 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * An ad-hoc aggregation query over expenses, for example
+ * {@code sum(amount) where date in 2023 group by category, month order by sum desc limit 10}.
+ *
+ * <p>Syntax, with case-insensitive keywords:
+ * <pre>
+ * query      = aggregate {"," aggregate} ["where" condition {"and" condition}]
+ *              ["group by" key {"," key}] ["order by" column ["asc" | "desc"]] ["limit" n]
+ * aggregate  = ("sum" | "avg" | "min" | "max") "(amount)" | "count(" ["*" | "amount"] ")"
+ * condition  = "date in" (yyyy | yyyy-MM | MM.yyyy | dd.MM.yyyy)
+ *            | "date between" dd.MM.yyyy "and" dd.MM.yyyy | "date" op dd.MM.yyyy
+ *            | "category" ("=" name | "in (" name {"," name} ")") | "amount" op number
+ * key        = "category" | "day" | "month" | "year"
+ * op         = "=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;="
+ * </pre>
+ * Names may be quoted with single or double quotes; at most one of the period keys can be used.
+ * The column of "order by" is an aggregate name such as {@code sum} or a key; without it, groups
+ * are ordered by their keys.
+ *
+ * <p>Parsing produces a plan in which all conditions are already pushed down into an interval of
+ * days, a set of categories and an interval of amounts. Executing it is a single pass over the
+ * columns of {@link ExpenseColumns} that checks the day first, then the category by its id and
+ * finally the amount, and adds the amount to its group. Groups are slots in primitive arrays:
+ * addressed directly when the category ids and periods of the day interval span a small enough
+ * key space, and otherwise through an open-addressing hash table sized up front for the expected
+ * number of groups. A plain total over a day range runs on {@link AggregationKernels} like the
+ * report totals.
+ */
+public final class ExpenseQuery {
+
+  /**
+   * The aggregate functions.
+   */
+  public enum Aggregate {
+    SUM, COUNT, AVG, MIN, MAX
+  }
+
+  /**
+   * The periods expenses can be grouped by.
+   */
+  public enum Period {
+    NONE, DAY, MONTH, YEAR
+  }
+
+  static final int MAX_DENSE_GROUPS = 1 << 20;
+  private static final int MAX_DENSE_DAYS = 1 << 22;
+  private static final int UNBOUNDED_FROM = Expense.INVALID_DAY + 1;
+  private static final int UNBOUNDED_TO = Integer.MAX_VALUE;
+
+  private final List<Aggregate> aggregates;
+  private final int fromDay;
+  private final int toDay;
+  private final Set<String> categories;
+  private final double minAmount;
+  private final double maxAmount;
+  private final boolean groupByCategory;
+  private final Period period;
+  private final String orderBy;
+  private final boolean descending;
+  private final int limit;
+
+  private ExpenseQuery(Parser parser) {
+    this.aggregates = List.copyOf(parser.aggregates);
+    this.fromDay = parser.fromDay;
+    this.toDay = parser.toDay;
+    this.categories = parser.categories == null ? null : Set.copyOf(parser.categories);
+    this.minAmount = parser.minAmount;
+    this.maxAmount = parser.maxAmount;
+    this.groupByCategory = parser.groupByCategory;
+    this.period = parser.period;
+    this.orderBy = parser.orderBy;
+    this.descending = parser.descending;
+    this.limit = parser.limit;
+  }
+
+  /**
+   * Parses a query into its plan.
+   *
+   * @param text The query.
+   * @return The plan.
+   * @throws IllegalArgumentException If the query is not valid.
+   */
+  public static ExpenseQuery parse(String text) {
+    return new ExpenseQuery(new Parser(text).parse());
+  }
+
+  public List<Aggregate> getAggregates() {
+    return aggregates;
+  }
+
+  /**
+   * @return The first epoch day the query can match, or {@code Integer.MIN_VALUE + 1} if the day
+   *     is not restricted.
+   */
+  public int getFromDay() {
+    return fromDay;
+  }
+
+  /**
+   * @return The last epoch day the query can match, or {@code Integer.MAX_VALUE} if the day is
+   *     not restricted.
+   */
+  public int getToDay() {
+    return toDay;
+  }
+
+  /**
+   * @return The categories the query can match, or null for all categories.
+   */
+  public Set<String> getCategories() {
+    return categories;
+  }
+
+  public boolean isGroupedByCategory() {
+    return groupByCategory;
+  }
+
+  public Period getPeriod() {
+    return period;
+  }
+
+  /**
+   * Runs the query over the columns of pinned expenses, converting expenses in other currencies
+   * into the base currency with the rate of their day.
+   *
+   * @param columns The columns of the expenses.
+   * @param pinned  The expenses the columns were built from.
+   * @param fxRates The exchange rates.
+   * @return The result.
+   */
+  Result execute(ExpenseColumns columns, List<Expense> pinned, FxRateTable fxRates) {
+    int categoryCount = columns.categoryCount();
+    boolean[] categoryMask = new boolean[categoryCount];
+    boolean empty = toDay < fromDay || minAmount > maxAmount;
+    if (categories == null) {
+      Arrays.fill(categoryMask, true);
+    } else {
+      boolean anyKnown = false;
+      for (String category : categories) {
+        int id = columns.categoryId(category);
+        if (id >= 0) {
+          categoryMask[id] = true;
+          anyKnown = true;
+        }
+      }
+      empty |= !anyKnown;
+    }
+
+    boolean boundedDays = fromDay != UNBOUNDED_FROM && toDay != UNBOUNDED_TO && !empty;
+    int firstPeriod = boundedDays ? periodOf(fromDay) : 0;
+    long periods = period == Period.NONE ? 1
+        : boundedDays ? (long) periodOf(toDay) - firstPeriod + 1 : Long.MAX_VALUE;
+    int categorySlots = groupByCategory ? Math.max(categoryCount, 1) : 1;
+    boolean dense = periods <= MAX_DENSE_GROUPS / categorySlots
+        && (period == Period.NONE || (long) toDay - fromDay < MAX_DENSE_DAYS);
+    int periodCount = dense ? (int) periods : 0;
+    int rows = columns.size();
+    Groups groups = dense ? new Groups(categorySlots * periodCount, false, aggregates)
+        : new Groups((int) Math.min(rows, (long) categorySlots * 64), true, aggregates);
+    if (empty) {
+      return toResult(groups, columns, dense, firstPeriod, periodCount);
+    }
+
+    int[] periodSlots = null;
+    if (dense && period != Period.NONE) {
+      periodSlots = new int[toDay - fromDay + 1];
+      for (int i = 0; i < periodSlots.length; i++) {
+        periodSlots[i] = periodOf(fromDay + i) - firstPeriod;
+      }
+    }
+    boolean missingRate;
+    if (period == Period.NONE && !groupByCategory && categories == null
+        && minAmount == Double.NEGATIVE_INFINITY && maxAmount == Double.POSITIVE_INFINITY
+        && !aggregates.contains(Aggregate.MIN) && !aggregates.contains(Aggregate.MAX)) {
+      missingRate = total(columns, pinned, fxRates, groups);
+    } else {
+      missingRate = scan(columns, pinned, fxRates, groups, categoryMask, periodSlots,
+          periodCount);
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, они не учтены в итогах.");
+    }
+    return toResult(groups, columns, dense, firstPeriod, periodCount);
+  }
+
+  /**
+   * Computes a single total over a day range with the same kernels as the hand-written reports,
+   * then adds the converted expenses in other currencies, whose base amounts are zero.
+   */
+  private boolean total(ExpenseColumns columns, List<Expense> pinned, FxRateTable fxRates,
+      Groups groups) {
+    AggregationKernels kernels = AggregationKernels.get();
+    int[] days = columns.days();
+    int rows = columns.size();
+    double sum = aggregates.contains(Aggregate.SUM) || aggregates.contains(Aggregate.AVG)
+        ? kernels.sum(days, columns.baseAmounts(), rows, fromDay, toDay) : 0.0;
+    long count = kernels.count(days, rows, fromDay, toDay);
+    boolean missingRate = false;
+    int[] foreignRows = columns.foreignRows();
+    for (int i = 0; i < columns.foreignCount(); i++) {
+      int day = days[foreignRows[i]];
+      if (day >= fromDay && day <= toDay) {
+        Expense expense = pinned.get(foreignRows[i]);
+        double rate = fxRates.rate(expense.getCurrency(), day);
+        if (Double.isNaN(rate)) {
+          missingRate = true;
+          count--;
+        } else {
+          sum += expense.getAmount() * rate;
+        }
+      }
+    }
+    groups.sums[0] = sum;
+    groups.counts[0] = count;
+    return missingRate;
+  }
+
+  /**
+   * Aggregates all rows that pass the pushed-down filters in one pass. The rows between two
+   * expenses in other currencies run through a loop without any conversion.
+   */
+  private boolean scan(ExpenseColumns columns, List<Expense> pinned, FxRateTable fxRates,
+      Groups groups, boolean[] categoryMask, int[] periodSlots, int periodCount) {
+    int[] days = columns.days();
+    int[] categoryIds = columns.categories();
+    int[] foreignRows = columns.foreignRows();
+    int foreignCount = columns.foreignCount();
+    int rows = columns.size();
+    int span = toDay - fromDay;
+    boolean missingRate = false;
+    int row = 0;
+    for (int foreignIndex = 0; foreignIndex <= foreignCount; foreignIndex++) {
+      int end = foreignIndex < foreignCount ? foreignRows[foreignIndex] : rows;
+      if (groups.table == null) {
+        addDense(columns, row, end, groups, categoryMask, periodSlots, periodCount);
+      } else {
+        addHashed(columns, row, end, groups, categoryMask);
+      }
+      if (end == rows) {
+        break;
+      }
+      row = end;
+      int day = days[row];
+      int category = categoryIds[row];
+      if (Integer.compareUnsigned(day - fromDay, span) <= 0 && categoryMask[category]) {
+        Expense expense = pinned.get(row);
+        double rate = fxRates.rate(expense.getCurrency(), day);
+        double amount = expense.getAmount() * rate;
+        if (Double.isNaN(rate)) {
+          missingRate = true;
+        } else if (amount >= minAmount && amount <= maxAmount) {
+          int categorySlot = groupByCategory ? category : 0;
+          groups.add(groups.table == null
+              ? categorySlot * Math.max(periodCount, 1)
+                  + (periodSlots == null ? 0 : periodSlots[day - fromDay])
+              : groups.slot(key(categorySlot, day)), amount);
+        }
+      }
+      row++;
+    }
+    return missingRate;
+  }
+
+  /**
+   * Adds rows to directly addressed groups.
+   */
+  private void addDense(ExpenseColumns columns, int from, int to, Groups groups,
+      boolean[] categoryMask, int[] periodSlots, int periodCount) {
+    int[] days = columns.days();
+    double[] amounts = columns.baseAmounts();
+    int[] categoryIds = columns.categories();
+    int span = toDay - fromDay;
+    int categoryStride = groupByCategory ? Math.max(periodCount, 1) : 0;
+    double[] sums = groups.sums;
+    long[] counts = groups.counts;
+    double[] mins = groups.mins;
+    double[] maxs = groups.maxs;
+    for (int row = from; row < to; row++) {
+      int offset = days[row] - fromDay;
+      if (Integer.compareUnsigned(offset, span) > 0) {
+        continue;
+      }
+      int category = categoryIds[row];
+      double amount = amounts[row];
+      if (!categoryMask[category] || amount < minAmount || amount > maxAmount) {
+        continue;
+      }
+      int slot = category * categoryStride + (periodSlots == null ? 0 : periodSlots[offset]);
+      sums[slot] += amount;
+      counts[slot]++;
+      if (mins != null && amount < mins[slot]) {
+        mins[slot] = amount;
+      }
+      if (maxs != null && amount > maxs[slot]) {
+        maxs[slot] = amount;
+      }
+    }
+  }
+
+  private void addHashed(ExpenseColumns columns, int from, int to, Groups groups,
+      boolean[] categoryMask) {
+    int[] days = columns.days();
+    double[] amounts = columns.baseAmounts();
+    int[] categoryIds = columns.categories();
+    int span = toDay - fromDay;
+    for (int row = from; row < to; row++) {
+      int day = days[row];
+      int category = categoryIds[row];
+      double amount = amounts[row];
+      if (Integer.compareUnsigned(day - fromDay, span) <= 0 && categoryMask[category]
+          && amount >= minAmount && amount <= maxAmount) {
+        groups.add(groups.slot(key(groupByCategory ? category : 0, day)), amount);
+      }
+    }
+  }
+
+  private long key(int categorySlot, int day) {
+    return (long) categorySlot << 32 | (periodOf(day) & 0xffffffffL);
+  }
+
+  private int periodOf(int day) {
+    return switch (period) {
+      case NONE -> 0;
+      case DAY -> day;
+      case MONTH -> Expense.toMonthIndex(day);
+      case YEAR -> Math.floorDiv(Expense.toMonthIndex(day), 12);
+    };
+  }
+
+  private String formatPeriod(int value) {
+    return switch (period) {
+      case NONE -> "";
+      case DAY -> Expense.formatEpochDay(value);
+      case MONTH -> String.format("%02d.%d", Math.floorMod(value, 12) + 1,
+          Math.floorDiv(value, 12));
+      case YEAR -> Integer.toString(value);
+    };
+  }
+
+  /**
+   * Collects the groups into result rows, ordered and limited as requested.
+   */
+  private Result toResult(Groups groups, ExpenseColumns columns, boolean dense, int firstPeriod,
+      int periodCount) {
+    List<String> names = new ArrayList<>();
+    if (groupByCategory) {
+      names.add("category");
+    }
+    if (period != Period.NONE) {
+      names.add(period.name().toLowerCase(Locale.ROOT));
+    }
+    for (Aggregate aggregate : aggregates) {
+      names.add(aggregate.name().toLowerCase(Locale.ROOT));
+    }
+    int keyCount = names.size() - aggregates.size();
+
+    List<int[]> keys = new ArrayList<>();
+    List<Object[]> rows = new ArrayList<>();
+    boolean grouped = groupByCategory || period != Period.NONE;
+    for (int slot = 0; slot < groups.size(); slot++) {
+      if (grouped && groups.counts[slot] == 0) {
+        continue;
+      }
+      int categorySlot;
+      int periodValue;
+      if (!dense) {
+        categorySlot = (int) (groups.keys[slot] >>> 32);
+        periodValue = (int) groups.keys[slot];
+      } else if (period == Period.NONE) {
+        categorySlot = slot;
+        periodValue = 0;
+      } else {
+        categorySlot = slot / periodCount;
+        periodValue = firstPeriod + slot % periodCount;
+      }
+      Object[] row = new Object[names.size()];
+      int column = 0;
+      if (groupByCategory) {
+        row[column++] = columns.categoryName(categorySlot);
+      }
+      if (period != Period.NONE) {
+        row[column++] = formatPeriod(periodValue);
+      }
+      for (Aggregate aggregate : aggregates) {
+        row[column++] = groups.value(slot, aggregate);
+      }
+      keys.add(new int[] {categorySlot, periodValue});
+      rows.add(row);
+    }
+
+    Integer[] order = new Integer[rows.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Comparator<Integer> byKeys = Comparator.comparing(i -> (String) (groupByCategory
+        ? rows.get(i)[0] : ""));
+    byKeys = byKeys.thenComparingInt(i -> keys.get(i)[1]);
+    Comparator<Integer> comparator = byKeys;
+    if (orderBy != null) {
+      int column = names.indexOf(orderBy);
+      Comparator<Integer> byColumn;
+      if (column >= keyCount) {
+        byColumn = Comparator.comparingDouble(i -> ((Number) rows.get(i)[column]).doubleValue());
+      } else if (groupByCategory && column == 0) {
+        byColumn = Comparator.comparing(i -> (String) rows.get(i)[0]);
+      } else {
+        byColumn = Comparator.comparingInt(i -> keys.get(i)[1]);
+      }
+      comparator = (descending ? byColumn.reversed() : byColumn).thenComparing(byKeys);
+    }
+    Arrays.sort(order, comparator);
+    List<Object[]> sorted = new ArrayList<>(Math.min(order.length, limit));
+    for (int i = 0; i < order.length && i < limit; i++) {
+      sorted.add(rows.get(order[i]));
+    }
+    return new Result(names, sorted);
+  }
+
+  /**
+   * The aggregates of all groups in parallel primitive arrays, indexed by group slot.
+   */
+  private static final class Groups {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private double[] sums;
+    private long[] counts;
+    private double[] mins;
+    private double[] maxs;
+    private long[] keys;
+    private int size;
+    private int[] table;
+    private int mask;
+
+    Groups(int capacity, boolean hashed, List<Aggregate> aggregates) {
+      int slots = Math.max(capacity, 1);
+      sums = new double[slots];
+      counts = new long[slots];
+      if (aggregates.contains(Aggregate.MIN)) {
+        mins = new double[slots];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+      }
+      if (aggregates.contains(Aggregate.MAX)) {
+        maxs = new double[slots];
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+      }
+      if (hashed) {
+        keys = new long[slots];
+        table = new int[Integer.highestOneBit((int) (slots / LOAD_FACTOR) - 1) << 1];
+        Arrays.fill(table, -1);
+        mask = table.length - 1;
+      } else {
+        size = slots;
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * Returns the slot of a group key, adding the group if it is new.
+     */
+    int slot(long key) {
+      int index = (int) LongHashSet.mix(key) & mask;
+      while (true) {
+        int slot = table[index];
+        if (slot < 0) {
+          return insert(key, index);
+        }
+        if (keys[slot] == key) {
+          return slot;
+        }
+        index = (index + 1) & mask;
+      }
+    }
+
+    private int insert(long key, int index) {
+      if (size == keys.length) {
+        grow();
+        return slot(key);
+      }
+      int slot = size++;
+      keys[slot] = key;
+      table[index] = slot;
+      return slot;
+    }
+
+    private void grow() {
+      int capacity = keys.length * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      sums = Arrays.copyOf(sums, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      if (mins != null) {
+        mins = Arrays.copyOf(mins, capacity);
+        Arrays.fill(mins, size, capacity, Double.POSITIVE_INFINITY);
+      }
+      if (maxs != null) {
+        maxs = Arrays.copyOf(maxs, capacity);
+        Arrays.fill(maxs, size, capacity, Double.NEGATIVE_INFINITY);
+      }
+      table = new int[table.length * 2];
+      Arrays.fill(table, -1);
+      mask = table.length - 1;
+      for (int slot = 0; slot < size; slot++) {
+        int index = (int) LongHashSet.mix(keys[slot]) & mask;
+        while (table[index] >= 0) {
+          index = (index + 1) & mask;
+        }
+        table[index] = slot;
+      }
+    }
+
+    void add(int slot, double amount) {
+      sums[slot] += amount;
+      counts[slot]++;
+      if (mins != null && amount < mins[slot]) {
+        mins[slot] = amount;
+      }
+      if (maxs != null && amount > maxs[slot]) {
+        maxs[slot] = amount;
+      }
+    }
+
+    Object value(int slot, Aggregate aggregate) {
+      boolean none = counts[slot] == 0;
+      return switch (aggregate) {
+        case SUM -> sums[slot];
+        case COUNT -> counts[slot];
+        case AVG -> none ? Double.NaN : sums[slot] / counts[slot];
+        case MIN -> none ? Double.NaN : mins[slot];
+        case MAX -> none ? Double.NaN : maxs[slot];
+      };
+    }
+  }
+
+  /**
+   * The rows of a query result: the group keys followed by the aggregates, as named by
+   * {@link #getColumns()}. Keys are strings, counts are {@code Long} and other aggregates are
+   * {@code Double}.
+   */
+  public static final class Result {
+    private final List<String> columns;
+    private final List<Object[]> rows;
+
+    Result(List<String> columns, List<Object[]> rows) {
+      this.columns = List.copyOf(columns);
+      this.rows = rows;
+    }
+
+    public List<String> getColumns() {
+      return columns;
+    }
+
+    public List<Object[]> getRows() {
+      return rows;
+    }
+
+    /**
+     * @return The result as a text table with one line per row.
+     */
+    public String format() {
+      String[][] cells = new String[rows.size() + 1][];
+      cells[0] = columns.toArray(new String[0]);
+      int[] widths = new int[columns.size()];
+      for (int r = 0; r < cells.length; r++) {
+        if (r > 0) {
+          Object[] row = rows.get(r - 1);
+          cells[r] = new String[row.length];
+          for (int c = 0; c < row.length; c++) {
+            cells[r][c] = row[c] instanceof Double value ? String.format("%.1f", value)
+                : String.valueOf(row[c]);
+          }
+        }
+        for (int c = 0; c < widths.length; c++) {
+          widths[c] = Math.max(widths[c], cells[r][c].length());
+        }
+      }
+      StringBuilder text = new StringBuilder();
+      for (String[] line : cells) {
+        for (int c = 0; c < line.length; c++) {
+          if (c > 0) {
+            text.append(" | ");
+          }
+          text.append(line[c]).append(" ".repeat(widths[c] - line[c].length()));
+        }
+        text.append(System.lineSeparator());
+      }
+      return text.toString();
+    }
+  }
+
+  /**
+   * A recursive descent parser that builds the plan while reading the query.
+   */
+  private static final class Parser {
+    private final List<String> tokens = new ArrayList<>();
+    private final List<Boolean> quoted = new ArrayList<>();
+    private int position;
+
+    private final List<Aggregate> aggregates = new ArrayList<>();
+    private int fromDay = UNBOUNDED_FROM;
+    private int toDay = UNBOUNDED_TO;
+    private Set<String> categories;
+    private double minAmount = Double.NEGATIVE_INFINITY;
+    private double maxAmount = Double.POSITIVE_INFINITY;
+    private boolean groupByCategory;
+    private Period period = Period.NONE;
+    private String orderBy;
+    private boolean descending;
+    private int limit = Integer.MAX_VALUE;
+
+    Parser(String text) {
+      tokenize(text);
+    }
+
+    Parser parse() {
+      do {
+        parseAggregate();
+      } while (accept(","));
+      if (acceptKeyword("where")) {
+        do {
+          parseCondition();
+        } while (acceptKeyword("and"));
+      }
+      if (acceptKeyword("group")) {
+        expectKeyword("by");
+        do {
+          parseKey();
+        } while (accept(","));
+      }
+      if (acceptKeyword("order")) {
+        expectKeyword("by");
+        parseOrder();
+      }
+      if (acceptKeyword("limit")) {
+        String value = next("число");
+        try {
+          limit = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          limit = 0;
+        }
+        if (limit < 1) {
+          throw error("лимит должен быть положительным целым числом: " + value);
+        }
+      }
+      if (position < tokens.size()) {
+        throw error("лишний фрагмент \"" + tokens.get(position) + "\"");
+      }
+      return this;
+    }
+
+    private void parseAggregate() {
+      String name = next("агрегатная функция");
+      Aggregate aggregate;
+      try {
+        aggregate = Aggregate.valueOf(name.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw error("неизвестная агрегатная функция \"" + name + "\"");
+      }
+      expect("(");
+      if (aggregate == Aggregate.COUNT) {
+        if (!accept("*")) {
+          acceptKeyword("amount");
+        }
+      } else {
+        expectKeyword("amount");
+      }
+      expect(")");
+      if (!aggregates.contains(aggregate)) {
+        aggregates.add(aggregate);
+      }
+    }
+
+    private void parseCondition() {
+      String field = next("поле").toLowerCase(Locale.ROOT);
+      switch (field) {
+        case "date" -> parseDateCondition();
+        case "category" -> parseCategoryCondition();
+        case "amount" -> {
+          String operator = next("оператор сравнения");
+          String value = next("число");
+          double amount;
+          try {
+            amount = Double.parseDouble(value);
+          } catch (NumberFormatException e) {
+            throw error("ожидается число вместо \"" + value + "\"");
+          }
+          switch (operator) {
+            case "=" -> restrictAmount(amount, amount);
+            case "<" -> restrictAmount(Double.NEGATIVE_INFINITY, Math.nextDown(amount));
+            case "<=" -> restrictAmount(Double.NEGATIVE_INFINITY, amount);
+            case ">" -> restrictAmount(Math.nextUp(amount), Double.POSITIVE_INFINITY);
+            case ">=" -> restrictAmount(amount, Double.POSITIVE_INFINITY);
+            default -> throw error("неизвестный оператор \"" + operator + "\"");
+          }
+        }
+        default -> throw error("неизвестное поле \"" + field + "\"");
+      }
+    }
+
+    private void parseDateCondition() {
+      String operator = next("оператор сравнения").toLowerCase(Locale.ROOT);
+      switch (operator) {
+        case "in" -> {
+          int[] range = parsePeriod(next("период"));
+          restrictDays(range[0], range[1]);
+        }
+        case "between" -> {
+          int from = parseDay(next("дата"));
+          expectKeyword("and");
+          restrictDays(from, parseDay(next("дата")));
+        }
+        case "=" -> {
+          int day = parseDay(next("дата"));
+          restrictDays(day, day);
+        }
+        case "<" -> restrictDays(UNBOUNDED_FROM, parseDay(next("дата")) - 1);
+        case "<=" -> restrictDays(UNBOUNDED_FROM, parseDay(next("дата")));
+        case ">" -> restrictDays(parseDay(next("дата")) + 1, UNBOUNDED_TO);
+        case ">=" -> restrictDays(parseDay(next("дата")), UNBOUNDED_TO);
+        default -> throw error("неизвестный оператор \"" + operator + "\"");
+      }
+    }
+
+    private void parseCategoryCondition() {
+      Set<String> names = new HashSet<>();
+      if (accept("=")) {
+        names.add(next("категория"));
+      } else if (acceptKeyword("in")) {
+        expect("(");
+        do {
+          names.add(next("категория"));
+        } while (accept(","));
+        expect(")");
+      } else {
+        throw error("ожидается \"=\" или \"in\" после \"category\"");
+      }
+      if (categories == null) {
+        categories = names;
+      } else {
+        categories.retainAll(names);
+      }
+    }
+
+    private void parseKey() {
+      String key = next("ключ группировки").toLowerCase(Locale.ROOT);
+      if (key.equals("category")) {
+        if (groupByCategory) {
+          throw error("повторный ключ группировки \"category\"");
+        }
+        groupByCategory = true;
+        return;
+      }
+      Period keyPeriod;
+      try {
+        keyPeriod = Period.valueOf(key.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        keyPeriod = Period.NONE;
+      }
+      if (keyPeriod == Period.NONE) {
+        throw error("неизвестный ключ группировки \"" + key + "\"");
+      }
+      if (period != Period.NONE) {
+        throw error("допускается только один период группировки");
+      }
+      period = keyPeriod;
+    }
+
+    private void parseOrder() {
+      String column = next("столбец").toLowerCase(Locale.ROOT);
+      if (accept("(")) {
+        if (!accept("*")) {
+          acceptKeyword("amount");
+        }
+        expect(")");
+      }
+      boolean known = aggregates.stream().anyMatch(a -> a.name().equalsIgnoreCase(column))
+          || column.equals("category") && groupByCategory
+          || period != Period.NONE && column.equalsIgnoreCase(period.name());
+      if (!known) {
+        throw error("столбца \"" + column + "\" нет в результате");
+      }
+      orderBy = column;
+      if (acceptKeyword("desc")) {
+        descending = true;
+      } else {
+        acceptKeyword("asc");
+      }
+    }
+
+    private void restrictDays(int from, int to) {
+      fromDay = Math.max(fromDay, from);
+      toDay = Math.min(toDay, to);
+    }
+
+    private void restrictAmount(double min, double max) {
+      minAmount = Math.max(minAmount, min);
+      maxAmount = Math.min(maxAmount, max);
+    }
+
+    /**
+     * Parses a year, a month as yyyy-MM or MM.yyyy, or a day into its first and last day.
+     */
+    private int[] parsePeriod(String value) {
+      try {
+        if (value.matches("\\d{4}")) {
+          int year = Integer.parseInt(value);
+          return new int[] {Expense.toEpochDay(year, 1, 1), Expense.toEpochDay(year, 12, 31)};
+        }
+        int year = -1;
+        int month = -1;
+        if (value.matches("\\d{4}-\\d{2}")) {
+          year = Integer.parseInt(value.substring(0, 4));
+          month = Integer.parseInt(value.substring(5));
+        } else if (value.matches("\\d{2}\\.\\d{4}")) {
+          month = Integer.parseInt(value.substring(0, 2));
+          year = Integer.parseInt(value.substring(3));
+        }
+        if (month >= 1 && month <= 12) {
+          return new int[] {Expense.toEpochDay(year, month, 1),
+              Expense.toEpochDay(year, month, Expense.lengthOfMonth(year, month))};
+        }
+      } catch (NumberFormatException e) {
+        // reported below
+      }
+      int day = parseDay(value);
+      return new int[] {day, day};
+    }
+
+    private int parseDay(String value) {
+      int day = Expense.parseEpochDay(value);
+      if (day == Expense.INVALID_DAY) {
+        throw error("ожидается дата в формате dd.MM.yyyy вместо \"" + value + "\"");
+      }
+      return day;
+    }
+
+    private void tokenize(String text) {
+      int i = 0;
+      while (i < text.length()) {
+        char c = text.charAt(i);
+        if (Character.isWhitespace(c)) {
+          i++;
+        } else if (c == '\'' || c == '"') {
+          int end = text.indexOf(c, i + 1);
+          if (end < 0) {
+            throw new IllegalArgumentException("Ошибка в запросе: не закрыта кавычка");
+          }
+          add(text.substring(i + 1, end), true);
+          i = end + 1;
+        } else if (c == '<' || c == '>') {
+          boolean withEquals = i + 1 < text.length() && text.charAt(i + 1) == '=';
+          add(text.substring(i, withEquals ? i + 2 : i + 1), false);
+          i += withEquals ? 2 : 1;
+        } else if ("(),=*".indexOf(c) >= 0) {
+          add(String.valueOf(c), false);
+          i++;
+        } else {
+          int start = i;
+          while (i < text.length() && isWordChar(text.charAt(i))) {
+            i++;
+          }
+          if (i == start) {
+            throw new IllegalArgumentException("Ошибка в запросе: недопустимый символ '" + c
+                + "'");
+          }
+          add(text.substring(start, i), false);
+        }
+      }
+    }
+
+    private static boolean isWordChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_'
+          || c == CategoryTree.SEPARATOR;
+    }
+
+    private void add(String token, boolean isQuoted) {
+      tokens.add(token);
+      quoted.add(isQuoted);
+    }
+
+    private String next(String expected) {
+      if (position == tokens.size()) {
+        throw error("ожидается " + expected);
+      }
+      return tokens.get(position++);
+    }
+
+    private boolean accept(String symbol) {
+      if (position < tokens.size() && !quoted.get(position)
+          && tokens.get(position).equals(symbol)) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+      if (position < tokens.size() && !quoted.get(position)
+          && tokens.get(position).equalsIgnoreCase(keyword)) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(String symbol) {
+      if (!accept(symbol)) {
+        throw error("ожидается \"" + symbol + "\"");
+      }
+    }
+
+    private void expectKeyword(String keyword) {
+      if (!acceptKeyword(keyword)) {
+        throw error("ожидается \"" + keyword + "\"");
+      }
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("Ошибка в запросе: " + message);
+    }
+  }
+}
@@ -4,16 +4,49 @@ import java.util.*;
 
 public class ExpenseReportGenerator {
 
+  private static final int MAX_DAILY_BUCKETS = 1 << 16;
+
   private final List<Expense> expenses;
+  private final FxRateTable fxRates;
+  private final CategoryTree categoryTree;
   private final Scanner scanner;
+  private ExpenseColumns columns;
 
   public ExpenseReportGenerator(List<Expense> expenses) {
+    this(expenses, new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY));
+  }
+
+  /**
+   * Creates a report generator that converts expenses in other currencies into the base currency
+   * of the given rate table.
+   *
+   * @param expenses The expenses to report on.
+   * @param fxRates  The exchange rates into the base currency.
+   */
+  public ExpenseReportGenerator(List<Expense> expenses, FxRateTable fxRates) {
+    this(expenses, fxRates, null);
+  }
+
+  /**
+   * Creates a report generator whose category report also shows the totals of the categories of
+   * the given hierarchy including their subcategories.
+   *
+   * @param expenses     The expenses to report on.
+   * @param fxRates      The exchange rates into the base currency.
+   * @param categoryTree The category hierarchy, or null to show no subtree totals.
+   */
+  public ExpenseReportGenerator(List<Expense> expenses, FxRateTable fxRates,
+      CategoryTree categoryTree) {
     this.expenses = expenses;
+    this.fxRates = fxRates;
+    this.categoryTree = categoryTree;
     this.scanner = new Scanner(System.in);
   }
 
   /**
-   * Generates an expense report based on user-selected category and date range.
+   * Generates an expense report based on user-selected category and date range. With a category
+   * hierarchy, the rows are followed by the totals in the base currency of the selected category
+   * and its direct subcategories, or of every top-level category, each including subcategories.
    */
   public void viewExpensesByCategoryAndPeriod() {
     System.out.println("Отчет о расходах по категориям и периоду:");
@@ -36,10 +69,11 @@ public class ExpenseReportGenerator {
       String selectedCategory = categoryChoice == 0 ? "Все категории" : categories.get(categoryChoice - 1);
       Map<String, List<Expense>> categoryExpensesMap = new HashMap<>();
 
+      List<Expense> expenses = pinExpenses();
       for (Expense expense : expenses) {
         Date expenseDate = parseDate(expense.getDate());
         String expenseCategory = expense.getCategory();
-        if (expenseDate != null && (selectedCategory.equals("Все категории") || expenseCategory.equals(selectedCategory))
+        if (expenseDate != null && (selectedCategory.equals("Все категории") || isInCategory(expenseCategory, selectedCategory))
             && expenseDate.compareTo(startDate) >= 0 && expenseDate.compareTo(endDate) <= 0) {
           categoryExpensesMap.computeIfAbsent(expenseCategory, k -> new ArrayList<>());
           categoryExpensesMap.get(expenseCategory).add(expense);
@@ -64,15 +98,55 @@ public class ExpenseReportGenerator {
         List<Expense> categoryExpenses = entry.getValue();
         categoryExpenses.sort(expenseDateComparator);
         for (Expense expense : categoryExpenses) {
-          double amount = expense.getAmount();
-          System.out.printf("%-11s | %-18s | %.1f%n", expense.getDate(), category, amount);
+          System.out.printf("%-11s | %-18s | %s%n", expense.getDate(), category,
+              formatAmount(expense));
         }
       }
+      if (categoryTree != null) {
+        printSubtreeTotals(expenses, categoryChoice == 0 ? null : selectedCategory,
+            Expense.parseEpochDay(startDateInput), Expense.parseEpochDay(endDateInput));
+      }
     } else {
       System.err.println("Неверный формат даты.");
     }
   }
 
+  /**
+   * Formats the amount of an expense for a report row. An amount in another currency is followed
+   * by its currency and its amount in the base currency, if there is a rate for its day.
+   *
+   * @param expense The expense.
+   * @return The formatted amount, e.g. "12.5" or "5.0 USD (450.0 RUB)".
+   */
+  String formatAmount(Expense expense) {
+    String amount = String.format("%.1f", expense.getAmount());
+    if (fxRates.isBase(expense.getCurrency())) {
+      return amount;
+    }
+    double converted = fxRates.toBase(expense);
+    return amount + " " + expense.getCurrency() + (Double.isNaN(converted) ? " (нет курса)"
+        : String.format(" (%.1f %s)", converted, fxRates.getBaseCurrency()));
+  }
+
+  private void printSubtreeTotals(List<Expense> expenses, String selectedCategory, int fromDay,
+      int toDay) {
+    if (selectedCategory != null && !categoryTree.contains(selectedCategory)) {
+      return;
+    }
+    CategoryTree.Rollup rollup = categoryTree.rollup(expenses, fxRates, fromDay, toDay);
+    System.out.println("Итого с подкатегориями, " + fxRates.getBaseCurrency() + ":");
+    List<String> shown;
+    if (selectedCategory == null) {
+      shown = categoryTree.getRoots();
+    } else {
+      System.out.printf("%-18s | %.1f%n", selectedCategory, rollup.getTotal(selectedCategory));
+      shown = categoryTree.getChildren(selectedCategory);
+    }
+    for (String category : shown) {
+      System.out.printf("%-18s | %.1f%n", category, rollup.getTotal(category));
+    }
+  }
+
   /**
    * Compares expenses of the current month with the previous month.
    */
@@ -86,8 +160,10 @@ public class ExpenseReportGenerator {
     previousMonthStart.add(Calendar.MONTH, -1);
     previousMonthStart.set(Calendar.DAY_OF_MONTH, 1);
 
-    double totalExpensesCurrent = getTotalExpensesInMonth(currentMonthStart);
-    double totalExpensesPrevious = getTotalExpensesInMonth(previousMonthStart);
+    List<Expense> expenses = pinExpenses();
+    ExpenseColumns columns = getColumns(expenses);
+    double totalExpensesCurrent = getTotalExpensesInMonth(currentMonthStart, expenses, columns);
+    double totalExpensesPrevious = getTotalExpensesInMonth(previousMonthStart, expenses, columns);
 
     System.out.println("Расходы в текущем месяце: " + String.format("%.1f", totalExpensesCurrent));
     System.out.println("Расходы в предыдущем месяце: " + String.format("%.1f", totalExpensesPrevious));
@@ -137,8 +213,12 @@ public class ExpenseReportGenerator {
     int currentYear = currentYearStart.get(Calendar.YEAR);
     int previousYear = currentYear - 1;
 
-    double totalExpensesThisYear = getTotalExpensesForYear(currentYear);
-    double totalExpensesPreviousYear = getTotalExpensesForYear(previousYear);
+    List<Expense> expenses = pinExpenses();
+    ExpenseColumns columns = getColumns(expenses);
+    double totalExpensesThisYear = getTotalExpensesInPeriod(expenses, columns,
+        Expense.toEpochDay(currentYear, 1, 1), Expense.toEpochDay(currentYear, 12, 31));
+    double totalExpensesPreviousYear = getTotalExpensesInPeriod(expenses, columns,
+        Expense.toEpochDay(previousYear, 1, 1), Expense.toEpochDay(previousYear, 12, 31));
 
     System.out.println("Расходы в текущем году: " + String.format("%.1f", totalExpensesThisYear));
     System.out.println("Расходы в предыдущем году: " + String.format("%.1f", totalExpensesPreviousYear));
@@ -169,40 +249,260 @@ public class ExpenseReportGenerator {
    * @return The total expenses for the specified year.
    */
   public double getTotalExpensesForYear(int year) {
-    double totalExpenses = 0.0;
-    for (Expense expense : expenses) {
-      Date expenseDate = parseDate(expense.getDate());
-      if (expenseDate != null) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(expenseDate);
-        if (cal.get(Calendar.YEAR) == year) {
-          totalExpenses += expense.getAmount();
-        }
-      }
-    }
-    return totalExpenses;
+    return getTotalExpensesInPeriod(Expense.toEpochDay(year, 1, 1),
+        Expense.toEpochDay(year, 12, 31));
   }
 
   /**
    * Calculates the total expenses for a specific month.
    *
    * @param monthStart A Calendar instance representing the start of the month.
+   * @param expenses   The pinned expenses, shared by the periods being compared.
+   * @param columns    The columns of the pinned expenses.
    * @return The total expenses for the specified month.
    */
-  private double getTotalExpensesInMonth(Calendar monthStart) {
-    double totalExpenses = 0.0;
-    for (Expense expense : expenses) {
-      Date expenseDate = parseDate(expense.getDate());
-      if (expenseDate != null) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(expenseDate);
-        if (cal.get(Calendar.YEAR) == monthStart.get(Calendar.YEAR) &&
-            cal.get(Calendar.MONTH) == monthStart.get(Calendar.MONTH)) {
-          totalExpenses += expense.getAmount();
+  private double getTotalExpensesInMonth(Calendar monthStart, List<Expense> expenses,
+      ExpenseColumns columns) {
+    int year = monthStart.get(Calendar.YEAR);
+    int month = monthStart.get(Calendar.MONTH) + 1;
+    return getTotalExpensesInPeriod(expenses, columns, Expense.toEpochDay(year, month, 1),
+        Expense.toEpochDay(year, month, Expense.lengthOfMonth(year, month)));
+  }
+
+  /**
+   * Calculates the total expenses between two days in the base currency.
+   *
+   * <p>Amounts in the base currency are summed over the amount column of {@link ExpenseColumns}.
+   * Amounts in other currencies are first summed per currency and day, and each of those sums is
+   * converted once at the end with the rate of its day, so the conversion cost does not depend on
+   * the number of expenses. Periods longer than {@value #MAX_DAILY_BUCKETS} days fall back to
+   * converting each expense.
+   *
+   * @param fromDay The first epoch day, inclusive.
+   * @param toDay   The last epoch day, inclusive.
+   * @return The total expenses in the period.
+   */
+  public double getTotalExpensesInPeriod(int fromDay, int toDay) {
+    List<Expense> expenses = pinExpenses();
+    return getTotalExpensesInPeriod(expenses, getColumns(expenses), fromDay, toDay);
+  }
+
+  /**
+   * Calculates the total expenses between two days of already pinned expenses, so that reports
+   * comparing several periods see all of them at the same point in time.
+   *
+   * @param expenses The pinned expenses.
+   * @param columns  The columns of the pinned expenses.
+   * @param fromDay  The first epoch day, inclusive.
+   * @param toDay    The last epoch day, inclusive.
+   * @return The total expenses in the period.
+   */
+  private double getTotalExpensesInPeriod(List<Expense> expenses, ExpenseColumns columns,
+      int fromDay, int toDay) {
+    double total = AggregationKernels.get().sum(columns.days(), columns.baseAmounts(),
+        columns.size(), fromDay, toDay);
+    boolean bucketByDay = (long) toDay - fromDay < MAX_DAILY_BUCKETS;
+    boolean missingRate = false;
+    Map<String, double[]> foreignSums = null;
+    String lastCurrency = null;
+    double[] lastSums = null;
+    int[] foreignRows = columns.foreignRows();
+    for (int i = 0; i < columns.foreignCount(); i++) {
+      Expense expense = expenses.get(foreignRows[i]);
+      int day = expense.getEpochDay();
+      if (day < fromDay || day > toDay) {
+        continue;
+      }
+      String currency = expense.getCurrency();
+      if (!bucketByDay) {
+        double rate = fxRates.rate(currency, day);
+        if (Double.isNaN(rate)) {
+          missingRate = true;
+        } else {
+          total += expense.getAmount() * rate;
+        }
+        continue;
+      }
+      if (!currency.equals(lastCurrency)) {
+        if (foreignSums == null) {
+          foreignSums = new HashMap<>();
+        }
+        lastSums = foreignSums.computeIfAbsent(currency, k -> new double[toDay - fromDay + 1]);
+        lastCurrency = currency;
+      }
+      lastSums[day - fromDay] += expense.getAmount();
+    }
+    if (foreignSums != null) {
+      for (Map.Entry<String, double[]> entry : foreignSums.entrySet()) {
+        total += convertDailySums(entry.getKey(), entry.getValue(), fromDay);
+      }
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, они не учтены в итогах.");
+    }
+    return total;
+  }
+
+  /**
+   * Calculates the total expenses of every category between two days in the base currency, in
+   * one pass over the columns.
+   *
+   * @param fromDay The first epoch day, inclusive.
+   * @param toDay   The last epoch day, inclusive.
+   * @return The totals by category, in order of first appearance; categories with a total of zero
+   *     are omitted.
+   */
+  public Map<String, Double> getTotalsByCategory(int fromDay, int toDay) {
+    List<Expense> expenses = pinExpenses();
+    ExpenseColumns columns = getColumns(expenses);
+    double[] totals = new double[columns.categoryCount()];
+    AggregationKernels.get().sumByCategory(columns.days(), columns.baseAmounts(),
+        columns.categories(), columns.size(), fromDay, toDay, totals);
+    int[] foreignRows = columns.foreignRows();
+    boolean missingRate = false;
+    for (int i = 0; i < columns.foreignCount(); i++) {
+      Expense expense = expenses.get(foreignRows[i]);
+      int day = expense.getEpochDay();
+      if (day >= fromDay && day <= toDay) {
+        double rate = fxRates.rate(expense.getCurrency(), day);
+        if (Double.isNaN(rate)) {
+          missingRate = true;
+        } else {
+          totals[columns.categories()[foreignRows[i]]] += expense.getAmount() * rate;
         }
       }
     }
-    return totalExpenses;
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, они не учтены в итогах.");
+    }
+    Map<String, Double> result = new LinkedHashMap<>();
+    for (int id = 0; id < totals.length; id++) {
+      if (totals[id] != 0.0) {
+        result.put(columns.categoryName(id), totals[id]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Counts the expenses between two days.
+   *
+   * @param fromDay The first epoch day, inclusive.
+   * @param toDay   The last epoch day, inclusive.
+   * @return The number of expenses in the period.
+   */
+  public int getExpenseCountInPeriod(int fromDay, int toDay) {
+    ExpenseColumns columns = getColumns(pinExpenses());
+    return AggregationKernels.get().count(columns.days(), columns.size(), fromDay, toDay);
+  }
+
+  /**
+   * Returns the expenses to report on as of now. Expenses of a ledger are pinned to a snapshot, so
+   * a report sees one consistent point in time and never blocks expenses being added meanwhile.
+   *
+   * @return The pinned expenses.
+   */
+  private List<Expense> pinExpenses() {
+    return expenses instanceof ExpenseStore store ? store.snapshot() : expenses;
+  }
+
+  /**
+   * Returns the columns of the given pinned expenses, appending expenses added since the last
+   * call to the shared columns. Expenses changed in place are not picked up; the ledger creates a
+   * new report generator then.
+   *
+   * @param pinned The pinned expenses.
+   * @return A view of the columns with exactly the rows of the pinned expenses.
+   */
+  private ExpenseColumns getColumns(List<Expense> pinned) {
+    synchronized (this) {
+      if (columns == null || columns.size() > expenses.size()) {
+        columns = new ExpenseColumns(fxRates);
+      }
+      if (columns.size() < pinned.size()) {
+        columns.append(pinned, columns.size());
+      }
+      return columns.snapshot(pinned.size());
+    }
+  }
+
+  private double convertDailySums(String currency, double[] dailySums, int fromDay) {
+    double total = 0.0;
+    boolean missingRate = false;
+    for (int i = 0; i < dailySums.length; i++) {
+      if (dailySums[i] != 0.0) {
+        double rate = fxRates.rate(currency, fromDay + i);
+        if (Double.isNaN(rate)) {
+          missingRate = true;
+        } else {
+          total += dailySums[i] * rate;
+        }
+      }
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для валюты " + currency
+          + ", часть расходов не учтена в итогах.");
+    }
+    return total;
+  }
+
+  /**
+   * Checks whether a category is the given one or one of its subcategories.
+   *
+   * @param category The category to check.
+   * @param selected The selected category.
+   * @return True if the category belongs to the selected one.
+   */
+  static boolean isInCategory(String category, String selected) {
+    return category.equals(selected)
+        || (category.length() > selected.length() && category.startsWith(selected)
+        && category.charAt(selected.length()) == CategoryTree.SEPARATOR);
+  }
+
+  /**
+   * Calculates the total expenses of a category including its subcategories, for every category
+   * of the tree at once.
+   *
+   * @param tree    The category hierarchy.
+   * @param fromDay The first epoch day, inclusive.
+   * @param toDay   The last epoch day, inclusive.
+   * @return The rollup answering subtree totals in constant time.
+   */
+  public CategoryTree.Rollup getCategoryRollup(CategoryTree tree, int fromDay, int toDay) {
+    return tree.rollup(pinExpenses(), fxRates, fromDay, toDay);
+  }
+
+  /**
+   * Forecasts the spend of every category at the end of the month containing the given day.
+   *
+   * @param today The last epoch day with known spend.
+   * @return The forecasts by category, ordered by category name.
+   */
+  public Map<String, SpendingForecaster.Forecast> forecastMonthEnd(int today) {
+    return SpendingForecaster.forecastMonthEnd(pinExpenses(), fxRates, today);
+  }
+
+  /**
+   * Forecasts the spend of every category at the end of the year containing the given day.
+   *
+   * @param today The last epoch day with known spend.
+   * @return The forecasts by category, ordered by category name.
+   */
+  public Map<String, SpendingForecaster.Forecast> forecastYearEnd(int today) {
+    return SpendingForecaster.forecastYearEnd(pinExpenses(), fxRates, today);
+  }
+
+  /**
+   * Runs an ad-hoc aggregation query, see {@link ExpenseQuery}, in one pass over the columns.
+   *
+   * @param query The query, e.g. {@code sum(amount) where date in 2023 group by category}.
+   * @return The result.
+   * @throws IllegalArgumentException If the query is not valid.
+   */
+  public ExpenseQuery.Result query(String query) {
+    ExpenseQuery plan = ExpenseQuery.parse(query);
+    List<Expense> expenses = pinExpenses();
+    return plan.execute(getColumns(expenses), expenses, fxRates);
   }
 
   /**
@@ -212,7 +512,7 @@ public class ExpenseReportGenerator {
    */
   public List<String> getDistinctCategories() {
     List<String> distinctCategories = new ArrayList<>();
-    for (Expense expense : expenses) {
+    for (Expense expense : pinExpenses()) {
       String category = expense.getCategory();
       if (!distinctCategories.contains(category)) {
         distinctCategories.add(category);
@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over the categories and notes of a list of expenses.
+ *
+ * <p>Text is split into lower-case words (Cyrillic and Latin alike, with "ё" folded into "е").
+ * Every word maps to the sorted ids of the rows containing it, where a row id is the position of
+ * the expense in the indexed list. The index grows incrementally as expenses are added.
+ *
+ * <p>Query syntax: words separated by spaces must all match; groups of words separated by
+ * {@code OR} (or {@code ИЛИ}, or {@code |}) are alternatives; a word ending with {@code *} matches
+ * every word starting with it. For example {@code "кофе* OR такси" }. A query without any word,
+ * such as a blank one, punctuation only or a bare {@code OR}, matches no row.
+ */
+public class ExpenseSearchIndex implements ExpenseListener {
+
+  private final TreeMap<String, IntList> postings = new TreeMap<>();
+  private int[] days = new int[1024];
+  private double[] amounts = new double[1024];
+  private int rowCount;
+
+  /**
+   * Creates an index over the given expenses.
+   *
+   * @param expenses The expenses to index, in ledger order.
+   */
+  public ExpenseSearchIndex(List<Expense> expenses) {
+    for (Expense expense : expenses) {
+      onExpenseAdded(expense);
+    }
+  }
+
+  /**
+   * Indexes an expense appended to the ledger; its row id is the number of rows indexed before.
+   *
+   * @param expense The added expense.
+   */
+  @Override
+  public synchronized void onExpenseAdded(Expense expense) {
+    int row = rowCount++;
+    if (row == days.length) {
+      days = Arrays.copyOf(days, row * 2);
+      amounts = Arrays.copyOf(amounts, row * 2);
+    }
+    days[row] = expense.getEpochDay();
+    amounts[row] = expense.getAmount();
+    indexText(expense.getCategory(), row);
+    if (expense.getNote() != null) {
+      indexText(expense.getNote(), row);
+    }
+  }
+
+  public synchronized int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Finds the rows matching a text query.
+   *
+   * @param query The query, see the class description.
+   * @return The matching row ids in ascending order.
+   */
+  public int[] search(String query) {
+    return search(query, Integer.MIN_VALUE, Integer.MAX_VALUE, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Finds the rows matching a text query within a date and amount range.
+   *
+   * @param query     The query, see the class description.
+   * @param fromDay   The first epoch day, inclusive.
+   * @param toDay     The last epoch day, inclusive.
+   * @param minAmount The minimum amount, inclusive.
+   * @param maxAmount The maximum amount, inclusive.
+   * @return The matching row ids in ascending order.
+   */
+  public synchronized int[] search(String query, int fromDay, int toDay, double minAmount,
+      double maxAmount) {
+    long[] matches = evaluate(query);
+    int[] result = new int[16];
+    int count = 0;
+    for (int word = 0; word < matches.length; word++) {
+      long bits = matches[word];
+      while (bits != 0) {
+        int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        int day = days[row];
+        double amount = amounts[row];
+        if (day >= fromDay && day <= toDay && amount >= minAmount && amount <= maxAmount) {
+          if (count == result.length) {
+            result = Arrays.copyOf(result, count * 2);
+          }
+          result[count++] = row;
+        }
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  private long[] evaluate(String query) {
+    int words = (rowCount + 63) >>> 6;
+    List<List<String>> groups = parse(query);
+    long[] result = new long[words];
+    for (List<String> group : groups) {
+      long[] groupBits = null;
+      for (String term : group) {
+        long[] termBits = termBits(term, words);
+        if (groupBits == null) {
+          groupBits = termBits;
+        } else {
+          for (int i = 0; i < words; i++) {
+            groupBits[i] &= termBits[i];
+          }
+        }
+      }
+      for (int i = 0; i < words; i++) {
+        result[i] |= groupBits[i];
+      }
+    }
+    return result;
+  }
+
+  private long[] termBits(String term, int words) {
+    long[] bits = new long[words];
+    if (term.endsWith("*")) {
+      String prefix = term.substring(0, term.length() - 1);
+      SortedMap<String, IntList> range = prefix.isEmpty()
+          ? postings : postings.subMap(prefix, prefix + Character.MAX_VALUE);
+      for (IntList rows : range.values()) {
+        rows.setBits(bits);
+      }
+    } else {
+      IntList rows = postings.get(term);
+      if (rows != null) {
+        rows.setBits(bits);
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * @return The number of distinct indexed words.
+   */
+  public synchronized int getVocabularySize() {
+    return postings.size();
+  }
+
+  private static List<List<String>> parse(String query) {
+    List<List<String>> groups = new ArrayList<>();
+    List<String> group = new ArrayList<>();
+    for (String part : query.trim().split("\\s+")) {
+      if (part.equals("OR") || part.equals("ИЛИ") || part.equals("|")) {
+        if (!group.isEmpty()) {
+          groups.add(group);
+          group = new ArrayList<>();
+        }
+        continue;
+      }
+      boolean prefix = part.endsWith("*");
+      List<String> tokens = tokenize(prefix ? part.substring(0, part.length() - 1) : part);
+      for (int i = 0; i < tokens.size(); i++) {
+        boolean last = i == tokens.size() - 1;
+        group.add(prefix && last ? tokens.get(i) + "*" : tokens.get(i));
+      }
+    }
+    if (!group.isEmpty()) {
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  private void indexText(String text, int row) {
+    for (String token : tokenize(text)) {
+      IntList rows = postings.computeIfAbsent(token, k -> new IntList());
+      rows.addIfLast(row);
+    }
+  }
+
+  /**
+   * Splits text into normalized words: letters and digits only, lower case, "ё" as "е".
+   *
+   * @param text The text to split.
+   * @return The normalized words.
+   */
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    int start = -1;
+    for (int i = 0; i <= normalized.length(); i++) {
+      boolean wordChar = i < normalized.length()
+          && Character.isLetterOrDigit(normalized.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        tokens.add(normalized.substring(start, i));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * A growable sorted list of row ids.
+   */
+  private static final class IntList {
+    private int[] values = new int[4];
+    private int size;
+
+    void addIfLast(int value) {
+      if (size > 0 && values[size - 1] == value) {
+        return;
+      }
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void setBits(long[] bits) {
+      for (int i = 0; i < size; i++) {
+        int value = values[i];
+        bits[value >>> 6] |= 1L << value;
+      }
+    }
+  }
+}
@@ -0,0 +1,178 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.UnaryOperator;
+
+/**
+ * The expenses of a ledger as a chunked, append-only list with immutable snapshots.
+ *
+ * <p>Expenses are stored in fixed-size chunks. The current state is a version holding the array of
+ * chunks and the number of valid rows, published through a volatile field. Appending writes into a
+ * free slot of the last chunk and then publishes a version with the new size, so slots below the
+ * size of any published version are never written again. Replacing expenses copies only the
+ * chunks that change. A {@link Snapshot} pins one version: reading it never takes a lock, never
+ * blocks writers and always sees the same rows, however many expenses are added meanwhile.
+ *
+ * <p>Writers are serialized among themselves. Reading the store itself always sees the latest
+ * version; iterating it while expenses are added does not fail but may include the new rows.
+ */
+public class ExpenseStore extends AbstractList<Expense> implements RandomAccess {
+
+  static final int CHUNK_SHIFT = 12;
+  static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private record Version(Expense[][] chunks, int size) {
+  }
+
+  private volatile Version version = new Version(new Expense[0][], 0);
+
+  /**
+   * Creates an empty store.
+   */
+  public ExpenseStore() {
+  }
+
+  /**
+   * Creates a store holding the given expenses.
+   *
+   * @param expenses The initial expenses.
+   */
+  public ExpenseStore(List<Expense> expenses) {
+    addAll(expenses);
+  }
+
+  /**
+   * @return A consistent, immutable view of the expenses stored now.
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(version);
+  }
+
+  @Override
+  public Expense get(int index) {
+    return get(version, index);
+  }
+
+  @Override
+  public int size() {
+    return version.size();
+  }
+
+  @Override
+  public synchronized boolean add(Expense expense) {
+    Version current = version;
+    Expense[][] chunks = reserve(current, 1);
+    chunks[current.size() >>> CHUNK_SHIFT][current.size() & CHUNK_MASK] =
+        Objects.requireNonNull(expense);
+    version = new Version(chunks, current.size() + 1);
+    return true;
+  }
+
+  /**
+   * Appends all expenses and publishes them at once, so a snapshot sees either none or all of
+   * them.
+   */
+  @Override
+  public synchronized boolean addAll(Collection<? extends Expense> batch) {
+    Version current = version;
+    Expense[][] chunks = reserve(current, batch.size());
+    int row = current.size();
+    for (Expense expense : batch) {
+      chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = Objects.requireNonNull(expense);
+      row++;
+    }
+    version = new Version(chunks, row);
+    return !batch.isEmpty();
+  }
+
+  /**
+   * Replaces one expense, copying the chunk that holds it so that snapshots keep the old one.
+   */
+  @Override
+  public synchronized Expense set(int index, Expense expense) {
+    Version current = version;
+    Expense old = get(current, index);
+    Expense[][] chunks = current.chunks().clone();
+    int chunk = index >>> CHUNK_SHIFT;
+    chunks[chunk] = chunks[chunk].clone();
+    chunks[chunk][index & CHUNK_MASK] = Objects.requireNonNull(expense);
+    version = new Version(chunks, current.size());
+    return old;
+  }
+
+  /**
+   * Replaces expenses in one pass, copying only the chunks with changed expenses and publishing
+   * the result at once.
+   *
+   * @param operator Maps every expense to its replacement, or to itself to keep it.
+   */
+  @Override
+  public synchronized void replaceAll(UnaryOperator<Expense> operator) {
+    Version current = version;
+    Expense[][] chunks = current.chunks().clone();
+    boolean changed = false;
+    for (int row = 0; row < current.size(); row++) {
+      int chunk = row >>> CHUNK_SHIFT;
+      Expense expense = chunks[chunk][row & CHUNK_MASK];
+      Expense replacement = Objects.requireNonNull(operator.apply(expense));
+      if (replacement != expense) {
+        if (chunks[chunk] == current.chunks()[chunk]) {
+          chunks[chunk] = chunks[chunk].clone();
+        }
+        chunks[chunk][row & CHUNK_MASK] = replacement;
+        changed = true;
+      }
+    }
+    if (changed) {
+      version = new Version(chunks, current.size());
+    }
+  }
+
+  /**
+   * Makes room for more rows. The chunk array only grows by copying chunk references, and new
+   * chunks only fill slots that no published version reaches, so published versions stay valid.
+   */
+  private static Expense[][] reserve(Version current, int count) {
+    Expense[][] chunks = current.chunks();
+    int neededChunks = (current.size() + count + CHUNK_MASK) >>> CHUNK_SHIFT;
+    if (neededChunks > chunks.length) {
+      chunks = Arrays.copyOf(chunks, Math.max(neededChunks, chunks.length * 2));
+    }
+    for (int i = current.size() >>> CHUNK_SHIFT; i < neededChunks; i++) {
+      if (chunks[i] == null) {
+        chunks[i] = new Expense[CHUNK_SIZE];
+      }
+    }
+    return chunks;
+  }
+
+  private static Expense get(Version version, int index) {
+    Objects.checkIndex(index, version.size());
+    return version.chunks()[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+  }
+
+  /**
+   * An immutable view of the expenses at one point in time.
+   */
+  public static final class Snapshot extends AbstractList<Expense> implements RandomAccess {
+    private final Version version;
+
+    private Snapshot(Version version) {
+      this.version = version;
+    }
+
+    @Override
+    public Expense get(int index) {
+      return ExpenseStore.get(version, index);
+    }
+
+    @Override
+    public int size() {
+      return version.size();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Exchange rates into the base currency, keyed by date.
+ *
+ * <p>The rates file has one line per rate, {@code dd.MM.yyyy CUR rate}, where {@code rate} is the
+ * amount of base currency paid for one unit of {@code CUR}. A rate is valid from its date until
+ * the next rate of the same currency; there is no rate before the first one.
+ */
+public class FxRateTable {
+
+  /**
+   * The currency of expenses that do not name one.
+   */
+  public static final String DEFAULT_BASE_CURRENCY = "RUB";
+
+  private final String baseCurrency;
+  private final Map<String, Rates> rates = new HashMap<>();
+
+  private static final class Rates {
+    private int[] days = new int[8];
+    private double[] values = new double[8];
+    private int size;
+    private boolean sorted = true;
+
+    void add(int day, double value) {
+      sorted = false;
+      if (size == days.length) {
+        days = Arrays.copyOf(days, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      days[size] = day;
+      values[size++] = value;
+    }
+
+    private void sort() {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Integer.compare(days[a], days[b]));
+      int[] sortedDays = new int[size];
+      double[] sortedValues = new double[size];
+      for (int i = 0; i < size; i++) {
+        sortedDays[i] = days[order[i]];
+        sortedValues[i] = values[order[i]];
+      }
+      days = sortedDays;
+      values = sortedValues;
+      sorted = true;
+    }
+
+    double at(int day) {
+      if (!sorted) {
+        sort();
+      }
+      int index = Arrays.binarySearch(days, 0, size, day);
+      if (index < 0) {
+        index = -index - 2;
+      }
+      return index < 0 ? Double.NaN : values[index];
+    }
+  }
+
+  /**
+   * Creates an empty table in which only the base currency can be converted.
+   *
+   * @param baseCurrency The ISO code of the base currency.
+   */
+  public FxRateTable(String baseCurrency) {
+    this.baseCurrency = baseCurrency.toUpperCase(Locale.ROOT);
+  }
+
+  /**
+   * Creates a table and loads its rates from the given file, if it exists.
+   *
+   * @param baseCurrency  The ISO code of the base currency.
+   * @param ratesFilePath The path to the rates file.
+   */
+  public FxRateTable(String baseCurrency, String ratesFilePath) {
+    this(baseCurrency);
+    try {
+      for (String line : ChecksummedFile.read(Path.of(ratesFilePath)).getLines()) {
+        String[] parts = line.split(" ");
+        int day = parts.length == 3 ? Expense.parseEpochDay(parts[0]) : Expense.INVALID_DAY;
+        try {
+          if (day != Expense.INVALID_DAY) {
+            addRate(parts[1], day, Double.parseDouble(parts[2]));
+            continue;
+          }
+        } catch (NumberFormatException e) {
+          // reported below
+        }
+        System.err.println("Пропущен некорректный курс: " + line);
+      }
+    } catch (NoSuchFileException e) {
+      // only the base currency is used
+    } catch (IOException e) {
+      System.err.println("Ошибка при чтении курсов валют: " + e.getMessage());
+    }
+  }
+
+  public String getBaseCurrency() {
+    return baseCurrency;
+  }
+
+  /**
+   * Adds a rate valid from the given day.
+   *
+   * @param currency The ISO code of the currency.
+   * @param day      The epoch day from which the rate is valid.
+   * @param rate     The amount of base currency for one unit of the currency.
+   */
+  public synchronized void addRate(String currency, int day, double rate) {
+    rates.computeIfAbsent(currency.toUpperCase(Locale.ROOT), k -> new Rates()).add(day, rate);
+  }
+
+  /**
+   * Checks whether the given currency code denotes the base currency.
+   *
+   * @param currency The ISO code of a currency, or null for the base currency.
+   * @return True for the base currency.
+   */
+  public boolean isBase(String currency) {
+    return currency == null || currency.equals(baseCurrency);
+  }
+
+  /**
+   * Returns the rate of a currency on a day.
+   *
+   * @param currency The ISO code of the currency, or null for the base currency.
+   * @param day      The epoch day.
+   * @return The amount of base currency for one unit, or NaN if no rate is known for the day.
+   */
+  public synchronized double rate(String currency, int day) {
+    if (isBase(currency)) {
+      return 1.0;
+    }
+    Rates currencyRates = rates.get(currency);
+    return currencyRates == null ? Double.NaN : currencyRates.at(day);
+  }
+
+  /**
+   * Converts the amount of an expense into the base currency with the rate of its day.
+   *
+   * @param expense The expense.
+   * @return The amount in the base currency, or NaN if no rate is known for the day.
+   */
+  public double toBase(Expense expense) {
+    if (isBase(expense.getCurrency())) {
+      return expense.getAmount();
+    }
+    return expense.getAmount() * rate(expense.getCurrency(), expense.getEpochDay());
+  }
+}
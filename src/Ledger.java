@@ -0,0 +1,359 @@
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A single expense ledger: the expenses loaded from one expenses file together with the categories
+ * and the report generator that belong to it.
+ */
+public class Ledger implements CategoryListener {
+
+  static final String FX_RATES_FILE_NAME = "fx_rates.txt";
+  static final int CHANGE_FEED_CAPACITY = 1024;
+
+  private final String expensesFilePath;
+  private final ExpenseCategoryManager categoryManager;
+  private final ExpenseStore expenses;
+  private final FxRateTable fxRates;
+  private final List<ExpenseListener> listeners = new CopyOnWriteArrayList<>();
+  private ExpenseReportGenerator reportGenerator;
+  private DuplicateIndex duplicateIndex;
+  private ExpenseSearchIndex searchIndex;
+  private ChangeFeed changeFeed;
+  private RollingWindows rollingWindows;
+  private boolean compactDuplicateIndex;
+  private boolean dirty;
+  private boolean closed;
+  private long lastAccessNanos;
+
+  /**
+   * Creates a ledger and loads its expenses from the given file, or from its startup snapshot
+   * while the file is unchanged.
+   *
+   * @param expensesFilePath The path to the file where expenses are stored.
+   * @param categoryManager  The category manager holding the categories of this ledger.
+   */
+  public Ledger(String expensesFilePath, ExpenseCategoryManager categoryManager) {
+    this.expensesFilePath = expensesFilePath;
+    this.categoryManager = categoryManager;
+    this.expenses = new ExpenseStore(StartupSnapshot.loadExpenses(expensesFilePath));
+    this.fxRates = new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY,
+        Path.of(expensesFilePath).resolveSibling(FX_RATES_FILE_NAME).toString());
+    categoryManager.addCategoryListener(this);
+    touch();
+  }
+
+  public String getExpensesFilePath() {
+    return expensesFilePath;
+  }
+
+  public ExpenseCategoryManager getCategoryManager() {
+    return categoryManager;
+  }
+
+  public List<Expense> getExpenses() {
+    return expenses;
+  }
+
+  /**
+   * Pins the expenses as they are now. The snapshot is immutable and never blocks, nor is blocked
+   * by, expenses being added or moved between categories.
+   *
+   * @return The snapshot of the expenses.
+   */
+  public ExpenseStore.Snapshot getSnapshot() {
+    return expenses.snapshot();
+  }
+
+  /**
+   * @return The exchange rates into the base currency, loaded from {@code fx_rates.txt} next to
+   *     the expenses file.
+   */
+  public FxRateTable getFxRates() {
+    return fxRates;
+  }
+
+  /**
+   * Returns the report generator of this ledger, creating it on first use.
+   *
+   * @return The cached report generator.
+   */
+  public synchronized ExpenseReportGenerator getReportGenerator() {
+    if (reportGenerator == null) {
+      reportGenerator = new ExpenseReportGenerator(expenses, fxRates,
+          categoryManager.getCategoryTree());
+    }
+    return reportGenerator;
+  }
+
+  /**
+   * Returns the full-text index over the categories and notes of this ledger, building it on first
+   * use. The index is updated incrementally as expenses are added.
+   *
+   * @return The search index.
+   */
+  public synchronized ExpenseSearchIndex getSearchIndex() {
+    if (searchIndex == null) {
+      searchIndex = new ExpenseSearchIndex(expenses);
+      addExpenseListener(searchIndex);
+    }
+    return searchIndex;
+  }
+
+  /**
+   * Returns the feed of changes to this ledger, creating it on first use. Only changes made after
+   * its creation are published: added expenses and added or removed categories.
+   *
+   * @return The change feed.
+   */
+  public synchronized ChangeFeed getChangeFeed() {
+    if (changeFeed == null) {
+      changeFeed = new ChangeFeed(CHANGE_FEED_CAPACITY);
+      addExpenseListener(changeFeed);
+      categoryManager.addCategoryListener(changeFeed);
+    }
+    return changeFeed;
+  }
+
+  /**
+   * Returns the rolling 7, 30 and 365 day spend of this ledger, building it on first use from the
+   * expenses up to today. It is updated incrementally as expenses are added; pass today to its
+   * queries so the windows move forward with time.
+   *
+   * @return The rolling windows.
+   */
+  public synchronized RollingWindows getRollingWindows() {
+    if (rollingWindows == null) {
+      rollingWindows = RollingWindows.of(expenses.snapshot(), fxRates,
+          (int) LocalDate.now().toEpochDay());
+      addExpenseListener(rollingWindows);
+    }
+    return rollingWindows;
+  }
+
+  /**
+   * Searches the categories and notes of this ledger.
+   *
+   * @param query     The query, see {@link ExpenseSearchIndex}.
+   * @param fromDay   The first epoch day, inclusive.
+   * @param toDay     The last epoch day, inclusive.
+   * @param minAmount The minimum amount, inclusive.
+   * @param maxAmount The maximum amount, inclusive.
+   * @return The matching expenses in ledger order.
+   */
+  public synchronized List<Expense> search(String query, int fromDay, int toDay,
+      double minAmount, double maxAmount) {
+    int[] rows = getSearchIndex().search(query, fromDay, toDay, minAmount, maxAmount);
+    List<Expense> result = new ArrayList<>(rows.length);
+    for (int row : rows) {
+      result.add(expenses.get(row));
+    }
+    return result;
+  }
+
+  /**
+   * Registers a listener that is notified of every expense added from now on.
+   *
+   * @param listener The listener to register.
+   */
+  public void addExpenseListener(ExpenseListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeExpenseListener(ExpenseListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Adds an expense to the ledger. The change is persisted on the next {@link #save()}.
+   *
+   * @param expense The expense to add.
+   */
+  public synchronized void addExpense(Expense expense) {
+    expenses.add(expense);
+    if (duplicateIndex != null) {
+      duplicateIndex.add(DuplicateIndex.fingerprint(expense));
+    }
+    dirty = true;
+    touch();
+    for (ExpenseListener listener : listeners) {
+      listener.onExpenseAdded(expense);
+    }
+  }
+
+  /**
+   * Adds a batch of expenses to the ledger at once. The change is persisted on the next
+   * {@link #save()}.
+   *
+   * @param batch The expenses to add.
+   */
+  public synchronized void addExpenses(List<Expense> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    expenses.addAll(batch);
+    if (duplicateIndex != null) {
+      for (Expense expense : batch) {
+        duplicateIndex.add(DuplicateIndex.fingerprint(expense));
+      }
+    }
+    dirty = true;
+    touch();
+    for (ExpenseListener listener : listeners) {
+      for (Expense expense : batch) {
+        listener.onExpenseAdded(expense);
+      }
+    }
+  }
+
+  /**
+   * Chooses between an exact duplicate index and a compact Bloom filter that takes a few bytes per
+   * expense and confirms its hits with one pass over the ledger.
+   *
+   * @param compact Whether to use the compact index.
+   */
+  public synchronized void setCompactDuplicateIndex(boolean compact) {
+    if (compact != compactDuplicateIndex) {
+      compactDuplicateIndex = compact;
+      duplicateIndex = null;
+    }
+  }
+
+  /**
+   * Imports expenses, skipping those already recorded in the ledger with the same category,
+   * amount, date and external id. The duplicate index is built on the first import and kept up to
+   * date afterwards.
+   *
+   * @param imported The expenses to import.
+   * @return The number of imported expenses that were not duplicates.
+   */
+  public synchronized int importExpenses(List<Expense> imported) {
+    if (duplicateIndex == null) {
+      duplicateIndex = DuplicateIndex.of(expenses, compactDuplicateIndex);
+    }
+    int size = imported.size();
+    long[] fingerprints = new long[size];
+    boolean[] duplicate = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      fingerprints[i] = DuplicateIndex.fingerprint(imported.get(i));
+      duplicate[i] = duplicateIndex.mightContain(fingerprints[i]);
+    }
+    if (!duplicateIndex.isExact()) {
+      DuplicateIndex.findInHistory(fingerprints, duplicate, expenses);
+    }
+    List<Expense> batch = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      if (!duplicate[i]) {
+        batch.add(imported.get(i));
+      }
+    }
+    addExpenses(batch);
+    return batch.size();
+  }
+
+  /**
+   * Imports the expenses of another expenses file, skipping duplicates.
+   *
+   * @param filePath The path to the file to import.
+   * @return The number of imported expenses that were not duplicates.
+   */
+  public int importExpensesFromFile(String filePath) {
+    List<Expense> imported = Expense.loadExpensesFromFile(filePath);
+    int added = importExpenses(imported);
+    System.out.println("Импортировано расходов: " + added + ", пропущено дубликатов: "
+        + (imported.size() - added));
+    return added;
+  }
+
+  /**
+   * Moves the expenses of removed categories to their replacement category.
+   */
+  @Override
+  public void onCategoriesRemoved(List<String> removed, String replacement) {
+    if (replacement != null) {
+      reassignCategories(new HashSet<>(removed), replacement);
+    }
+  }
+
+  /**
+   * Moves every expense of the given categories to another category in one pass. Indexes that
+   * depend on categories are dropped and rebuilt on next use.
+   *
+   * @param from The categories whose expenses are moved.
+   * @param to   The category receiving the expenses.
+   * @return The number of moved expenses.
+   */
+  public synchronized int reassignCategories(Set<String> from, String to) {
+    int[] moved = new int[1];
+    expenses.replaceAll(expense -> {
+      if (!from.contains(expense.getCategory())) {
+        return expense;
+      }
+      moved[0]++;
+      return expense.withCategory(to);
+    });
+    if (moved[0] > 0) {
+      dirty = true;
+      duplicateIndex = null;
+      reportGenerator = null;
+      if (searchIndex != null) {
+        removeExpenseListener(searchIndex);
+        searchIndex = null;
+      }
+      if (rollingWindows != null) {
+        removeExpenseListener(rollingWindows);
+        rollingWindows = null;
+      }
+    }
+    return moved[0];
+  }
+
+  /**
+   * Saves the expenses of this ledger to its expenses file and takes a new startup snapshot of
+   * them. The ledger stays dirty if saving fails.
+   *
+   * @return True if the expenses were saved.
+   */
+  public synchronized boolean save() {
+    if (!Expense.saveExpensesToFile(expenses, expensesFilePath)) {
+      return false;
+    }
+    StartupSnapshot.write(Path.of(expensesFilePath), expenses);
+    dirty = false;
+    return true;
+  }
+
+  synchronized boolean isDirty() {
+    return dirty;
+  }
+
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Saves pending changes and marks the ledger as closed; used when it is evicted from memory.
+   * The ledger stays open if its changes could not be saved.
+   *
+   * @return True if the ledger was closed.
+   */
+  synchronized boolean close() {
+    if (dirty && !save()) {
+      return false;
+    }
+    closed = true;
+    return true;
+  }
+
+  synchronized long getLastAccessNanos() {
+    return lastAccessNanos;
+  }
+
+  synchronized void touch() {
+    lastAccessNanos = System.nanoTime();
+  }
+}
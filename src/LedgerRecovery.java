@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Command line tool that verifies checksummed data files and salvages their intact blocks.
+ *
+ * <p>Usage: {@code java LedgerRecovery [--check] <file>...}. With {@code --check} the files are
+ * only verified. Otherwise every damaged file is rewritten atomically with its intact blocks, and
+ * the raw lines of the corrupt blocks are appended to {@code <file>.corrupt} for manual review.
+ *
+ * <p>The application itself quarantines corrupt blocks the same way as soon as it loads a damaged
+ * file, see {@link #quarantineOnLoad(Path, ChecksummedFile.Content)}, because its next save
+ * rewrites the file from the intact blocks only.
+ */
+public class LedgerRecovery {
+
+  public static void main(String[] args) {
+    boolean checkOnly = false;
+    int damaged = 0;
+    for (String arg : args) {
+      if (arg.equals("--check")) {
+        checkOnly = true;
+        continue;
+      }
+      try {
+        if (!recover(Path.of(arg), checkOnly)) {
+          damaged++;
+        }
+      } catch (IOException e) {
+        System.err.println("Ошибка при обработке файла " + arg + ": " + e.getMessage());
+        damaged++;
+      }
+    }
+    if (damaged > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Verifies a single file and, unless {@code checkOnly} is set, repairs it.
+   *
+   * @param file      The file to verify.
+   * @param checkOnly Whether to only report problems without touching the file.
+   * @return True if the file was intact.
+   * @throws IOException If the file cannot be read or rewritten.
+   */
+  static boolean recover(Path file, boolean checkOnly) throws IOException {
+    ChecksummedFile.Content content = ChecksummedFile.read(file);
+    if (content.isIntact()) {
+      System.out.println(file + ": повреждений не найдено (" + content.getLines().size()
+          + " строк).");
+      return true;
+    }
+    for (ChecksummedFile.CorruptBlock block : content.getCorruptBlocks()) {
+      System.out.println(file + ": повреждён " + block);
+    }
+    if (!checkOnly) {
+      Path quarantine = quarantine(file, content.getCorruptBlocks());
+      ChecksummedFile.writeAtomically(file, content.getLines());
+      System.out.println(file + ": сохранено " + content.getLines().size()
+          + " строк, повреждённые блоки записаны в " + quarantine);
+    }
+    return false;
+  }
+
+  /**
+   * Reports the corrupt blocks found while loading a data file and copies their raw lines to
+   * {@code <file>.corrupt} before the application can save the file without them.
+   *
+   * @param file    The data file that was loaded.
+   * @param content The content read from the file.
+   * @throws IllegalStateException If the corrupt blocks cannot be quarantined; the file must not
+   *                               be overwritten then, so loading it fails.
+   */
+  static void quarantineOnLoad(Path file, ChecksummedFile.Content content) {
+    if (content.isIntact()) {
+      return;
+    }
+    for (ChecksummedFile.CorruptBlock block : content.getCorruptBlocks()) {
+      System.err.println("Повреждённые данные в " + file + ": " + block);
+    }
+    try {
+      Path quarantine = quarantine(file, content.getCorruptBlocks());
+      System.err.println("Повреждённые блоки сохранены в " + quarantine
+          + " и будут удалены из " + file + " при следующем сохранении.");
+    } catch (IOException e) {
+      throw new IllegalStateException("Невозможно сохранить повреждённые блоки " + file
+          + ": " + e.getMessage() + ". Запустите java LedgerRecovery " + file, e);
+    }
+  }
+
+  /**
+   * Appends the raw lines of corrupt blocks to {@code <file>.corrupt}. Blocks already in the
+   * quarantine file, e.g. from an earlier start that did not save, are not appended again.
+   *
+   * @param file   The damaged data file.
+   * @param blocks The corrupt blocks of the file.
+   * @return The path of the quarantine file.
+   * @throws IOException If the quarantine file cannot be read or written.
+   */
+  static Path quarantine(Path file, List<ChecksummedFile.CorruptBlock> blocks)
+      throws IOException {
+    Path quarantine = file.resolveSibling(file.getFileName() + ".corrupt");
+    String existing = Files.exists(quarantine)
+        ? Files.readString(quarantine, StandardCharsets.UTF_8) : "";
+    StringBuilder dump = new StringBuilder();
+    for (ChecksummedFile.CorruptBlock block : blocks) {
+      StringBuilder entry = new StringBuilder();
+      entry.append("# ").append(block).append('\n');
+      for (String line : block.getRawLines()) {
+        entry.append(line).append('\n');
+      }
+      if (!existing.contains(entry)) {
+        dump.append(entry);
+      }
+    }
+    if (dump.length() > 0) {
+      Files.writeString(quarantine, dump, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    }
+    return quarantine;
+  }
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the ledgers of many tenants (households) in one process.
+ *
+ * <p>Every tenant lives in its own directory {@code <baseDir>/<tenantId>} with its own
+ * {@code expenses.txt} and {@code categories.txt}. At most {@code maxResidentTenants} ledgers
+ * are kept in memory; the least recently used one is saved and evicted when the limit is
+ * exceeded, and reloaded transparently on next access. Ledgers are loaded and saved outside the
+ * registry lock; a tenant whose evicted ledger is still being saved is only reloaded after the
+ * save finished, and an evicted ledger whose changes could not be saved stays resident.
+ */
+public class LedgerRegistry {
+
+  static final String EXPENSES_FILE_NAME = "expenses.txt";
+  static final String CATEGORIES_FILE_NAME = "categories.txt";
+  private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  private final Path baseDir;
+  private final int maxResidentTenants;
+  private final LinkedHashMap<String, Ledger> resident;
+  private final Map<String, Ledger> closing = new HashMap<>();
+  private final Set<String> loading = new HashSet<>();
+
+  /**
+   * Creates a registry over the tenant directories below the given base directory.
+   *
+   * @param baseDir            The directory holding one subdirectory per tenant.
+   * @param maxResidentTenants The maximum number of ledgers kept in memory at the same time.
+   */
+  public LedgerRegistry(Path baseDir, int maxResidentTenants) {
+    if (maxResidentTenants < 1) {
+      throw new IllegalArgumentException("maxResidentTenants must be positive");
+    }
+    this.baseDir = baseDir;
+    this.maxResidentTenants = maxResidentTenants;
+    this.resident = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Runs an action against the ledger of a tenant, loading it if it is not resident. The ledger
+   * cannot be evicted while the action runs, so changes made by the action are never lost.
+   *
+   * @param tenantId The id of the tenant.
+   * @param action   The action to run.
+   * @param <T>      The type of the result of the action.
+   * @return The result of the action.
+   */
+  public <T> T withLedger(String tenantId, Function<Ledger, T> action) {
+    while (true) {
+      Ledger ledger = getLedger(tenantId);
+      synchronized (ledger) {
+        if (!ledger.isClosed()) {
+          ledger.touch();
+          return action.apply(ledger);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the resident ledger of a tenant, loading it outside the registry lock if needed. While
+   * the tenant is being loaded by another thread or its evicted ledger is still being saved, the
+   * caller waits, so there is never more than one ledger per tenant.
+   */
+  private Ledger getLedger(String tenantId) {
+    checkTenantId(tenantId);
+    synchronized (this) {
+      while (true) {
+        Ledger ledger = resident.get(tenantId);
+        if (ledger != null) {
+          return ledger;
+        }
+        if (!loading.contains(tenantId) && !closing.containsKey(tenantId)) {
+          break;
+        }
+        awaitChange();
+      }
+      loading.add(tenantId);
+    }
+    Ledger ledger = null;
+    Map<String, Ledger> evicted = new LinkedHashMap<>();
+    try {
+      ledger = loadLedger(tenantId);
+    } finally {
+      synchronized (this) {
+        loading.remove(tenantId);
+        if (ledger != null) {
+          resident.put(tenantId, ledger);
+          Iterator<Map.Entry<String, Ledger>> eldest = resident.entrySet().iterator();
+          while (resident.size() > maxResidentTenants) {
+            Map.Entry<String, Ledger> entry = eldest.next();
+            evicted.put(entry.getKey(), entry.getValue());
+            closing.put(entry.getKey(), entry.getValue());
+            eldest.remove();
+          }
+        }
+        notifyAll();
+      }
+    }
+    closeEvicted(evicted);
+    return ledger;
+  }
+
+  /**
+   * Saves and closes evicted ledgers. Each one stays in {@code closing} until its save finished,
+   * and goes back to the resident ledgers if its changes could not be saved.
+   *
+   * @return The number of closed ledgers.
+   */
+  private int closeEvicted(Map<String, Ledger> evicted) {
+    int closedCount = 0;
+    for (Map.Entry<String, Ledger> entry : evicted.entrySet()) {
+      boolean closed = false;
+      try {
+        closed = entry.getValue().close();
+      } finally {
+        synchronized (this) {
+          closing.remove(entry.getKey());
+          if (closed) {
+            closedCount++;
+          } else {
+            resident.put(entry.getKey(), entry.getValue());
+          }
+          notifyAll();
+        }
+      }
+    }
+    return closedCount;
+  }
+
+  /**
+   * Waits for a tenant to finish loading or closing, keeping the interrupt status.
+   */
+  private void awaitChange() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Ожидание журнала клиента прервано", e);
+    }
+  }
+
+  private Ledger loadLedger(String tenantId) {
+    Path tenantDir = baseDir.resolve(tenantId);
+    try {
+      Files.createDirectories(tenantDir);
+    } catch (IOException e) {
+      System.err.println("Невозможно создать каталог клиента " + tenantId + ": " + e.getMessage());
+    }
+    ExpenseCategoryManager categoryManager =
+        new ExpenseCategoryManager(tenantDir.resolve(CATEGORIES_FILE_NAME).toString());
+    return new Ledger(tenantDir.resolve(EXPENSES_FILE_NAME).toString(), categoryManager);
+  }
+
+  /**
+   * Saves and evicts every resident ledger that has not been accessed for the given time. Ledgers
+   * whose changes could not be saved stay resident.
+   *
+   * @param maxIdle The maximum idle time of a resident ledger.
+   * @return The number of evicted ledgers.
+   */
+  public int evictIdle(Duration maxIdle) {
+    long deadline = System.nanoTime() - maxIdle.toNanos();
+    Map<String, Ledger> evicted = new LinkedHashMap<>();
+    synchronized (this) {
+      Iterator<Map.Entry<String, Ledger>> iterator = resident.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Ledger> entry = iterator.next();
+        if (entry.getValue().getLastAccessNanos() - deadline < 0) {
+          evicted.put(entry.getKey(), entry.getValue());
+          closing.put(entry.getKey(), entry.getValue());
+          iterator.remove();
+        }
+      }
+    }
+    return closeEvicted(evicted);
+  }
+
+  /**
+   * Saves every resident ledger with pending changes.
+   */
+  public void saveAll() {
+    List<Ledger> ledgers;
+    synchronized (this) {
+      ledgers = new ArrayList<>(resident.values());
+    }
+    for (Ledger ledger : ledgers) {
+      synchronized (ledger) {
+        if (ledger.isDirty()) {
+          ledger.save();
+        }
+      }
+    }
+  }
+
+  public synchronized int getResidentCount() {
+    return resident.size();
+  }
+
+  /**
+   * Lists the ids of all tenants that have a directory below the base directory.
+   *
+   * @return The tenant ids.
+   */
+  public List<String> getTenantIds() {
+    List<String> tenantIds = new ArrayList<>();
+    if (!Files.isDirectory(baseDir)) {
+      return tenantIds;
+    }
+    try (Stream<Path> dirs = Files.list(baseDir)) {
+      dirs.filter(Files::isDirectory)
+          .map(dir -> dir.getFileName().toString())
+          .filter(id -> TENANT_ID.matcher(id).matches())
+          .sorted()
+          .forEach(tenantIds::add);
+    } catch (IOException e) {
+      System.err.println("Невозможно получить список клиентов: " + e.getMessage());
+    }
+    return tenantIds;
+  }
+
+  /**
+   * Computes the total spend per category over all tenants in the base currency, converted with
+   * the exchange rates of each tenant. Tenants are processed in parallel;
+   * resident ledgers are read in memory, while the others are read from disk without being made
+   * resident, so memory stays bounded by the number of worker threads.
+   *
+   * @return The total spend per category.
+   */
+  public Map<String, Double> getTotalsByCategoryAcrossTenants() {
+    return getTenantIds().parallelStream()
+        .map(this::getTotalsByCategory)
+        .reduce(new HashMap<>(), LedgerRegistry::mergeTotals, LedgerRegistry::mergeTotals);
+  }
+
+  private Map<String, Double> getTotalsByCategory(String tenantId) {
+    Ledger ledger;
+    synchronized (this) {
+      ledger = resident.get(tenantId);
+      if (ledger == null) {
+        ledger = closing.get(tenantId);
+      }
+    }
+    if (ledger != null) {
+      synchronized (ledger) {
+        if (!ledger.isClosed()) {
+          return sumByCategory(ledger.getExpenses(), ledger.getFxRates());
+        }
+      }
+    }
+    Path tenantDir = baseDir.resolve(tenantId);
+    FxRateTable fxRates = new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY,
+        tenantDir.resolve(Ledger.FX_RATES_FILE_NAME).toString());
+    return sumByCategory(
+        Expense.loadExpensesFromFile(tenantDir.resolve(EXPENSES_FILE_NAME).toString()), fxRates);
+  }
+
+  private static Map<String, Double> sumByCategory(List<Expense> expenses, FxRateTable fxRates) {
+    Map<String, Double> totals = new HashMap<>();
+    boolean missingRate = false;
+    for (Expense expense : expenses) {
+      double amount = fxRates.toBase(expense);
+      if (Double.isNaN(amount)) {
+        missingRate = true;
+      } else {
+        totals.merge(expense.getCategory(), amount, Double::sum);
+      }
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, они не учтены в итогах.");
+    }
+    return totals;
+  }
+
+  private static Map<String, Double> mergeTotals(Map<String, Double> left,
+      Map<String, Double> right) {
+    Map<String, Double> merged = new HashMap<>(left);
+    right.forEach((category, total) -> merged.merge(category, total, Double::sum));
+    return merged;
+  }
+
+  private static String checkTenantId(String tenantId) {
+    if (tenantId == null || !TENANT_ID.matcher(tenantId).matches()) {
+      throw new IllegalArgumentException("Недопустимый идентификатор клиента: " + tenantId);
+    }
+    return tenantId;
+  }
+}
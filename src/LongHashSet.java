@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash set of primitive longs with linear probing.
+ *
+ * <p>Values are stored directly in a {@code long[]} table without boxing, which takes about
+ * 11-21 bytes per element depending on the fill level. Zero marks empty slots and is tracked
+ * separately. The table has at most 2^30 slots, so a set holds at most about 805 million
+ * elements; adding more fails with an {@link IllegalStateException}.
+ */
+public class LongHashSet {
+
+  private static final long EMPTY = 0L;
+  private static final float LOAD_FACTOR = 0.75f;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private final int maxCapacity;
+  private long[] table;
+  private int mask;
+  private int size;
+  private int resizeAt;
+  private boolean containsZero;
+
+  /**
+   * Creates a set that can hold the given number of elements without resizing.
+   *
+   * @param expectedSize The expected number of elements.
+   */
+  public LongHashSet(int expectedSize) {
+    this(expectedSize, MAX_CAPACITY);
+  }
+
+  LongHashSet(int expectedSize, int maxCapacity) {
+    this.maxCapacity = maxCapacity;
+    allocate(tableSizeFor(expectedSize, maxCapacity));
+  }
+
+  /**
+   * Adds a value to the set.
+   *
+   * @param value The value to add.
+   * @return True if the value was not already present.
+   * @throws IllegalStateException If the value is new and the table cannot grow any further.
+   */
+  public boolean add(long value) {
+    if (value == EMPTY) {
+      boolean added = !containsZero;
+      containsZero = true;
+      return added;
+    }
+    int slot = slot(value);
+    while (true) {
+      long current = table[slot];
+      if (current == EMPTY) {
+        if (size == resizeAt && table.length == maxCapacity) {
+          throw new IllegalStateException("Множество заполнено: не более " + resizeAt
+              + " элементов");
+        }
+        table[slot] = value;
+        if (++size > resizeAt) {
+          rehash(table.length << 1);
+        }
+        return true;
+      }
+      if (current == value) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * @param value The value to look up.
+   * @return True if the value is in the set.
+   */
+  public boolean contains(long value) {
+    if (value == EMPTY) {
+      return containsZero;
+    }
+    int slot = slot(value);
+    while (true) {
+      long current = table[slot];
+      if (current == value) {
+        return true;
+      }
+      if (current == EMPTY) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  public int size() {
+    return size + (containsZero ? 1 : 0);
+  }
+
+  public void clear() {
+    Arrays.fill(table, EMPTY);
+    size = 0;
+    containsZero = false;
+  }
+
+  private int slot(long value) {
+    return (int) mix(value) & mask;
+  }
+
+  /**
+   * Scrambles the bits of a value so that sequential values spread over the table.
+   *
+   * @param value The value to scramble.
+   * @return The scrambled value.
+   */
+  static long mix(long value) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 32);
+  }
+
+  private void rehash(int newCapacity) {
+    long[] old = table;
+    allocate(newCapacity);
+    for (long value : old) {
+      if (value != EMPTY) {
+        int slot = slot(value);
+        while (table[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    table = new long[capacity];
+    mask = capacity - 1;
+    resizeAt = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int tableSizeFor(int expectedSize, int maxCapacity) {
+    long needed = (long) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+    long capacity = Long.highestOneBit(needed - 1) << 1;
+    if (capacity > maxCapacity) {
+      throw new IllegalArgumentException("Слишком большой размер множества: " + expectedSize);
+    }
+    return (int) Math.max(capacity, 4);
+  }
+}
@@ -0,0 +1,275 @@
+import java.util.List;
+
+/**
+ * A rule for an expense that repeats weekly or monthly, e.g. rent on the 15th of every month.
+ *
+ * <p>All dates are handled as epoch days. The rule remembers the next occurrence that has not been
+ * materialized into the ledger yet; occurrences after that can be counted without storing them.
+ */
+public class RecurringExpense {
+
+  /**
+   * Marker for rules without an end date.
+   */
+  public static final int NO_END = Integer.MAX_VALUE;
+
+  public enum Frequency {
+    WEEKLY,
+    MONTHLY
+  }
+
+  private final String category;
+  private final double amount;
+  private final Frequency frequency;
+  private final int dayOfMonth;
+  private final int startDay;
+  private final int endDay;
+  private final String note;
+  private int nextDueDay;
+
+  /**
+   * Creates a rule whose first occurrence is on or after its start day.
+   *
+   * @param category   The category of the generated expenses.
+   * @param amount     The amount of every occurrence.
+   * @param frequency  How often the expense repeats.
+   * @param dayOfMonth The day of the month for monthly rules; clamped to the length of short
+   *                   months. Ignored for weekly rules, which repeat on the weekday of the start.
+   * @param startDay   The epoch day from which the rule is active.
+   * @param endDay     The last epoch day on which the rule is active, or {@link #NO_END}.
+   */
+  public RecurringExpense(String category, double amount, Frequency frequency, int dayOfMonth,
+      int startDay, int endDay) {
+    this(category, amount, frequency, dayOfMonth, startDay, endDay, null);
+  }
+
+  /**
+   * Creates a rule whose first occurrence is on or after its start day and whose occurrences carry
+   * a note.
+   *
+   * @param category   The category of the generated expenses.
+   * @param amount     The amount of every occurrence.
+   * @param frequency  How often the expense repeats.
+   * @param dayOfMonth The day of the month for monthly rules, see
+   *                   {@link #RecurringExpense(String, double, Frequency, int, int, int)}.
+   * @param startDay   The epoch day from which the rule is active.
+   * @param endDay     The last epoch day on which the rule is active, or {@link #NO_END}.
+   * @param note       The note of the generated expenses, or null.
+   */
+  public RecurringExpense(String category, double amount, Frequency frequency, int dayOfMonth,
+      int startDay, int endDay, String note) {
+    this(category, amount, frequency, dayOfMonth, startDay, endDay, note, Expense.INVALID_DAY);
+  }
+
+  RecurringExpense(String category, double amount, Frequency frequency, int dayOfMonth,
+      int startDay, int endDay, String note, int nextDueDay) {
+    if (frequency == Frequency.MONTHLY && (dayOfMonth < 1 || dayOfMonth > 31)) {
+      throw new IllegalArgumentException("Неверный день месяца: " + dayOfMonth);
+    }
+    this.category = category;
+    this.amount = amount;
+    this.frequency = frequency;
+    this.dayOfMonth = dayOfMonth;
+    this.startDay = startDay;
+    this.endDay = endDay;
+    this.note = note == null || note.isEmpty() ? null : note;
+    this.nextDueDay = nextDueDay == Expense.INVALID_DAY
+        ? firstOccurrenceOnOrAfter(startDay) : nextDueDay;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  public double getAmount() {
+    return amount;
+  }
+
+  public Frequency getFrequency() {
+    return frequency;
+  }
+
+  public int getDayOfMonth() {
+    return dayOfMonth;
+  }
+
+  public int getStartDay() {
+    return startDay;
+  }
+
+  public int getEndDay() {
+    return endDay;
+  }
+
+  /**
+   * @return The note of the generated expenses, or null.
+   */
+  public String getNote() {
+    return note;
+  }
+
+  /**
+   * @return The epoch day of the first occurrence that has not been materialized yet.
+   */
+  public int getNextDueDay() {
+    return nextDueDay;
+  }
+
+  /**
+   * Counts the occurrences of this rule between two days without generating them.
+   *
+   * @param fromDay The first epoch day of the range, inclusive.
+   * @param toDay   The last epoch day of the range, inclusive.
+   * @return The number of occurrences in the range.
+   */
+  public long countOccurrences(int fromDay, int toDay) {
+    int from = Math.max(fromDay, startDay);
+    int to = Math.min(toDay, endDay);
+    if (from > to) {
+      return 0;
+    }
+    if (frequency == Frequency.WEEKLY) {
+      int first = firstOccurrenceOnOrAfter(from);
+      return first > to ? 0 : (to - first) / 7 + 1;
+    }
+    int fromMonth = monthIndex(from);
+    int toMonth = monthIndex(to);
+    long count = toMonth - fromMonth + 1;
+    if (occurrenceInMonth(fromMonth) < from) {
+      count--;
+    }
+    if (occurrenceInMonth(toMonth) > to) {
+      count--;
+    }
+    return Math.max(count, 0);
+  }
+
+  /**
+   * Generates the expenses of all occurrences due up to the given day and advances the next due
+   * day past them.
+   *
+   * @param upToDay   The last epoch day to materialize, inclusive.
+   * @param out       The list receiving the generated expenses.
+   * @param dateCache Formatted dates indexed by {@code epochDay - cacheBase}; entries are filled on
+   *                  demand so that rules sharing a date share one string.
+   * @param cacheBase The epoch day of the first entry of {@code dateCache}.
+   * @param idPrefix  The prefix of the external ids of the generated expenses, completed by their
+   *                  date, see {@link #occurrenceIdPrefix()}; null to generate them without ids.
+   * @return The number of generated expenses.
+   */
+  int materialize(int upToDay, List<Expense> out, String[] dateCache, int cacheBase,
+      String idPrefix) {
+    int limit = Math.min(upToDay, endDay);
+    int generated = 0;
+    int day = nextDueDay;
+    if (frequency == Frequency.WEEKLY) {
+      for (; day <= limit; day += 7) {
+        out.add(newOccurrence(day, dateCache, cacheBase, idPrefix));
+        generated++;
+      }
+    } else if (day <= limit) {
+      int month = monthIndex(day);
+      while (day <= limit) {
+        out.add(newOccurrence(day, dateCache, cacheBase, idPrefix));
+        generated++;
+        day = occurrenceInMonth(++month);
+      }
+    }
+    nextDueDay = day;
+    return generated;
+  }
+
+  /**
+   * Returns the prefix of the external ids of this rule's occurrences. It depends only on the
+   * fields that define the rule, so an occurrence generated twice gets the same id and is
+   * recognized as a duplicate.
+   */
+  String occurrenceIdPrefix() {
+    return "rec:" + category + "/" + amount + "/" + frequency + "/" + dayOfMonth + "/"
+        + Expense.formatEpochDay(startDay) + "/";
+  }
+
+  private Expense newOccurrence(int day, String[] dateCache, int cacheBase, String idPrefix) {
+    int slot = day - cacheBase;
+    String date;
+    if (dateCache != null && slot >= 0 && slot < dateCache.length) {
+      date = dateCache[slot];
+      if (date == null) {
+        date = Expense.formatEpochDay(day);
+        dateCache[slot] = date;
+      }
+    } else {
+      date = Expense.formatEpochDay(day);
+    }
+    return new Expense(category, amount, date, idPrefix == null ? null : idPrefix + date, note,
+        null, day);
+  }
+
+  private int firstOccurrenceOnOrAfter(int day) {
+    if (frequency == Frequency.WEEKLY) {
+      int offset = Math.max(day - startDay, 0);
+      return startDay + (offset + 6) / 7 * 7;
+    }
+    int month = monthIndex(day);
+    int occurrence = occurrenceInMonth(month);
+    return occurrence >= day ? occurrence : occurrenceInMonth(month + 1);
+  }
+
+  private int occurrenceInMonth(int monthIndex) {
+    int year = Math.floorDiv(monthIndex, 12);
+    int month = Math.floorMod(monthIndex, 12) + 1;
+    return Expense.toEpochDay(year, month, Math.min(dayOfMonth, Expense.lengthOfMonth(year, month)));
+  }
+
+  private static int monthIndex(int epochDay) {
+    return Expense.toMonthIndex(epochDay);
+  }
+
+  /**
+   * Formats this rule as a single line of the rules file:
+   * {@code category amount frequency dayOfMonth start end nextDue [note=...]}, with {@code -} for
+   * no end and the note escaped like in the expenses file.
+   *
+   * @return The line representation of this rule.
+   */
+  public String toLine() {
+    StringBuilder line = new StringBuilder(64);
+    line.append(category).append(' ').append(amount).append(' ').append(frequency).append(' ')
+        .append(dayOfMonth).append(' ').append(Expense.formatEpochDay(startDay)).append(' ')
+        .append(endDay == NO_END ? "-" : Expense.formatEpochDay(endDay)).append(' ')
+        .append(Expense.formatEpochDay(nextDueDay));
+    if (note != null) {
+      line.append(" note=");
+      Expense.escape(note, line);
+    }
+    return line.toString();
+  }
+
+  /**
+   * Parses a single line of the rules file.
+   *
+   * @param line The line to parse.
+   * @return The parsed rule.
+   * @throws IllegalArgumentException If the line does not contain a valid rule.
+   */
+  public static RecurringExpense parse(String line) {
+    String[] parts = line.split(" ");
+    if (parts.length != 7 && (parts.length != 8 || !parts[7].startsWith("note="))) {
+      throw new IllegalArgumentException("Неверное правило: " + line);
+    }
+    int startDay = parseDay(parts[4]);
+    int endDay = parts[5].equals("-") ? NO_END : parseDay(parts[5]);
+    String note = parts.length == 8 ? Expense.unescape(parts[7].substring(5)) : null;
+    return new RecurringExpense(parts[0], Double.parseDouble(parts[1]),
+        Frequency.valueOf(parts[2]), Integer.parseInt(parts[3]), startDay, endDay, note,
+        parseDay(parts[6]));
+  }
+
+  private static int parseDay(String date) {
+    int day = Expense.parseEpochDay(date);
+    if (day == Expense.INVALID_DAY) {
+      throw new IllegalArgumentException("Неверная дата: " + date);
+    }
+    return day;
+  }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the recurring expense rules of a ledger and materializes their occurrences into it.
+ *
+ * <p>Occurrences are generated lazily: only when {@link #materializeUpTo(int, Ledger)} is called,
+ * and only up to the given day. Future occurrences are counted arithmetically by
+ * {@link #getScheduledTotal(int, int)} without being stored.
+ */
+public class RecurringExpenseScheduler {
+
+  private static final int MAX_DATE_CACHE_DAYS = 1 << 16;
+
+  private final String rulesFilePath;
+  private final List<RecurringExpense> rules = new ArrayList<>();
+
+  /**
+   * Creates a scheduler and loads its rules from the given file, if it exists.
+   *
+   * @param rulesFilePath The path to the file where the rules are stored.
+   */
+  public RecurringExpenseScheduler(String rulesFilePath) {
+    this.rulesFilePath = rulesFilePath;
+    loadRules();
+  }
+
+  public synchronized List<RecurringExpense> getRules() {
+    return Collections.unmodifiableList(new ArrayList<>(rules));
+  }
+
+  /**
+   * Adds a rule and saves the rules file.
+   *
+   * @param rule The rule to add.
+   */
+  public synchronized void addRule(RecurringExpense rule) {
+    rules.add(rule);
+    saveRules();
+  }
+
+  /**
+   * Removes a rule and saves the rules file. Occurrences already materialized stay in the ledger.
+   *
+   * @param rule The rule to remove.
+   * @return True if the rule was removed.
+   */
+  public synchronized boolean removeRule(RecurringExpense rule) {
+    boolean removed = rules.remove(rule);
+    if (removed) {
+      saveRules();
+    }
+    return removed;
+  }
+
+  /**
+   * Generates every occurrence due up to the given day, adds them to the ledger as one batch, and
+   * saves the ledger and then the rules once.
+   *
+   * <p>If the process stops between the two writes, the rules still point at the old due days and
+   * the last batch is generated again on next start. Every occurrence therefore carries an external
+   * id made of its rule and date, and the batch is added through
+   * {@link Ledger#importExpenses(List)}, which skips the occurrences already in the ledger.
+   * Identical rules are told apart by their position among each other.
+   *
+   * @param today  The last epoch day to materialize, inclusive.
+   * @param ledger The ledger receiving the generated expenses.
+   * @return The number of generated expenses that were not in the ledger yet.
+   */
+  public synchronized int materializeUpTo(int today, Ledger ledger) {
+    long total = 0;
+    int firstDue = Integer.MAX_VALUE;
+    for (RecurringExpense rule : rules) {
+      if (rule.getNextDueDay() <= today) {
+        total += rule.countOccurrences(rule.getNextDueDay(), today);
+        firstDue = Math.min(firstDue, rule.getNextDueDay());
+      }
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    List<Expense> batch = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE - 8));
+    long span = (long) today - firstDue + 1;
+    String[] dateCache = span <= MAX_DATE_CACHE_DAYS ? new String[(int) span] : null;
+    Map<String, Integer> identicalRules = new HashMap<>();
+    for (RecurringExpense rule : rules) {
+      String idPrefix = rule.occurrenceIdPrefix();
+      int ordinal = identicalRules.merge(idPrefix, 1, Integer::sum) - 1;
+      if (ordinal > 0) {
+        idPrefix += ordinal + "/";
+      }
+      rule.materialize(today, batch, dateCache, firstDue, idPrefix);
+    }
+    int added = ledger.importExpenses(batch);
+    ledger.save();
+    saveRules();
+    return added;
+  }
+
+  /**
+   * Computes the total of all occurrences between two days that have not been materialized yet,
+   * without generating them.
+   *
+   * @param fromDay The first epoch day of the range, inclusive.
+   * @param toDay   The last epoch day of the range, inclusive.
+   * @return The total amount of the scheduled occurrences.
+   */
+  public synchronized double getScheduledTotal(int fromDay, int toDay) {
+    double total = 0.0;
+    for (RecurringExpense rule : rules) {
+      total += rule.getAmount()
+          * rule.countOccurrences(Math.max(fromDay, rule.getNextDueDay()), toDay);
+    }
+    return total;
+  }
+
+  /**
+   * Computes the same totals as {@link #getScheduledTotal(int, int)}, grouped by category.
+   *
+   * @param fromDay The first epoch day of the range, inclusive.
+   * @param toDay   The last epoch day of the range, inclusive.
+   * @return The total amount of the scheduled occurrences per category.
+   */
+  public synchronized Map<String, Double> getScheduledTotalsByCategory(int fromDay, int toDay) {
+    Map<String, Double> totals = new HashMap<>();
+    for (RecurringExpense rule : rules) {
+      long count = rule.countOccurrences(Math.max(fromDay, rule.getNextDueDay()), toDay);
+      if (count > 0) {
+        totals.merge(rule.getCategory(), rule.getAmount() * count, Double::sum);
+      }
+    }
+    return totals;
+  }
+
+  private void loadRules() {
+    try {
+      ChecksummedFile.Content content = ChecksummedFile.read(Path.of(rulesFilePath));
+      LedgerRecovery.quarantineOnLoad(Path.of(rulesFilePath), content);
+      for (String line : content.getLines()) {
+        try {
+          rules.add(RecurringExpense.parse(line));
+        } catch (IllegalArgumentException e) {
+          System.err.println("Пропущено некорректное правило: " + line);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // no rules defined yet
+    } catch (IOException e) {
+      System.err.println("Ошибка при чтении регулярных расходов: " + e.getMessage());
+    }
+  }
+
+  private void saveRules() {
+    List<String> lines = new ArrayList<>(rules.size());
+    for (RecurringExpense rule : rules) {
+      lines.add(rule.toLine());
+    }
+    try {
+      ChecksummedFile.writeAtomically(Path.of(rulesFilePath), lines);
+    } catch (IOException e) {
+      System.err.println("Ошибка при записи регулярных расходов: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,371 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rolling spend over the last N days (e.g. 7, 30 and 365), per category and in total.
+ *
+ * <p>Every category keeps a ring buffer of daily sums as long as the longest window, indexed by
+ * epoch day modulo its length, and one running sum per window. The windows end at the current
+ * day, the latest day the aggregator was advanced to; queries pass today and advance it, so the
+ * windows keep moving in a long-running process. Expenses dated after the current day are held
+ * back in a queue ordered by day and enter the windows once the current day reaches theirs.
+ * Advancing by a day subtracts the day that falls out of each window and clears its bucket, and
+ * recording an expense adds its amount to its bucket and to the windows that contain its day, so
+ * both take constant time per window and answers are read off the running sums. Categories catch
+ * up with the current day lazily, when they are next read or written. Amounts are summed in the
+ * base currency, converted with the rate of their day; expenses without a rate are reported and
+ * left out.
+ */
+public class RollingWindows implements ExpenseListener {
+
+  /**
+   * The default window lengths in days.
+   */
+  public static final int[] DEFAULT_WINDOWS = {7, 30, 365};
+
+  private final FxRateTable fxRates;
+  private final int[] windows;
+  private final int capacity;
+  private final Map<String, Series> categories = new HashMap<>();
+  private final Series total;
+  private final TreeMap<Integer, List<Pending>> future = new TreeMap<>();
+  private int currentDay = Integer.MIN_VALUE;
+
+  /**
+   * A converted amount dated after the current day.
+   */
+  private record Pending(String category, double amount) {
+  }
+
+  /**
+   * Creates an aggregator that only converts the base currency.
+   *
+   * @param windows The window lengths in days.
+   */
+  public RollingWindows(int... windows) {
+    this(new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY), windows);
+  }
+
+  /**
+   * Creates an aggregator.
+   *
+   * @param fxRates The exchange rates into the base currency.
+   * @param windows The window lengths in days.
+   */
+  public RollingWindows(FxRateTable fxRates, int... windows) {
+    this.fxRates = fxRates;
+    if (windows.length == 0) {
+      throw new IllegalArgumentException("Не задано ни одного окна");
+    }
+    this.windows = windows.clone();
+    Arrays.sort(this.windows);
+    if (this.windows[0] < 1) {
+      throw new IllegalArgumentException("Длина окна должна быть положительной: "
+          + this.windows[0]);
+    }
+    this.capacity = this.windows[this.windows.length - 1];
+    this.total = new Series();
+  }
+
+  /**
+   * Creates an aggregator with the default windows over expenses in the base currency only.
+   *
+   * @param expenses The expenses to record, in any order.
+   * @param today    The epoch day the windows should end at, at least.
+   * @return The aggregator.
+   */
+  public static RollingWindows of(List<Expense> expenses, int today) {
+    return of(expenses, new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY), today);
+  }
+
+  /**
+   * Creates an aggregator with the default windows and records the given expenses.
+   *
+   * @param expenses The expenses to record, in any order.
+   * @param fxRates  The exchange rates into the base currency.
+   * @param today    The epoch day the windows should end at, at least.
+   * @return The aggregator.
+   */
+  public static RollingWindows of(List<Expense> expenses, FxRateTable fxRates, int today) {
+    RollingWindows rollingWindows = new RollingWindows(fxRates, DEFAULT_WINDOWS);
+    rollingWindows.advanceTo(today);
+    int missingRates = 0;
+    for (Expense expense : expenses) {
+      if (!rollingWindows.record(expense)) {
+        missingRates++;
+      }
+    }
+    if (missingRates > 0) {
+      System.err.println("Нет курса для " + missingRates
+          + " расходов в других валютах, они не учтены в скользящих суммах.");
+    }
+    return rollingWindows;
+  }
+
+  /**
+   * @return The epoch day the windows end at.
+   */
+  public synchronized int getCurrentDay() {
+    return currentDay;
+  }
+
+  /**
+   * Moves the end of the windows forward to the given day; earlier days are ignored. Expenses
+   * held back up to the day enter the windows, and the series of each category catches up when
+   * it is next read or written.
+   *
+   * @param day The epoch day.
+   */
+  public synchronized void advanceTo(int day) {
+    if (day <= currentDay) {
+      return;
+    }
+    currentDay = day;
+    while (!future.isEmpty() && future.firstKey() <= day) {
+      Map.Entry<Integer, List<Pending>> due = future.pollFirstEntry();
+      for (Pending pending : due.getValue()) {
+        add(pending.category(), due.getKey(), pending.amount());
+      }
+    }
+  }
+
+  /**
+   * Records an expense. Expenses older than the longest window are ignored, and expenses dated
+   * after the current day are held back until the windows reach their day.
+   *
+   * @param expense The expense.
+   */
+  @Override
+  public synchronized void onExpenseAdded(Expense expense) {
+    if (!record(expense)) {
+      System.err.println("Нет курса " + expense.getCurrency() + " на " + expense.getDate()
+          + ", расход не учтён в скользящих суммах.");
+    }
+  }
+
+  /**
+   * Records an expense in the base currency.
+   *
+   * @return False if the expense has no exchange rate for its day.
+   */
+  private synchronized boolean record(Expense expense) {
+    int day = expense.getEpochDay();
+    if (day == Expense.INVALID_DAY) {
+      return true;
+    }
+    double amount = fxRates.toBase(expense);
+    if (Double.isNaN(amount)) {
+      return false;
+    }
+    if (day > currentDay) {
+      future.computeIfAbsent(day, d -> new ArrayList<>())
+          .add(new Pending(expense.getCategory(), amount));
+    } else {
+      add(expense.getCategory(), day, amount);
+    }
+    return true;
+  }
+
+  private void add(String category, int day, double amount) {
+    if ((long) currentDay - day >= capacity) {
+      return;
+    }
+    Series series = categories.get(category);
+    if (series == null) {
+      series = new Series();
+      categories.put(category, series);
+    }
+    series.add(day, amount);
+    total.add(day, amount);
+  }
+
+  /**
+   * @param category   The category, or null for all categories.
+   * @param windowDays One of the window lengths.
+   * @param today      The epoch day of today; the windows are advanced to it.
+   * @return The spend over the last {@code windowDays} days up to today, or up to the current
+   *     day if the windows were already advanced past today.
+   */
+  public synchronized double getSum(String category, int windowDays, int today) {
+    advanceTo(today);
+    return getSum(category, windowDays);
+  }
+
+  /**
+   * @param category   The category, or null for all categories.
+   * @param windowDays One of the window lengths.
+   * @return The spend over the last {@code windowDays} days up to the current day.
+   */
+  public synchronized double getSum(String category, int windowDays) {
+    int window = windowIndex(windowDays);
+    Series series = category == null ? total : categories.get(category);
+    if (series == null) {
+      return 0.0;
+    }
+    series.advance(currentDay);
+    return series.sums[window];
+  }
+
+  /**
+   * @param category   The category, or null for all categories.
+   * @param windowDays One of the window lengths.
+   * @return The average daily spend over the last {@code windowDays} days.
+   */
+  public double getDailyAverage(String category, int windowDays) {
+    return getSum(category, windowDays) / windowDays;
+  }
+
+  /**
+   * @param category   The category, or null for all categories.
+   * @param windowDays One of the window lengths.
+   * @param today      The epoch day of today; the windows are advanced to it.
+   * @return The average daily spend over the last {@code windowDays} days up to today.
+   */
+  public double getDailyAverage(String category, int windowDays, int today) {
+    return getSum(category, windowDays, today) / windowDays;
+  }
+
+  private int windowIndex(int windowDays) {
+    for (int i = 0; i < windows.length; i++) {
+      if (windows[i] == windowDays) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Нет окна длиной " + windowDays + " дн.");
+  }
+
+  /**
+   * Computes the rolling sum for every day of a period in one pass over a history in the base
+   * currency only.
+   *
+   * @param sortedHistory The expenses sorted by date.
+   * @param category      The category, or null for all categories.
+   * @param windowDays    The window length in days.
+   * @param fromDay       The first epoch day of the series.
+   * @param toDay         The last epoch day of the series.
+   * @return The sum over the {@code windowDays} days ending at each day of the period.
+   * @throws IllegalArgumentException If the history is not sorted by date.
+   */
+  public static double[] rollingSeries(List<Expense> sortedHistory, String category,
+      int windowDays, int fromDay, int toDay) {
+    return rollingSeries(sortedHistory, new FxRateTable(FxRateTable.DEFAULT_BASE_CURRENCY),
+        category, windowDays, fromDay, toDay);
+  }
+
+  /**
+   * Computes the rolling sum in the base currency for every day of a period in one pass over the
+   * history. Expenses without an exchange rate are reported and left out.
+   *
+   * @param sortedHistory The expenses sorted by date.
+   * @param fxRates       The exchange rates into the base currency.
+   * @param category      The category, or null for all categories.
+   * @param windowDays    The window length in days.
+   * @param fromDay       The first epoch day of the series.
+   * @param toDay         The last epoch day of the series.
+   * @return The sum over the {@code windowDays} days ending at each day of the period.
+   * @throws IllegalArgumentException If the history is not sorted by date.
+   */
+  public static double[] rollingSeries(List<Expense> sortedHistory, FxRateTable fxRates,
+      String category, int windowDays, int fromDay, int toDay) {
+    boolean missingRate = false;
+    double[] result = new double[Math.max(0, toDay - fromDay + 1)];
+    double[] buckets = new double[windowDays];
+    double sum = 0.0;
+    int firstDay = fromDay - windowDays + 1;
+    int day = firstDay;
+    int previousDay = Integer.MIN_VALUE;
+    for (Expense expense : sortedHistory) {
+      int expenseDay = expense.getEpochDay();
+      if (expenseDay == Expense.INVALID_DAY) {
+        continue;
+      }
+      if (expenseDay < previousDay) {
+        throw new IllegalArgumentException("История расходов не отсортирована по дате");
+      }
+      previousDay = expenseDay;
+      boolean otherCategory = category != null && !category.equals(expense.getCategory());
+      if (expenseDay < firstDay || otherCategory) {
+        continue;
+      }
+      if (expenseDay > toDay) {
+        break;
+      }
+      double amount = fxRates.toBase(expense);
+      if (Double.isNaN(amount)) {
+        missingRate = true;
+        continue;
+      }
+      for (; day < expenseDay; day++) {
+        sum = emit(result, buckets, sum, day, fromDay, windowDays);
+      }
+      buckets[Math.floorMod(expenseDay, windowDays)] += amount;
+      sum += amount;
+    }
+    for (; day <= toDay; day++) {
+      sum = emit(result, buckets, sum, day, fromDay, windowDays);
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, они не учтены в итогах.");
+    }
+    return result;
+  }
+
+  /**
+   * Records the sum of the window ending at the given day and slides the window past it.
+   */
+  private static double emit(double[] result, double[] buckets, double sum, int day, int fromDay,
+      int windowDays) {
+    if (day >= fromDay) {
+      result[day - fromDay] = sum;
+    }
+    int leaving = Math.floorMod(day + 1, windowDays);
+    sum -= buckets[leaving];
+    buckets[leaving] = 0.0;
+    return sum;
+  }
+
+  /**
+   * The daily buckets and window sums of one category.
+   */
+  private final class Series {
+    private final double[] buckets = new double[capacity];
+    private final double[] sums = new double[windows.length];
+    private int lastDay = currentDay;
+
+    /**
+     * Slides the windows to a later end day. Beyond a full ring everything has left the windows,
+     * so the cost is bounded by the ring length.
+     */
+    void advance(int to) {
+      if (to <= lastDay) {
+        return;
+      }
+      if ((long) to - lastDay >= capacity) {
+        Arrays.fill(buckets, 0.0);
+        Arrays.fill(sums, 0.0);
+      } else {
+        for (int day = lastDay + 1; day <= to; day++) {
+          for (int w = 0; w < windows.length; w++) {
+            sums[w] -= buckets[Math.floorMod(day - windows[w], capacity)];
+          }
+          buckets[Math.floorMod(day, capacity)] = 0.0;
+        }
+      }
+      lastDay = to;
+    }
+
+    void add(int day, double amount) {
+      advance(currentDay);
+      buckets[Math.floorMod(day, capacity)] += amount;
+      for (int w = 0; w < windows.length; w++) {
+        if (currentDay - day < windows[w]) {
+          sums[w] += amount;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Plain loop implementation of {@link AggregationKernels}, used when the Vector API is not
+ * available and for the tails of vector loops.
+ *
+ * <p>A day is in range when {@code day - fromDay} does not exceed {@code toDay - fromDay} as an
+ * unsigned number, which needs a single comparison per row; empty ranges are handled up front.
+ */
+public class ScalarAggregationKernels implements AggregationKernels {
+
+  @Override
+  public double sum(int[] days, double[] amounts, int length, int fromDay, int toDay) {
+    return sum(days, amounts, 0, length, fromDay, toDay);
+  }
+
+  static double sum(int[] days, double[] amounts, int from, int to, int fromDay, int toDay) {
+    int span = toDay - fromDay;
+    double total = 0.0;
+    if (toDay < fromDay) {
+      return total;
+    }
+    for (int i = from; i < to; i++) {
+      if (Integer.compareUnsigned(days[i] - fromDay, span) <= 0) {
+        total += amounts[i];
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public int count(int[] days, int length, int fromDay, int toDay) {
+    return count(days, 0, length, fromDay, toDay);
+  }
+
+  static int count(int[] days, int from, int to, int fromDay, int toDay) {
+    int span = toDay - fromDay;
+    int count = 0;
+    if (toDay < fromDay) {
+      return count;
+    }
+    for (int i = from; i < to; i++) {
+      if (Integer.compareUnsigned(days[i] - fromDay, span) <= 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public double sumCategory(int[] days, double[] amounts, int[] categories, int length,
+      int fromDay, int toDay, int category) {
+    return sumCategory(days, amounts, categories, 0, length, fromDay, toDay, category);
+  }
+
+  static double sumCategory(int[] days, double[] amounts, int[] categories, int from, int to,
+      int fromDay, int toDay, int category) {
+    int span = toDay - fromDay;
+    double total = 0.0;
+    if (toDay < fromDay) {
+      return total;
+    }
+    for (int i = from; i < to; i++) {
+      if (categories[i] == category && Integer.compareUnsigned(days[i] - fromDay, span) <= 0) {
+        total += amounts[i];
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public void sumByCategory(int[] days, double[] amounts, int[] categories, int length,
+      int fromDay, int toDay, double[] totals) {
+    sumByCategory(days, amounts, categories, 0, length, fromDay, toDay, totals);
+  }
+
+  static void sumByCategory(int[] days, double[] amounts, int[] categories, int from, int to,
+      int fromDay, int toDay, double[] totals) {
+    int span = toDay - fromDay;
+    if (toDay < fromDay) {
+      return;
+    }
+    for (int i = from; i < to; i++) {
+      if (Integer.compareUnsigned(days[i] - fromDay, span) <= 0) {
+        totals[categories[i]] += amounts[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Forecasts month-end and year-end spend per category with additive Holt-Winters exponential
+ * smoothing: a level, a damped trend and a weekly season fitted on daily spend.
+ *
+ * <p>The history is turned into one {@code double[]} of daily sums per category in a single pass.
+ * Each series is fitted by a grid search over the smoothing parameters that minimizes the squared
+ * one-step-ahead error; all candidates of the grid are smoothed together in a single pass over
+ * the primitive array, and categories are fitted in parallel. Accuracy can be checked with {@link #backtest(double[], int, int)},
+ * which forecasts held-out months from the data before them.
+ */
+public class SpendingForecaster {
+
+  /**
+   * The number of days of history used for fitting.
+   */
+  public static final int HISTORY_DAYS = 730;
+
+  static final int SEASON_LENGTH = 7;
+  private static final double DAMPING = 0.98;
+  private static final double[] ALPHAS = {0.02, 0.05, 0.1, 0.2, 0.3, 0.5};
+  private static final double[] BETAS = {0.0, 0.01, 0.05};
+  private static final double[] GAMMAS = {0.0, 0.05, 0.15};
+  private static final int GRID_SIZE = ALPHAS.length * BETAS.length * GAMMAS.length;
+  private static final double[] GRID_ALPHAS = new double[GRID_SIZE];
+  private static final double[] GRID_BETAS = new double[GRID_SIZE];
+  private static final double[] GRID_GAMMAS = new double[GRID_SIZE];
+
+  static {
+    int c = 0;
+    for (double alpha : ALPHAS) {
+      for (double beta : BETAS) {
+        for (double gamma : GAMMAS) {
+          GRID_ALPHAS[c] = alpha;
+          GRID_BETAS[c] = beta;
+          GRID_GAMMAS[c++] = gamma;
+        }
+      }
+    }
+  }
+
+  /**
+   * The spend of a category in a period: spent so far and expected by the end of the period.
+   *
+   * @param category The category.
+   * @param spent    The spend from the start of the period up to and including today.
+   * @param expected The spent amount plus the forecast for the remaining days of the period.
+   */
+  public record Forecast(String category, double spent, double expected) {
+  }
+
+  /**
+   * Accuracy of whole-month forecasts on held-out months.
+   *
+   * @param months                      The number of evaluated months.
+   * @param meanAbsoluteError           The mean absolute error of the monthly totals.
+   * @param meanAbsolutePercentageError The mean absolute error relative to the actual totals, over
+   *                                    months with spend.
+   */
+  public record Backtest(int months, double meanAbsoluteError,
+                         double meanAbsolutePercentageError) {
+  }
+
+  /**
+   * A fitted model, able to forecast any number of days past the end of its series.
+   */
+  public static final class Model {
+    private final double level;
+    private final double trend;
+    private final double[] season;
+    private final int nextSeasonIndex;
+
+    private Model(double level, double trend, double[] season, int nextSeasonIndex) {
+      this.level = level;
+      this.trend = trend;
+      this.season = season;
+      this.nextSeasonIndex = nextSeasonIndex;
+    }
+
+    /**
+     * @param days The number of days after the end of the series.
+     * @return The forecast spend over those days; negative daily forecasts count as zero.
+     */
+    public double forecastTotal(int days) {
+      double total = 0.0;
+      double dampedTrend = 0.0;
+      double damping = 1.0;
+      for (int h = 1; h <= days; h++) {
+        damping *= DAMPING;
+        dampedTrend += damping * trend;
+        double value = level + dampedTrend + season[(nextSeasonIndex + h - 1) % SEASON_LENGTH];
+        total += Math.max(0.0, value);
+      }
+      return total;
+    }
+  }
+
+  /**
+   * Sums the expenses of every category per day in one pass. Expenses in other currencies without
+   * a rate for their day are reported and left out.
+   *
+   * @param expenses The expenses.
+   * @param fxRates  The rates converting other currencies into the base currency.
+   * @param fromDay  The first epoch day, inclusive.
+   * @param toDay    The last epoch day, inclusive.
+   * @return The daily sums by category, indexed by day minus {@code fromDay}.
+   */
+  public static Map<String, double[]> dailySeries(List<Expense> expenses, FxRateTable fxRates,
+      int fromDay, int toDay) {
+    Map<String, double[]> series = new HashMap<>();
+    int length = toDay - fromDay + 1;
+    String lastCategory = null;
+    double[] lastSeries = null;
+    boolean missingRate = false;
+    for (Expense expense : expenses) {
+      int day = expense.getEpochDay();
+      if (day < fromDay || day > toDay) {
+        continue;
+      }
+      double amount = expense.getAmount();
+      if (!fxRates.isBase(expense.getCurrency())) {
+        amount *= fxRates.rate(expense.getCurrency(), day);
+        if (Double.isNaN(amount)) {
+          missingRate = true;
+          continue;
+        }
+      }
+      if (!expense.getCategory().equals(lastCategory)) {
+        lastCategory = expense.getCategory();
+        lastSeries = series.computeIfAbsent(lastCategory, k -> new double[length]);
+      }
+      lastSeries[day - fromDay] += amount;
+    }
+    if (missingRate) {
+      System.err.println("Нет курса для части расходов в других валютах, "
+          + "они не учтены в прогнозе.");
+    }
+    return series;
+  }
+
+  /**
+   * Forecasts the spend of every category at the end of a period that contains today.
+   *
+   * @param expenses    The expense history.
+   * @param fxRates     The rates converting other currencies into the base currency.
+   * @param today       The last epoch day with known spend.
+   * @param periodStart The first epoch day of the period.
+   * @param periodEnd   The last epoch day of the period.
+   * @return The forecasts by category, ordered by category name.
+   */
+  public static Map<String, Forecast> forecastPeriod(List<Expense> expenses, FxRateTable fxRates,
+      int today, int periodStart, int periodEnd) {
+    int historyStart = Math.min(periodStart, today - HISTORY_DAYS + 1);
+    Map<String, double[]> series = dailySeries(expenses, fxRates, historyStart, today);
+    List<String> categories = new ArrayList<>(series.keySet());
+    categories.sort(null);
+    Forecast[] forecasts = new Forecast[categories.size()];
+    IntStream.range(0, categories.size()).parallel().forEach(i -> {
+      double[] daily = series.get(categories.get(i));
+      double spent = 0.0;
+      for (int day = periodStart; day <= today; day++) {
+        spent += daily[day - historyStart];
+      }
+      double remaining = fit(daily).forecastTotal(periodEnd - today);
+      forecasts[i] = new Forecast(categories.get(i), spent, spent + remaining);
+    });
+    Map<String, Forecast> result = new LinkedHashMap<>();
+    for (Forecast forecast : forecasts) {
+      result.put(forecast.category(), forecast);
+    }
+    return result;
+  }
+
+  /**
+   * Forecasts the spend of every category at the end of the month containing today.
+   */
+  public static Map<String, Forecast> forecastMonthEnd(List<Expense> expenses,
+      FxRateTable fxRates, int today) {
+    int monthIndex = Expense.toMonthIndex(today);
+    int year = monthIndex / 12;
+    int month = monthIndex % 12 + 1;
+    return forecastPeriod(expenses, fxRates, today, Expense.toEpochDay(year, month, 1),
+        Expense.toEpochDay(year, month, Expense.lengthOfMonth(year, month)));
+  }
+
+  /**
+   * Forecasts the spend of every category at the end of the year containing today.
+   */
+  public static Map<String, Forecast> forecastYearEnd(List<Expense> expenses, FxRateTable fxRates,
+      int today) {
+    int year = Expense.toMonthIndex(today) / 12;
+    return forecastPeriod(expenses, fxRates, today, Expense.toEpochDay(year, 1, 1),
+        Expense.toEpochDay(year, 12, 31));
+  }
+
+  /**
+   * Fits a model to a daily series by grid search over the smoothing parameters.
+   *
+   * @param series The daily spend, oldest first.
+   * @return The model with the smallest squared one-step-ahead error.
+   */
+  public static Model fit(double[] series) {
+    return fit(series, series.length);
+  }
+
+  private static Model fit(double[] series, int length) {
+    if (length < 2 * SEASON_LENGTH) {
+      double mean = 0.0;
+      for (int i = 0; i < length; i++) {
+        mean += series[i];
+      }
+      mean = length == 0 ? 0.0 : mean / length;
+      return new Model(mean, 0.0, new double[SEASON_LENGTH], 0);
+    }
+    int candidates = GRID_ALPHAS.length;
+    double level = 0.0;
+    for (int i = 0; i < SEASON_LENGTH; i++) {
+      level += series[i];
+    }
+    level /= SEASON_LENGTH;
+    double secondSeason = 0.0;
+    for (int i = SEASON_LENGTH; i < 2 * SEASON_LENGTH; i++) {
+      secondSeason += series[i];
+    }
+    double[] levels = new double[candidates];
+    double[] trends = new double[candidates];
+    double[] errors = new double[candidates];
+    double[] seasons = new double[candidates * SEASON_LENGTH];
+    Arrays.fill(levels, level);
+    Arrays.fill(trends, (secondSeason / SEASON_LENGTH - level) / SEASON_LENGTH);
+    for (int c = 0; c < candidates; c++) {
+      for (int i = 0; i < SEASON_LENGTH; i++) {
+        seasons[c * SEASON_LENGTH + i] = series[i] - level;
+      }
+    }
+    smooth(series, length, levels, trends, seasons, errors);
+    int best = 0;
+    for (int c = 1; c < candidates; c++) {
+      if (errors[c] < errors[best]) {
+        best = c;
+      }
+    }
+    double[] season = Arrays.copyOfRange(seasons, best * SEASON_LENGTH,
+        (best + 1) * SEASON_LENGTH);
+    return new Model(levels[best], trends[best], season, length % SEASON_LENGTH);
+  }
+
+  /**
+   * Runs additive Holt-Winters smoothing with a damped trend over the series, for every candidate
+   * of the parameter grid at once. The candidates are independent, so interleaving them per day
+   * keeps the processor busy instead of waiting on the chain of updates of a single one.
+   *
+   * @param levels  The levels of the candidates, updated in place.
+   * @param trends  The trends of the candidates, updated in place.
+   * @param seasons The seasonal components of the candidates, one season after another, updated in
+   *                place.
+   * @param errors  Receives the sum of squared one-step-ahead errors of every candidate.
+   */
+  private static void smooth(double[] series, int length, double[] levels, double[] trends,
+      double[] seasons, double[] errors) {
+    int candidates = levels.length;
+    for (int t = SEASON_LENGTH, s = 0; t < length; t++, s = s == SEASON_LENGTH - 1 ? 0 : s + 1) {
+      double value = series[t];
+      for (int c = 0, si = s; c < candidates; c++, si += SEASON_LENGTH) {
+        double alpha = GRID_ALPHAS[c];
+        double gamma = GRID_GAMMAS[c];
+        double level = levels[c];
+        double seasonal = seasons[si];
+        double dampedTrend = DAMPING * trends[c];
+        double residual = value - (level + dampedTrend + seasonal);
+        errors[c] += residual * residual;
+        double newLevel = alpha * (value - seasonal) + (1 - alpha) * (level + dampedTrend);
+        trends[c] = GRID_BETAS[c] * (newLevel - level) + (1 - GRID_BETAS[c]) * dampedTrend;
+        seasons[si] = gamma * (value - newLevel) + (1 - gamma) * seasonal;
+        levels[c] = newLevel;
+      }
+    }
+  }
+
+  /**
+   * Forecasts each of the last complete months of a series from the data before it and compares
+   * the forecast totals with the actual ones.
+   *
+   * @param series   The daily spend, oldest first.
+   * @param firstDay The epoch day of the first element of the series.
+   * @param months   The number of held-out months at the end of the series.
+   * @return The accuracy over the held-out months that have history before them.
+   */
+  public static Backtest backtest(double[] series, int firstDay, int months) {
+    int lastDay = firstDay + series.length - 1;
+    int monthIndex = Expense.toMonthIndex(lastDay + 1) - 1;
+    double absoluteError = 0.0;
+    double percentageError = 0.0;
+    int evaluated = 0;
+    int withSpend = 0;
+    for (int m = 0; m < months; m++, monthIndex--) {
+      int year = monthIndex / 12;
+      int month = monthIndex % 12 + 1;
+      int start = Expense.toEpochDay(year, month, 1) - firstDay;
+      int end = Expense.toEpochDay(year, month, Expense.lengthOfMonth(year, month)) - firstDay;
+      if (start < 2 * SEASON_LENGTH || end >= series.length) {
+        continue;
+      }
+      double actual = 0.0;
+      for (int i = start; i <= end; i++) {
+        actual += series[i];
+      }
+      double forecast = fit(series, start).forecastTotal(end - start + 1);
+      absoluteError += Math.abs(forecast - actual);
+      if (actual > 0) {
+        percentageError += Math.abs(forecast - actual) / actual;
+        withSpend++;
+      }
+      evaluated++;
+    }
+    return new Backtest(evaluated, evaluated == 0 ? 0.0 : absoluteError / evaluated,
+        withSpend == 0 ? 0.0 : percentageError / withSpend);
+  }
+}
@@ -0,0 +1,273 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A binary snapshot of the expenses loaded from an expenses file, so that the next start reads
+ * them back instead of parsing the text file.
+ *
+ * <p>The snapshot is kept next to the expenses file as {@code <file>.snapshot}. Its header records
+ * the size, modification time, file key (the inode where the file system has one) and CRC32C of the
+ * expenses file it was taken from. While the size, modification time and file key still match, the
+ * snapshot is used without reading the expenses file; when only the modification time or the file
+ * key changed, e.g. after the file was touched or copied back, the file is read once more and the
+ * snapshot is used if its CRC32C still matches. A change of the expenses file, including one made
+ * by another program, makes the snapshot stale, unless it keeps the size, the file and the
+ * modification time to the millisecond. Categories and currencies are stored once in a string table
+ * and dates once in a date table together with their epoch days, with the rows referring to both by
+ * index, and the whole snapshot is followed by its own CRC32C. A missing, stale or damaged snapshot
+ * is ignored and replaced after the expenses file has been parsed.
+ *
+ * <p>Warnings about the expenses file are printed when it is parsed, not when the snapshot is
+ * used. No snapshot is taken of a file with blocks that fail their {@link ChecksummedFile}
+ * checksum, so every start parses such a file again and reports them until the file is saved.
+ * Parsing copies the damaged blocks to {@code <file>.corrupt} before the ledger can save the file
+ * without them, see {@link LedgerRecovery#quarantineOnLoad(Path, ChecksummedFile.Content)}.
+ */
+public final class StartupSnapshot {
+
+  static final String SUFFIX = ".snapshot";
+  private static final int MAGIC = 0x534e5033; // "SNP3"
+  private static final int NOTE = 1;
+  private static final int EXTERNAL_ID = 2;
+  private static final int CURRENCY = 4;
+
+  private StartupSnapshot() {
+  }
+
+  /**
+   * Loads the expenses of a file from its snapshot if it is up to date, and otherwise parses the
+   * file and takes a new snapshot unless the file has corrupt blocks.
+   *
+   * @param expensesFilePath The path to the expenses file.
+   * @return The expenses of the file.
+   */
+  public static List<Expense> loadExpenses(String expensesFilePath) {
+    Path source = Path.of(expensesFilePath);
+    List<Expense> expenses = read(source);
+    if (expenses == null) {
+      List<ChecksummedFile.CorruptBlock> corruptBlocks = new ArrayList<>();
+      expenses = Expense.loadExpensesFromFile(expensesFilePath, corruptBlocks);
+      if (corruptBlocks.isEmpty() && Files.exists(source)) {
+        write(source, expenses);
+      }
+    }
+    return expenses;
+  }
+
+  /**
+   * @param source The expenses file.
+   * @return The path of the snapshot of the file.
+   */
+  static Path snapshotPath(Path source) {
+    return source.resolveSibling(source.getFileName() + SUFFIX);
+  }
+
+  /**
+   * Reads the snapshot of an expenses file.
+   *
+   * @param source The expenses file.
+   * @return The expenses, or null if there is no usable snapshot.
+   */
+  static List<Expense> read(Path source) {
+    byte[] data;
+    try {
+      data = Files.readAllBytes(snapshotPath(source));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      System.err.println("Невозможно считать снимок расходов: " + e.getMessage());
+      return null;
+    }
+    if (data.length < 4 || checksum(data, data.length - 4) != readInt(data, data.length - 4)) {
+      System.err.println("Снимок расходов повреждён, расходы будут загружены из файла.");
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(data, 0, data.length - 4))) {
+      if (in.readInt() != MAGIC
+          || !matches(source, in.readLong(), in.readLong(), in.readUTF(), in.readInt())) {
+        return null;
+      }
+      String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+      String[] dates = new String[in.readInt()];
+      int[] days = new int[dates.length];
+      for (int i = 0; i < dates.length; i++) {
+        dates[i] = in.readUTF();
+        days[i] = in.readInt();
+      }
+      int rows = in.readInt();
+      List<Expense> expenses = new ArrayList<>(rows);
+      for (int row = 0; row < rows; row++) {
+        String category = strings[in.readInt()];
+        int date = in.readInt();
+        double amount = in.readDouble();
+        int flags = in.readByte();
+        String note = (flags & NOTE) != 0 ? in.readUTF() : null;
+        String externalId = (flags & EXTERNAL_ID) != 0 ? in.readUTF() : null;
+        String currency = (flags & CURRENCY) != 0 ? strings[in.readInt()] : null;
+        expenses.add(new Expense(category, amount, dates[date], externalId, note, currency,
+            days[date]));
+      }
+      return expenses;
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Снимок расходов повреждён, расходы будут загружены из файла.");
+      return null;
+    }
+  }
+
+  /**
+   * Takes a snapshot of the expenses that the expenses file holds now. Failures are reported and
+   * leave no snapshot behind, since the snapshot is only a cache.
+   *
+   * @param source   The expenses file the expenses were loaded from or saved to.
+   * @param expenses The expenses of the file.
+   */
+  static void write(Path source, List<Expense> expenses) {
+    Path target = snapshotPath(source);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + expenses.size() * 24);
+      DataOutputStream out = new DataOutputStream(bytes);
+      BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+      byte[] sourceData = Files.readAllBytes(source);
+      out.writeInt(MAGIC);
+      out.writeLong(sourceData.length);
+      out.writeLong(attributes.lastModifiedTime().toMillis());
+      out.writeUTF(fileKey(attributes));
+      out.writeInt(checksum(sourceData, sourceData.length));
+
+      Map<String, Integer> ids = new HashMap<>();
+      List<String> strings = new ArrayList<>();
+      Map<String, Integer> dateIds = new HashMap<>();
+      List<Expense> firstOfDate = new ArrayList<>();
+      int[] rowIds = new int[expenses.size() * 3];
+      for (int row = 0; row < expenses.size(); row++) {
+        Expense expense = expenses.get(row);
+        rowIds[row * 3] = intern(expense.getCategory(), ids, strings);
+        Integer dateId = dateIds.putIfAbsent(expense.getDate(), firstOfDate.size());
+        if (dateId == null) {
+          dateId = firstOfDate.size();
+          firstOfDate.add(expense);
+        }
+        rowIds[row * 3 + 1] = dateId;
+        rowIds[row * 3 + 2] =
+            expense.getCurrency() == null ? -1 : intern(expense.getCurrency(), ids, strings);
+      }
+      out.writeInt(strings.size());
+      for (String string : strings) {
+        out.writeUTF(string);
+      }
+      out.writeInt(firstOfDate.size());
+      for (Expense expense : firstOfDate) {
+        out.writeUTF(expense.getDate());
+        out.writeInt(expense.getEpochDay());
+      }
+      out.writeInt(expenses.size());
+      for (int row = 0; row < expenses.size(); row++) {
+        Expense expense = expenses.get(row);
+        out.writeInt(rowIds[row * 3]);
+        out.writeInt(rowIds[row * 3 + 1]);
+        out.writeDouble(expense.getAmount());
+        int flags = (expense.getNote() != null ? NOTE : 0)
+            | (expense.getExternalId() != null ? EXTERNAL_ID : 0)
+            | (expense.getCurrency() != null ? CURRENCY : 0);
+        out.writeByte(flags);
+        if (expense.getNote() != null) {
+          out.writeUTF(expense.getNote());
+        }
+        if (expense.getExternalId() != null) {
+          out.writeUTF(expense.getExternalId());
+        }
+        if (expense.getCurrency() != null) {
+          out.writeInt(rowIds[row * 3 + 2]);
+        }
+      }
+      byte[] data = bytes.toByteArray();
+      out.writeInt(checksum(data, data.length));
+      writeReplacing(target, bytes.toByteArray());
+    } catch (IOException e) {
+      System.err.println("Невозможно сохранить снимок расходов: " + e.getMessage());
+      try {
+        Files.deleteIfExists(target);
+      } catch (IOException ignored) {
+        // a stale snapshot is rejected on load anyway
+      }
+    }
+  }
+
+  private static boolean matches(Path source, long size, long modified, String fileKey,
+      int checksum) throws IOException {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+      if (attributes.size() != size) {
+        return false;
+      }
+      if (attributes.lastModifiedTime().toMillis() == modified
+          && fileKey(attributes).equals(fileKey)) {
+        return true;
+      }
+      byte[] sourceData = Files.readAllBytes(source);
+      return sourceData.length == size && checksum(sourceData, sourceData.length) == checksum;
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  private static String fileKey(BasicFileAttributes attributes) {
+    Object key = attributes.fileKey();
+    return key == null ? "" : key.toString();
+  }
+
+  private static int intern(String string, Map<String, Integer> ids, List<String> strings) {
+    Integer id = ids.get(string);
+    if (id == null) {
+      id = strings.size();
+      ids.put(string, id);
+      strings.add(string);
+    }
+    return id;
+  }
+
+  private static void writeReplacing(Path target, byte[] data) throws IOException {
+    Path temp = Files.createTempFile(target.toAbsolutePath().getParent(),
+        target.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, data);
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static int checksum(byte[] data, int length) {
+    CRC32C crc = new CRC32C();
+    crc.update(data, 0, length);
+    return (int) crc.getValue();
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+        | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+  }
+}
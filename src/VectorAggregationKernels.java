@@ -0,0 +1,151 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link AggregationKernels} on the incubating Vector API.
+ *
+ * <p>Counting compares whole vectors of days at once and adds the comparison mask to a vector of
+ * lane counters, so no branch is taken per row. The sums load the days as int vectors of half the
+ * width of the double vectors, so both have the same number of lanes, convert them to doubles and
+ * compare them against the range as doubles, which gives a mask on the amount lanes for a masked
+ * add; for one category the category ids are converted and compared the same way. Computing the
+ * mask on int lanes and casting it to the double lanes would be shorter, but on JDK 17 that cast
+ * is not intrinsified and is slower than the scalar loop. Lane sums are reduced once at the end,
+ * so the order of additions differs from the scalar loop and the results may differ in the last
+ * bits.
+ *
+ * <p>Adding to the totals of all categories needs no scatter while there are few categories: the
+ * rows are processed in blocks that stay in the L1 cache, whose amounts outside the day range are
+ * zeroed and whose category ids are converted to doubles once; then every category, four at a
+ * time, takes a masked sum over the block with a {@code compare(EQ, category)} mask. The work
+ * grows with the number of categories, so above {@value #MAX_VECTOR_CATEGORIES} categories the
+ * scalar loop, which adds every row to the slot of its category, is faster and is used instead.
+ *
+ * <p>Only loaded by {@link AggregationKernels#get()} when {@code jdk.incubator.vector} is enabled.
+ */
+public class VectorAggregationKernels extends ScalarAggregationKernels {
+
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Integer> INTS_PER_DOUBLES = VectorSpecies.of(int.class,
+      VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+  private static final int MAX_VECTOR_CATEGORIES = 8;
+  private static final int BLOCK_ROWS = 2048;
+
+  @Override
+  public double sum(int[] days, double[] amounts, int length, int fromDay, int toDay) {
+    if (toDay < fromDay) {
+      return 0.0;
+    }
+    DoubleVector sums = DoubleVector.zero(DOUBLES);
+    int upper = DOUBLES.loopBound(length);
+    int i = 0;
+    for (; i < upper; i += DOUBLES.length()) {
+      VectorMask<Double> inRange = dayMask(days, i, fromDay, toDay);
+      sums = sums.add(DoubleVector.fromArray(DOUBLES, amounts, i), inRange);
+    }
+    return sums.reduceLanes(VectorOperators.ADD)
+        + ScalarAggregationKernels.sum(days, amounts, i, length, fromDay, toDay);
+  }
+
+  @Override
+  public int count(int[] days, int length, int fromDay, int toDay) {
+    if (toDay < fromDay) {
+      return 0;
+    }
+    int span = toDay - fromDay;
+    IntVector counts = IntVector.zero(INTS);
+    int upper = INTS.loopBound(length);
+    int i = 0;
+    for (; i < upper; i += INTS.length()) {
+      counts = counts.add(1, IntVector.fromArray(INTS, days, i).sub(fromDay)
+          .compare(VectorOperators.UNSIGNED_LE, span));
+    }
+    return counts.reduceLanes(VectorOperators.ADD)
+        + ScalarAggregationKernels.count(days, i, length, fromDay, toDay);
+  }
+
+  @Override
+  public double sumCategory(int[] days, double[] amounts, int[] categories, int length,
+      int fromDay, int toDay, int category) {
+    if (toDay < fromDay) {
+      return 0.0;
+    }
+    DoubleVector sums = DoubleVector.zero(DOUBLES);
+    int upper = DOUBLES.loopBound(length);
+    int i = 0;
+    for (; i < upper; i += DOUBLES.length()) {
+      VectorMask<Double> selected = dayMask(days, i, fromDay, toDay)
+          .and(toDoubles(categories, i).compare(VectorOperators.EQ, category));
+      sums = sums.add(DoubleVector.fromArray(DOUBLES, amounts, i), selected);
+    }
+    return sums.reduceLanes(VectorOperators.ADD) + ScalarAggregationKernels.sumCategory(days,
+        amounts, categories, i, length, fromDay, toDay, category);
+  }
+
+  @Override
+  public void sumByCategory(int[] days, double[] amounts, int[] categories, int length,
+      int fromDay, int toDay, double[] totals) {
+    if (totals.length > MAX_VECTOR_CATEGORIES || toDay < fromDay) {
+      super.sumByCategory(days, amounts, categories, length, fromDay, toDay, totals);
+      return;
+    }
+    double[] blockAmounts = new double[BLOCK_ROWS];
+    double[] blockCategories = new double[BLOCK_ROWS];
+    int upper = DOUBLES.loopBound(length);
+    for (int start = 0; start < upper; start += BLOCK_ROWS) {
+      int rows = Math.min(BLOCK_ROWS, upper - start);
+      for (int j = 0; j < rows; j += DOUBLES.length()) {
+        DoubleVector.zero(DOUBLES)
+            .blend(DoubleVector.fromArray(DOUBLES, amounts, start + j),
+                dayMask(days, start + j, fromDay, toDay))
+            .intoArray(blockAmounts, j);
+        toDoubles(categories, start + j).intoArray(blockCategories, j);
+      }
+      int category = 0;
+      for (; category + 4 <= totals.length; category += 4) {
+        DoubleVector sums0 = DoubleVector.zero(DOUBLES);
+        DoubleVector sums1 = sums0;
+        DoubleVector sums2 = sums0;
+        DoubleVector sums3 = sums0;
+        for (int j = 0; j < rows; j += DOUBLES.length()) {
+          DoubleVector amountLanes = DoubleVector.fromArray(DOUBLES, blockAmounts, j);
+          DoubleVector categoryLanes = DoubleVector.fromArray(DOUBLES, blockCategories, j);
+          sums0 = sums0.add(amountLanes, categoryLanes.compare(VectorOperators.EQ, category));
+          sums1 = sums1.add(amountLanes, categoryLanes.compare(VectorOperators.EQ, category + 1));
+          sums2 = sums2.add(amountLanes, categoryLanes.compare(VectorOperators.EQ, category + 2));
+          sums3 = sums3.add(amountLanes, categoryLanes.compare(VectorOperators.EQ, category + 3));
+        }
+        totals[category] += sums0.reduceLanes(VectorOperators.ADD);
+        totals[category + 1] += sums1.reduceLanes(VectorOperators.ADD);
+        totals[category + 2] += sums2.reduceLanes(VectorOperators.ADD);
+        totals[category + 3] += sums3.reduceLanes(VectorOperators.ADD);
+      }
+      for (; category < totals.length; category++) {
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        for (int j = 0; j < rows; j += DOUBLES.length()) {
+          sums = sums.add(DoubleVector.fromArray(DOUBLES, blockAmounts, j),
+              DoubleVector.fromArray(DOUBLES, blockCategories, j)
+                  .compare(VectorOperators.EQ, category));
+        }
+        totals[category] += sums.reduceLanes(VectorOperators.ADD);
+      }
+    }
+    ScalarAggregationKernels.sumByCategory(days, amounts, categories, upper, length, fromDay,
+        toDay, totals);
+  }
+
+  private static VectorMask<Double> dayMask(int[] days, int offset, int fromDay, int toDay) {
+    DoubleVector lanes = toDoubles(days, offset);
+    return lanes.compare(VectorOperators.GE, fromDay).and(lanes.compare(VectorOperators.LE, toDay));
+  }
+
+  private static DoubleVector toDoubles(int[] values, int offset) {
+    return (DoubleVector) IntVector.fromArray(INTS_PER_DOUBLES, values, offset)
+        .convertShape(VectorOperators.I2D, DOUBLES, 0);
+  }
+}